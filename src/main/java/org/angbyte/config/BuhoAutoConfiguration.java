@@ -3,18 +3,27 @@ package org.angbyte.config;
 import jakarta.servlet.http.HttpServletRequest;
 import org.angbyte.repositories.BuhoPersistable;
 import org.angbyte.repositories.BuhoPersistableImpl;
+import org.angbyte.repositories.EntityManagerRouter;
+import org.angbyte.repositories.RollupRegistry;
+import org.angbyte.repositories.ShardScatterGather;
 import org.angbyte.resources.BuhoApi;
 import org.angbyte.service.BuhoService;
 import org.angbyte.utils.BuhoCache;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ListableBeanFactory;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -23,6 +32,7 @@ import org.springframework.web.bind.annotation.RestController;
 @ConditionalOnClass({ RestController.class, HttpServletRequest.class })
 @EnableConfigurationProperties(BuhoProperties.class)
 @EnableJpaRepositories(basePackages = "org.angbyte.repositories")
+@Import(BuhoBinaryFormatsConfiguration.class)
 
 public class BuhoAutoConfiguration {
 
@@ -49,9 +59,56 @@ public class BuhoAutoConfiguration {
 
     @Bean
     @ConditionalOnMissingBean
-    public BuhoPersistable persistableRepository(BuhoProperties properties, BuhoCache buhoCache) {
+    public BuhoPersistable persistableRepository(BuhoProperties properties, BuhoCache buhoCache, EntityManagerRouter entityManagerRouter,
+                                                 ShardScatterGather shardScatterGather, RollupRegistry rollupRegistry) {
         log.info("Iniciando repositorio de persistencia de busquedas");
-        return new BuhoPersistableImpl<>(buhoCache, properties);
+        return new BuhoPersistableImpl<>(buhoCache, properties, entityManagerRouter, shardScatterGather, rollupRegistry);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public EntityManagerRouter entityManagerRouter(BuhoProperties properties, ListableBeanFactory beanFactory) {
+        log.info("Iniciando rutas de unidades de persistencia: {}", properties.getDatasources().keySet());
+        return new EntityManagerRouter(properties, beanFactory);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ShardScatterGather shardScatterGather(BuhoProperties properties, ListableBeanFactory beanFactory) {
+        log.info("Iniciando grupos de shards: {}", properties.getShards().keySet());
+        return new ShardScatterGather(properties, beanFactory);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public RollupRegistry rollupRegistry(BuhoProperties properties) {
+        log.info("Iniciando rollups: {}", properties.getRollups().keySet());
+        return new RollupRegistry(properties);
+    }
+
+    /**
+     * {@code buho.fetch-batch-size} como {@code hibernate.default_batch_fetch_size} del EntityManagerFactory
+     * principal, si la aplicación no lo definió. Es de la fábrica, no cambia la sesión de la petición.
+     */
+    @Bean
+    @ConditionalOnMissingBean(name = "buhoHibernateProperties")
+    public HibernatePropertiesCustomizer buhoHibernateProperties(BuhoProperties properties) {
+        return hibernateProperties -> {
+            if (properties.getFetchBatchSize() > 0) {
+                hibernateProperties.putIfAbsent(AvailableSettings.DEFAULT_BATCH_FETCH_SIZE, properties.getFetchBatchSize());
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnMissingBean(name = "buhoCompressionFilter")
+    public FilterRegistrationBean<BuhoCompressionFilter> buhoCompressionFilter(BuhoProperties properties) {
+        log.info("Iniciando compresión de respuestas: {}", properties.getCompression());
+        FilterRegistrationBean<BuhoCompressionFilter> registration = new FilterRegistrationBean<>(new BuhoCompressionFilter(properties));
+        registration.addUrlPatterns(properties.getPath() + "/*");
+        // Después de la seguridad: el cache responde sin llegar al controlador, el usuario ya debe estar autorizado
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 10);
+        return registration;
     }
 
     @Bean
@@ -0,0 +1,89 @@
+package org.angbyte.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.google.gson.internal.LazilyParsedNumber;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Converters de CBOR y Smile para la negociación de contenido. Usan la misma configuración de Jackson
+ * de la aplicación (customizers de Spring Boot), por lo que las respuestas pasan por el mismo proceso
+ * que el json: los Map generados con Gson (exclusiones y proxies) o las entidades directamente.
+ */
+@Configuration(proxyBeanMethods = false)
+public class BuhoBinaryFormatsConfiguration {
+
+    /**
+     * Los Map generados con Gson traen los números como {@link LazilyParsedNumber}; Jackson los escribe
+     * con {@code writeNumber(String)}, que en CBOR termina como texto. Se escriben con su tipo numérico.
+     */
+    static SimpleModule numbersModule() {
+        SimpleModule module = new SimpleModule("BuhoLazilyParsedNumber");
+        module.addSerializer(LazilyParsedNumber.class, new LazilyParsedNumberSerializer());
+        return module;
+    }
+
+    static <T extends Jackson2ObjectMapperBuilder> T configure(T builder, ObjectProvider<Jackson2ObjectMapperBuilderCustomizer> customizers) {
+        customizers.orderedStream().forEach(c -> c.customize(builder));
+        builder.postConfigurer(mapper -> mapper.registerModule(numbersModule()));
+        return builder;
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "com.fasterxml.jackson.dataformat.cbor.CBORFactory")
+    static class Cbor {
+        @Bean
+        @ConditionalOnMissingBean
+        public MappingJackson2CborHttpMessageConverter buhoCborHttpMessageConverter(ObjectProvider<Jackson2ObjectMapperBuilderCustomizer> customizers) {
+            return new MappingJackson2CborHttpMessageConverter(configure(Jackson2ObjectMapperBuilder.cbor(), customizers).build());
+        }
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "com.fasterxml.jackson.dataformat.smile.SmileFactory")
+    static class Smile {
+        @Bean
+        @ConditionalOnMissingBean
+        public MappingJackson2SmileHttpMessageConverter buhoSmileHttpMessageConverter(ObjectProvider<Jackson2ObjectMapperBuilderCustomizer> customizers) {
+            return new MappingJackson2SmileHttpMessageConverter(configure(Jackson2ObjectMapperBuilder.smile(), customizers).build());
+        }
+    }
+
+    static class LazilyParsedNumberSerializer extends JsonSerializer<LazilyParsedNumber> {
+        @Override
+        public void serialize(LazilyParsedNumber value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            String s = value.toString();
+            if (s.indexOf('.') < 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
+                BigInteger i = new BigInteger(s);
+                if (i.bitLength() < 64) {
+                    gen.writeNumber(i.longValue());
+                } else {
+                    gen.writeNumber(i);
+                }
+                return;
+            }
+            BigDecimal d = new BigDecimal(s);
+            double dv = d.doubleValue();
+            // Sin pérdida de precisión se escribe como double, caso contrario como decimal
+            if (!Double.isInfinite(dv) && new BigDecimal(Double.toString(dv)).compareTo(d) == 0) {
+                gen.writeNumber(dv);
+            } else {
+                gen.writeNumber(d);
+            }
+        }
+    }
+}
@@ -0,0 +1,576 @@
+package org.angbyte.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Comprime las respuestas de buho con gzip o deflate según el header Accept-Encoding. La respuesta se
+ * acumula hasta {@code buho.compression.min-size} bytes: si no los supera se envía sin comprimir, caso
+ * contrario se empieza a comprimir y el resto se comprime a medida que se escribe (stream incluido).
+ * <p>
+ * Cuando la búsqueda indica {@code cacheSegundos} el controlador lo marca en el request
+ * ({@link #CACHE_SECONDS_ATTRIBUTE}) y aquí se guardan los bytes ya comprimidos, solo de las respuestas
+ * 200 con cuerpo. Un request idéntico (mismo endpoint, body, Accept, codificación y mismo usuario autenticado:
+ * principal y sus roles) se responde con esos bytes sin ejecutar la búsqueda ni volver a comprimir. El filtro va
+ * después de la seguridad ({@code SecurityProperties.DEFAULT_FILTER_ORDER}), así el usuario ya está autenticado y
+ * autorizado; un request con Authorization sin usuario autenticado no usa el cache. El cache tiene un tope en
+ * bytes ({@code cacheMaxWeight}) y en segundos ({@code cacheMaxSeconds}).
+ */
+public class BuhoCompressionFilter extends OncePerRequestFilter {
+
+    /**
+     * Segundos que se guarda la respuesta en el cache de resultados.
+     */
+    public static final String CACHE_SECONDS_ATTRIBUTE = BuhoCompressionFilter.class.getName() + ".cacheSeconds";
+    private static final String CACHE_KEY_PREFIX = "buho-response:";
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * Headers que no se guardan con la respuesta, dependen de la codificación o del contenedor.
+     */
+    private static final Set<String> SKIP_HEADERS = Set.of("content-length", "content-encoding", "content-type", "vary", "transfer-encoding",
+            "date", "connection", "set-cookie");
+
+    private final BuhoProperties.Compression config;
+    private final Cache<String, CachedResponse> cache;
+
+    public BuhoCompressionFilter(BuhoProperties properties) {
+        this.config = properties.getCompression();
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(config.getCacheMaxWeight())
+                .weigher((String key, CachedResponse value) -> key.length() + value.body.length)
+                .expireAfterWrite(Math.max(1, config.getCacheMaxSeconds()), TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        Encoding encoding = config.isEnabled() ? Encoding.negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING)) : Encoding.IDENTITY;
+        String cacheKey = null;
+        if (isCacheable(request)) {
+            byte[] body = request.getInputStream().readAllBytes();
+            request = new BodyRequestWrapper(request, body);
+            cacheKey = cacheKey(request, body, encoding);
+            CachedResponse cached = cache.getIfPresent(cacheKey);
+            if (cached != null && cached.isExpired()) {
+                cache.invalidate(cacheKey);
+            } else if (cached != null) {
+                cached.writeTo(response);
+                return;
+            }
+        }
+        if (config.isEnabled()) {
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        CompressingResponseWrapper wrapper = new CompressingResponseWrapper(request, response, encoding);
+        try {
+            filterChain.doFilter(request, wrapper);
+        } finally {
+            wrapper.finish();
+        }
+        // El controlador quita el atributo si la respuesta falló a medias
+        Object seconds = request.getAttribute(CACHE_SECONDS_ATTRIBUTE);
+        if (cacheKey != null && seconds instanceof Integer && (Integer) seconds > 0 && response.getStatus() == HttpServletResponse.SC_OK
+                && wrapper.captured != null && wrapper.captured.size() > 0) {
+            long ttl = Math.min((Integer) seconds, config.getCacheMaxSeconds());
+            cache.put(cacheKey, new CachedResponse(response, wrapper.compressing ? encoding : Encoding.IDENTITY, wrapper.captured.toByteArray(),
+                    TimeUnit.SECONDS.toMillis(ttl)));
+        }
+    }
+
+    /**
+     * Solo las búsquedas pueden venir del cache de resultados.
+     */
+    private boolean isCacheable(HttpServletRequest request) {
+        if (!"POST".equalsIgnoreCase(request.getMethod()) || request.getRequestURI() == null || !request.getRequestURI().contains("/findBy")) {
+            return false;
+        }
+        // Credenciales que nadie validó: la respuesta podría depender de ellas
+        return request.getUserPrincipal() != null || request.getHeader(HttpHeaders.AUTHORIZATION) == null;
+    }
+
+    private static String cacheKey(HttpServletRequest request, byte[] body, Encoding encoding) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(body);
+            // Quién pregunta: la respuesta puede depender de los permisos del usuario
+            Principal principal = request.getUserPrincipal();
+            for (String part : new String[]{principal == null ? null : principal.getName(), authorities(principal)}) {
+                digest.update((byte) 0);
+                if (part != null) {
+                    digest.update(part.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return CACHE_KEY_PREFIX + request.getRequestURI() + "|" + request.getHeader(HttpHeaders.ACCEPT) + "|" + encoding
+                   + "|" + Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Roles del usuario ordenados. Con Spring Security el principal es el {@code Authentication}; se lee con
+     * reflexión para no depender de la librería.
+     */
+    private static String authorities(Principal principal) {
+        if (principal == null) {
+            return null;
+        }
+        try {
+            Object authorities = principal.getClass().getMethod("getAuthorities").invoke(principal);
+            if (authorities instanceof Collection) {
+                return ((Collection<?>) authorities).stream().map(String::valueOf).sorted().collect(Collectors.joining(","));
+            }
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalStateException("No se pudieron leer los roles de " + principal.getName(), e);
+        }
+        return null;
+    }
+
+    enum Encoding {
+        GZIP("gzip"), DEFLATE("deflate"), IDENTITY(null);
+
+        private final String value;
+
+        Encoding(String value) {
+            this.value = value;
+        }
+
+        /**
+         * Prefiere gzip, luego deflate. Los que vienen con q=0 no se aceptan.
+         */
+        static Encoding negotiate(String acceptEncoding) {
+            if (acceptEncoding == null || acceptEncoding.isBlank()) {
+                return IDENTITY;
+            }
+            boolean deflate = false;
+            for (String part : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+                String[] tokens = part.trim().split(";");
+                String name = tokens[0].trim();
+                if (tokens.length > 1 && tokens[1].trim().replace(" ", "").matches("q=0(\\.0*)?")) {
+                    continue;
+                }
+                if (name.equals("gzip") || name.equals("*")) {
+                    return GZIP;
+                }
+                if (name.equals("deflate")) {
+                    deflate = true;
+                }
+            }
+            return deflate ? DEFLATE : IDENTITY;
+        }
+
+        OutputStream wrap(OutputStream out) throws IOException {
+            // syncFlush para que un flush (stream) envíe lo que ya se comprimió
+            return this == GZIP ? new GZIPOutputStream(out, BUFFER_SIZE, true) : new DeflaterOutputStream(out, true);
+        }
+    }
+
+    /**
+     * Respuesta guardada en el cache: status, headers propios (ej. rootSize) y el body ya codificado.
+     */
+    private static class CachedResponse {
+        private final int status;
+        private final String contentType;
+        private final Encoding encoding;
+        private final Map<String, List<String>> headers = new LinkedHashMap<>();
+        private final byte[] body;
+        private final long expiresAt;
+
+        private CachedResponse(HttpServletResponse response, Encoding encoding, byte[] body, long ttlMillis) {
+            this.status = response.getStatus();
+            this.contentType = response.getContentType();
+            this.encoding = encoding;
+            this.body = body;
+            this.expiresAt = System.currentTimeMillis() + ttlMillis;
+            for (String name : response.getHeaderNames()) {
+                if (!SKIP_HEADERS.contains(name.toLowerCase(Locale.ROOT)) && !headers.containsKey(name)) {
+                    headers.put(name, new ArrayList<>(response.getHeaders(name)));
+                }
+            }
+        }
+
+        /**
+         * Cada entrada vence con su {@code cacheSegundos}, el cache solo aplica el tope.
+         */
+        private boolean isExpired() {
+            return System.currentTimeMillis() > expiresAt;
+        }
+
+        private void writeTo(HttpServletResponse response) throws IOException {
+            response.setStatus(status);
+            headers.forEach((name, values) -> values.forEach(v -> response.addHeader(name, v)));
+            if (contentType != null) {
+                response.setContentType(contentType);
+            }
+            response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (encoding != Encoding.IDENTITY) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding.value);
+            }
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+
+    /**
+     * Decide al superar el umbral si comprime. Mientras no lo supera los flush no envían nada, para
+     * poder responder sin comprimir y con Content-Length las respuestas pequeñas.
+     */
+    private class CompressingResponseWrapper extends HttpServletResponseWrapper {
+
+        private final HttpServletRequest request;
+        private final Encoding encoding;
+        private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private OutputStream target;
+        private boolean compressing;
+        private boolean finished;
+        private boolean written;
+        private Boolean capture;
+        private ByteArrayOutputStream captured;
+        private long contentLength = -1;
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        private CompressingResponseWrapper(HttpServletRequest request, HttpServletResponse response, Encoding encoding) {
+            super(response);
+            this.request = request;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() ya fue llamado");
+            }
+            if (outputStream == null) {
+                outputStream = new CompressingOutputStream();
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (outputStream != null && writer == null) {
+                throw new IllegalStateException("getOutputStream() ya fue llamado");
+            }
+            if (writer == null) {
+                String charset = getCharacterEncoding();
+                outputStream = new CompressingOutputStream();
+                writer = new PrintWriter(new OutputStreamWriter(outputStream, charset == null ? StandardCharsets.ISO_8859_1 : Charset.forName(charset)));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            this.contentLength = len;
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            this.contentLength = len;
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                this.contentLength = value == null ? -1 : Long.parseLong(value);
+            } else {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setHeader(name, value);
+            } else {
+                super.addHeader(name, value);
+            }
+        }
+
+        /**
+         * Con bytes escritos la respuesta ya no se puede cambiar por un error, aunque sigan en {@code pending}.
+         */
+        @Override
+        public boolean isCommitted() {
+            return written || super.isCommitted();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target != null) {
+                target.flush();
+                super.flushBuffer();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            if (target == null) {
+                pending.reset();
+            }
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            resetBuffer();
+            contentLength = -1;
+            super.reset();
+        }
+
+        private void write(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                throw new IOException("La respuesta ya fue enviada");
+            }
+            written = written || len > 0;
+            if (target != null) {
+                target.write(b, off, len);
+                return;
+            }
+            pending.write(b, off, len);
+            if (pending.size() >= config.getMinSize()) {
+                start(encoding != Encoding.IDENTITY && getHeader(HttpHeaders.CONTENT_ENCODING) == null);
+            }
+        }
+
+        /**
+         * Envía lo acumulado y define el destino del resto de la respuesta.
+         */
+        private void start(boolean compress) throws IOException {
+            HttpServletResponse response = (HttpServletResponse) getResponse();
+            OutputStream out = response.getOutputStream();
+            if (isCapturing()) {
+                out = new TeeOutputStream(out);
+            }
+            if (compress) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding.value);
+                out = encoding.wrap(out);
+                compressing = true;
+            } else if (contentLength >= 0) {
+                response.setContentLengthLong(contentLength);
+            }
+            target = out;
+            pending.writeTo(target);
+            pending = null;
+        }
+
+        /**
+         * Se decide con el primer byte que se escribe, el controlador ya marcó el request.
+         */
+        private boolean isCapturing() {
+            if (capture == null) {
+                Object seconds = request.getAttribute(CACHE_SECONDS_ATTRIBUTE);
+                capture = seconds instanceof Integer && (Integer) seconds > 0;
+                if (capture) {
+                    captured = new ByteArrayOutputStream();
+                }
+            }
+            return capture;
+        }
+
+        private void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target == null) {
+                if (pending.size() > 0) {
+                    // Respuesta pequeña: sin comprimir y con su tamaño real
+                    contentLength = pending.size();
+                    start(false);
+                } else if (contentLength >= 0) {
+                    getResponse().setContentLengthLong(contentLength);
+                }
+            }
+            finished = true;
+            if (target != null) {
+                if (compressing) {
+                    // Termina el gzip/deflate y libera el Deflater
+                    target.close();
+                } else {
+                    target.flush();
+                }
+            }
+        }
+
+        private class CompressingOutputStream extends ServletOutputStream {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                CompressingResponseWrapper.this.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (target != null) {
+                    target.flush();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                finish();
+            }
+
+            @Override
+            public boolean isReady() {
+                try {
+                    return target == null || getResponse().getOutputStream().isReady();
+                } catch (IOException e) {
+                    return false;
+                }
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                try {
+                    getResponse().getOutputStream().setWriteListener(writeListener);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        /**
+         * Copia los bytes que se envían (ya codificados) para guardarlos en el cache, hasta {@code cacheMaxSize}.
+         */
+        private class TeeOutputStream extends OutputStream {
+            private final OutputStream out;
+
+            private TeeOutputStream(OutputStream out) {
+                this.out = out;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                if (captured != null) {
+                    if (captured.size() + len > config.getCacheMaxSize()) {
+                        captured = null;
+                    } else {
+                        captured.write(b, off, len);
+                    }
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Request con el body ya leído, para calcular la llave del cache y poder leerlo de nuevo.
+     */
+    private static class BodyRequestWrapper extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        private BodyRequestWrapper(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+
+                /**
+                 * El body ya está en memoria: todo está disponible de inmediato.
+                 */
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    try {
+                        if (!isFinished()) {
+                            readListener.onDataAvailable();
+                        }
+                        readListener.onAllDataRead();
+                    } catch (IOException e) {
+                        readListener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String charset = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset == null ? StandardCharsets.UTF_8 : Charset.forName(charset)));
+        }
+    }
+}
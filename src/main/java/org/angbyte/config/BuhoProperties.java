@@ -2,11 +2,17 @@ package org.angbyte.config;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.validation.constraints.Pattern;
+import org.angbyte.model.StringNormalization;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 @Validated
 @ConfigurationProperties(prefix = "buho")
 public class BuhoProperties {
@@ -15,12 +21,58 @@ public class BuhoProperties {
     private boolean debug;
     @Pattern(regexp = "^/.*", message = "El path debe comenzar con '/'")
     private String path;
+    /**
+     * Unidades de persistencia adicionales. La clave es el nombre lógico de la unidad y el valor
+     * indica el bean EntityManagerFactory y las entidades/paquetes que se atienden con ella.
+     * Las entidades que no coinciden con ninguna ruta usan el EntityManager principal.
+     */
+    private Map<String, DataSourceRoute> datasources = new LinkedHashMap<>();
+    /**
+     * Grupos de shards con esquemas idénticos (ej: archivo particionado por año). Una búsqueda sobre
+     * una entidad del grupo se ejecuta en paralelo sobre cada shard y los resultados se combinan.
+     */
+    private Map<String, ShardGroup> shards = new LinkedHashMap<>();
+    /**
+     * Tamaño de lote para cargar las relaciones LAZY que quedan fuera del {@code fetch} de la búsqueda
+     * (una consulta por cada N proxies/colecciones en lugar de una por registro). Se aplica como
+     * {@code hibernate.default_batch_fetch_size} del EntityManagerFactory principal si no está definido; las
+     * unidades de {@code datasources} / {@code shards} lo configuran en sus propiedades. 0 no lo modifica.
+     */
+    private int fetchBatchSize = 0;
+    /**
+     * Serializa las entidades con accesos generados al iniciar (MethodHandles) en lugar de la
+     * reflexión de Gson.
+     */
+    private boolean generatedSerializers;
+    /**
+     * Compresión gzip/deflate de las respuestas según el header Accept-Encoding.
+     */
+    private Compression compression = new Compression();
+    /**
+     * Cómo están guardados los textos, sobrescribe {@link StringNormalization}. La clave es
+     * {@code Entidad.campo}, {@code Entidad} o {@code *} para todas.
+     */
+    private Map<String, StringNormalization.Mode> stringNormalization = new LinkedHashMap<>();
+    /**
+     * Cómo se envían las listas de los filtros IN / NOTIN.
+     */
+    private InList inList = new InList();
+    /**
+     * Conteos por valor de {@code /findBy/facets}.
+     */
+    private Facets facets = new Facets();
+    /**
+     * Conteos por grupo que se mantienen en memoria. La clave es el nombre del rollup.
+     */
+    private Map<String, Rollup> rollups = new LinkedHashMap<>();
 
     @PostConstruct
     public void init() {
         log.info("Configuración de BuhoProperties cargada");
         log.debug("Debug: {}", debug);
         log.debug("Path base: {}", path);
+        log.debug("Unidades de persistencia adicionales: {}", datasources.keySet());
+        log.debug("Grupos de shards: {}", shards.keySet());
     }
 
     public boolean isDebug() {
@@ -44,8 +96,484 @@ public class BuhoProperties {
         this.path = path;
     }
 
+    public Map<String, DataSourceRoute> getDatasources() {
+        return datasources;
+    }
+
+    public void setDatasources(Map<String, DataSourceRoute> datasources) {
+        this.datasources = datasources;
+    }
+
+    public int getFetchBatchSize() {
+        return fetchBatchSize;
+    }
+
+    public void setFetchBatchSize(int fetchBatchSize) {
+        this.fetchBatchSize = fetchBatchSize;
+    }
+
+    public boolean isGeneratedSerializers() {
+        return generatedSerializers;
+    }
+
+    public void setGeneratedSerializers(boolean generatedSerializers) {
+        this.generatedSerializers = generatedSerializers;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    public Map<String, StringNormalization.Mode> getStringNormalization() {
+        return stringNormalization;
+    }
+
+    public void setStringNormalization(Map<String, StringNormalization.Mode> stringNormalization) {
+        this.stringNormalization = stringNormalization;
+    }
+
+    public InList getInList() {
+        return inList;
+    }
+
+    public void setInList(InList inList) {
+        this.inList = inList;
+    }
+
+    public Facets getFacets() {
+        return facets;
+    }
+
+    public void setFacets(Facets facets) {
+        this.facets = facets;
+    }
+
+    public Map<String, Rollup> getRollups() {
+        return rollups;
+    }
+
+    public void setRollups(Map<String, Rollup> rollups) {
+        this.rollups = rollups;
+    }
+
+    public Map<String, ShardGroup> getShards() {
+        return shards;
+    }
+
+    public void setShards(Map<String, ShardGroup> shards) {
+        this.shards = shards;
+    }
+
     @Override
     public String toString() {
-        return "BuhoProperties{" + "debug=" + debug + ", path='" + path + '\'' + '}';
+        return "BuhoProperties{" + "debug=" + debug + ", path='" + path + '\'' + ", datasources=" + datasources + ", shards=" + shards + ", fetchBatchSize=" + fetchBatchSize + ", generatedSerializers=" + generatedSerializers + ", compression=" + compression + ", stringNormalization=" + stringNormalization + ", inList=" + inList + ", facets=" + facets + ", rollups=" + rollups + '}';
+    }
+
+    /**
+     * Ruta hacia una unidad de persistencia: nombre del bean EntityManagerFactory y
+     * las entidades (nombre simple o completo) o paquetes que se resuelven con ella.
+     */
+    public static class DataSourceRoute {
+
+        private String entityManagerFactory;
+        /**
+         * Bean del administrador de transacciones de la unidad, si no se indica se usa un
+         * JpaTransactionManager sobre {@code entityManagerFactory}.
+         */
+        private String transactionManager;
+        private List<String> entities = new ArrayList<>();
+        private List<String> packages = new ArrayList<>();
+
+        public String getEntityManagerFactory() {
+            return entityManagerFactory;
+        }
+
+        public void setEntityManagerFactory(String entityManagerFactory) {
+            this.entityManagerFactory = entityManagerFactory;
+        }
+
+        public String getTransactionManager() {
+            return transactionManager;
+        }
+
+        public void setTransactionManager(String transactionManager) {
+            this.transactionManager = transactionManager;
+        }
+
+        public List<String> getEntities() {
+            return entities;
+        }
+
+        public void setEntities(List<String> entities) {
+            this.entities = entities;
+        }
+
+        public List<String> getPackages() {
+            return packages;
+        }
+
+        public void setPackages(List<String> packages) {
+            this.packages = packages;
+        }
+
+        @Override
+        public String toString() {
+            return "DataSourceRoute{" + "entityManagerFactory='" + entityManagerFactory + '\'' + ", transactionManager='" + transactionManager + '\''
+                   + ", entities=" + entities + ", packages=" + packages + '}';
+        }
+    }
+
+    /**
+     * Compresión de respuestas. Solo se comprimen las respuestas que superan {@code minSize} bytes, las
+     * que se sirven desde el cache de resultados ({@code cacheSegundos}) se guardan ya comprimidas.
+     */
+    public static class Compression {
+
+        private boolean enabled = true;
+        /**
+         * Tamaño mínimo en bytes de la respuesta para comprimirla.
+         */
+        private int minSize = 2048;
+        /**
+         * Tamaño máximo en bytes de una respuesta que se guarda en el cache de resultados.
+         */
+        private int cacheMaxSize = 8 * 1024 * 1024;
+        /**
+         * Tamaño total en bytes del cache de resultados, al superarlo se descartan las respuestas menos usadas.
+         */
+        private long cacheMaxWeight = 64L * 1024 * 1024;
+        /**
+         * Máximo de segundos que se guarda una respuesta, {@code cacheSegundos} mayores se recortan.
+         */
+        private int cacheMaxSeconds = 300;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMinSize() {
+            return minSize;
+        }
+
+        public void setMinSize(int minSize) {
+            this.minSize = minSize;
+        }
+
+        public int getCacheMaxSize() {
+            return cacheMaxSize;
+        }
+
+        public void setCacheMaxSize(int cacheMaxSize) {
+            this.cacheMaxSize = cacheMaxSize;
+        }
+
+        public long getCacheMaxWeight() {
+            return cacheMaxWeight;
+        }
+
+        public void setCacheMaxWeight(long cacheMaxWeight) {
+            this.cacheMaxWeight = cacheMaxWeight;
+        }
+
+        public int getCacheMaxSeconds() {
+            return cacheMaxSeconds;
+        }
+
+        public void setCacheMaxSeconds(int cacheMaxSeconds) {
+            this.cacheMaxSeconds = cacheMaxSeconds;
+        }
+
+        @Override
+        public String toString() {
+            return "Compression{" + "enabled=" + enabled + ", minSize=" + minSize + ", cacheMaxSize=" + cacheMaxSize + ", cacheMaxWeight=" + cacheMaxWeight
+                   + ", cacheMaxSeconds=" + cacheMaxSeconds + '}';
+        }
+    }
+
+    /**
+     * Listas de IN / NOTIN. Cada tamaño de lista genera un SQL distinto (un parámetro por valor), por eso
+     * se rellenan hasta la siguiente potencia de dos repitiendo el último valor. Las listas grandes se
+     * envían como un solo parámetro arreglo ({@code = ANY(?)}) en las bases que lo soportan, o se dividen
+     * en varios IN unidos con OR para no pasar el límite de elementos de la base. Una lista con más valores
+     * que {@code maxParameters} no se puede enviar y la búsqueda falla.
+     */
+    public static class InList {
+
+        private boolean padding = true;
+        /**
+         * Enviar la lista como arreglo ({@code campo = ANY(?)}) en PostgreSQL, CockroachDB y H2.
+         */
+        private boolean arrayBinding = true;
+        /**
+         * Cantidad mínima de valores para enviar la lista como arreglo.
+         */
+        private int arrayMinSize = 32;
+        /**
+         * Máximo de valores por IN, 0 usa el límite del dialecto (ej. 1000 en Oracle).
+         */
+        private int maxSize = 1000;
+        /**
+         * Máximo de parámetros de las listas IN de una sentencia, las que no entran se escriben con literales. 0 usa
+         * el límite del dialecto: 2000 en SQL Server (deja margen para el resto de parámetros hasta su límite de
+         * 2100), 65000 en Oracle, el de Hibernate en el resto.
+         */
+        private int maxParameters = 0;
+
+        public boolean isPadding() {
+            return padding;
+        }
+
+        public void setPadding(boolean padding) {
+            this.padding = padding;
+        }
+
+        public boolean isArrayBinding() {
+            return arrayBinding;
+        }
+
+        public void setArrayBinding(boolean arrayBinding) {
+            this.arrayBinding = arrayBinding;
+        }
+
+        public int getArrayMinSize() {
+            return arrayMinSize;
+        }
+
+        public void setArrayMinSize(int arrayMinSize) {
+            this.arrayMinSize = arrayMinSize;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getMaxParameters() {
+            return maxParameters;
+        }
+
+        public void setMaxParameters(int maxParameters) {
+            this.maxParameters = maxParameters;
+        }
+
+        @Override
+        public String toString() {
+            return "InList{" + "padding=" + padding + ", arrayBinding=" + arrayBinding + ", arrayMinSize=" + arrayMinSize + ", maxSize=" + maxSize
+                   + ", maxParameters=" + maxParameters + '}';
+        }
+    }
+
+    /**
+     * Facetas: cada ruta es un {@code GROUP BY} con su conteo sobre los mismos filtros. Con más de una ruta
+     * las consultas se ejecutan en paralelo, cada una en su propio EntityManager.
+     */
+    public static class Facets {
+
+        /**
+         * Consultas de facetas simultáneas, 1 las ejecuta una tras otra en el EntityManager de la petición.
+         */
+        private int parallelism = 4;
+        /**
+         * Valores por faceta cuando la búsqueda no indica el límite, 0 devuelve todos.
+         */
+        private int limit = 10;
+        private int timeoutSeconds = 30;
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        public void setLimit(int limit) {
+            this.limit = limit;
+        }
+
+        public int getTimeoutSeconds() {
+            return timeoutSeconds;
+        }
+
+        public void setTimeoutSeconds(int timeoutSeconds) {
+            this.timeoutSeconds = timeoutSeconds;
+        }
+
+        @Override
+        public String toString() {
+            return "Facets{" + "parallelism=" + parallelism + ", limit=" + limit + ", timeoutSeconds=" + timeoutSeconds + '}';
+        }
+    }
+
+    /**
+     * Rollup: conteo de registros de una entidad por los campos de {@code groupBy}. Se carga con un GROUP BY
+     * al iniciar, se actualiza con los insert/update/delete confirmados de Hibernate y se recalcula cada
+     * {@code reconcileSeconds} (cambios por SQL directo, updates masivos o StatelessSession).
+     */
+    public static class Rollup {
+
+        /**
+         * Nombre simple o completo de la entidad.
+         */
+        private String entity;
+        /**
+         * Atributos básicos de la entidad (sin joins).
+         */
+        private List<String> groupBy = new ArrayList<>();
+        private int reconcileSeconds = 300;
+
+        public String getEntity() {
+            return entity;
+        }
+
+        public void setEntity(String entity) {
+            this.entity = entity;
+        }
+
+        public List<String> getGroupBy() {
+            return groupBy;
+        }
+
+        public void setGroupBy(List<String> groupBy) {
+            this.groupBy = groupBy;
+        }
+
+        public int getReconcileSeconds() {
+            return reconcileSeconds;
+        }
+
+        public void setReconcileSeconds(int reconcileSeconds) {
+            this.reconcileSeconds = reconcileSeconds;
+        }
+
+        @Override
+        public String toString() {
+            return "Rollup{" + "entity='" + entity + '\'' + ", groupBy=" + groupBy + ", reconcileSeconds=" + reconcileSeconds + '}';
+        }
+    }
+
+    /**
+     * Grupo de shards: entidades que lo usan, campo por el que se particiona y los nodos.
+     */
+    public static class ShardGroup {
+
+        private List<String> entities = new ArrayList<>();
+        /**
+         * Campo de la entidad por el que se particionan los datos, se usa para descartar shards
+         * a partir de los filtros de la búsqueda.
+         */
+        private String shardKey;
+        private int parallelism = 4;
+        private int timeoutSeconds = 60;
+        private List<Shard> nodes = new ArrayList<>();
+
+        public List<String> getEntities() {
+            return entities;
+        }
+
+        public void setEntities(List<String> entities) {
+            this.entities = entities;
+        }
+
+        public String getShardKey() {
+            return shardKey;
+        }
+
+        public void setShardKey(String shardKey) {
+            this.shardKey = shardKey;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public int getTimeoutSeconds() {
+            return timeoutSeconds;
+        }
+
+        public void setTimeoutSeconds(int timeoutSeconds) {
+            this.timeoutSeconds = timeoutSeconds;
+        }
+
+        public List<Shard> getNodes() {
+            return nodes;
+        }
+
+        public void setNodes(List<Shard> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public String toString() {
+            return "ShardGroup{" + "entities=" + entities + ", shardKey='" + shardKey + '\'' + ", parallelism=" + parallelism + ", nodes=" + nodes + '}';
+        }
+    }
+
+    /**
+     * Nodo de un grupo de shards. {@code desde}/{@code hasta} es el rango (inclusivo) de valores del
+     * shard-key que contiene, si no se indican el shard no se descarta nunca.
+     */
+    public static class Shard {
+
+        private String name;
+        private String entityManagerFactory;
+        private String desde;
+        private String hasta;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getEntityManagerFactory() {
+            return entityManagerFactory;
+        }
+
+        public void setEntityManagerFactory(String entityManagerFactory) {
+            this.entityManagerFactory = entityManagerFactory;
+        }
+
+        public String getDesde() {
+            return desde;
+        }
+
+        public void setDesde(String desde) {
+            this.desde = desde;
+        }
+
+        public String getHasta() {
+            return hasta;
+        }
+
+        public void setHasta(String hasta) {
+            this.hasta = hasta;
+        }
+
+        @Override
+        public String toString() {
+            return "Shard{" + "name='" + name + '\'' + ", entityManagerFactory='" + entityManagerFactory + '\'' + ", desde='" + desde + '\'' + ", hasta='" + hasta + '\'' + '}';
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,195 @@
+package org.angbyte.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Agregación de una búsqueda ({@link BusquedaModel#getAggregation()}): se arma como un solo SQL
+ * {@code SELECT grupos, agregados ... WHERE filtros GROUP BY grupos HAVING ... ORDER BY ... LIMIT}.
+ * <p>
+ * A diferencia de {@code functions}, cada agregado tiene su alias, así se puede pedir la misma función sobre
+ * varios campos, filtrar por el agregado ({@code having}) y ordenar por él. Las claves de {@code having} y
+ * {@code orders} son los alias de los agregados o las rutas de {@code groupBy}. Las rutas de {@code groupBy}
+ * aceptan el periodo de las fechas ({@code fechaCreacion:month}).
+ *
+ * <pre>
+ * {
+ *   "groupBy": ["ciudad.nombre"],
+ *   "aggregates": [{"alias": "total", "function": "count"}, {"alias": "monto", "function": "sum", "field": "pagos.valor"}],
+ *   "having": {"total": {"comparador": "GT", "values": [10]}},
+ *   "orders": {"monto": "DESC"},
+ *   "limit": 10
+ * }
+ * </pre>
+ */
+public class AggregationSpec implements Serializable {
+
+    private List<String> groupBy;
+    private List<Aggregate> aggregates;
+    /**
+     * Alias o ruta → condición ({@link BusquedaModel.WhereCondition}) o valor (EQ).
+     */
+    private Map<String, Object> having;
+    /**
+     * Alias o ruta → ASC / DESC.
+     */
+    private Map<String, String> orders;
+    /**
+     * Máximo de filas cuando la búsqueda no tiene {@code pageSize}.
+     */
+    private Integer limit;
+
+    public AggregationSpec() {
+    }
+
+    public List<String> getGroupBy() {
+        return groupBy;
+    }
+
+    public void setGroupBy(List<String> groupBy) {
+        this.groupBy = groupBy;
+    }
+
+    public List<Aggregate> getAggregates() {
+        return aggregates;
+    }
+
+    public void setAggregates(List<Aggregate> aggregates) {
+        this.aggregates = aggregates;
+    }
+
+    public Map<String, Object> getHaving() {
+        return having;
+    }
+
+    public void setHaving(Map<String, Object> having) {
+        this.having = having;
+    }
+
+    public Map<String, String> getOrders() {
+        return orders;
+    }
+
+    public void setOrders(Map<String, String> orders) {
+        this.orders = orders;
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+
+    public AggregationSpec groupBy(String... paths) {
+        if (groupBy == null) {
+            groupBy = new ArrayList<>();
+        }
+        groupBy.addAll(Arrays.asList(paths));
+        return this;
+    }
+
+    /**
+     * @param alias    Nombre de la columna en el resultado
+     * @param function count, sum, avg, min, max o una función registrada en Hibernate
+     * @param field    Ruta del campo, null o {@code *} en count cuenta los registros
+     */
+    public AggregationSpec aggregate(String alias, String function, String field) {
+        if (aggregates == null) {
+            aggregates = new ArrayList<>();
+        }
+        aggregates.add(new Aggregate(alias, function, field));
+        return this;
+    }
+
+    public AggregationSpec having(String alias, BusquedaModel.WhereCondition condition) {
+        if (having == null) {
+            having = new LinkedHashMap<>();
+        }
+        having.put(alias, condition);
+        return this;
+    }
+
+    public AggregationSpec order(String alias, String direction) {
+        if (orders == null) {
+            orders = new LinkedHashMap<>();
+        }
+        orders.put(alias, direction);
+        return this;
+    }
+
+    public AggregationSpec limit(Integer limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "AggregationSpec{" + "groupBy=" + groupBy + ", aggregates=" + aggregates + ", having=" + having + ", orders=" + orders + ", limit=" + limit + '}';
+    }
+
+    /**
+     * Función de agregación sobre un campo.
+     */
+    public static class Aggregate implements Serializable {
+
+        private String alias;
+        private String function;
+        private String field;
+        /**
+         * Solo valores distintos, ej. {@code count(distinct campo)}.
+         */
+        private Boolean distinct = false;
+
+        public Aggregate() {
+        }
+
+        public Aggregate(String alias, String function, String field) {
+            this.alias = alias;
+            this.function = function;
+            this.field = field;
+        }
+
+        public String getAlias() {
+            return alias;
+        }
+
+        public void setAlias(String alias) {
+            this.alias = alias;
+        }
+
+        public String getFunction() {
+            return function;
+        }
+
+        public void setFunction(String function) {
+            this.function = function;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public void setField(String field) {
+            this.field = field;
+        }
+
+        public Boolean getDistinct() {
+            return distinct;
+        }
+
+        public void setDistinct(Boolean distinct) {
+            this.distinct = distinct;
+        }
+
+        @Override
+        public String toString() {
+            return "Aggregate{" + "alias='" + alias + '\'' + ", function='" + function + '\'' + ", field='" + field + '\'' + ", distinct=" + distinct + '}';
+        }
+    }
+}
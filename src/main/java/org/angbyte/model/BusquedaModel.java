@@ -1,6 +1,10 @@
 package org.angbyte.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import org.angbyte.utils.HibernateProxyTypeAdapter;
 import org.angbyte.utils.Utilities;
 
 import java.io.Serializable;
@@ -9,6 +13,7 @@ import java.math.BigInteger;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,8 +36,11 @@ import java.util.logging.Logger;
  */
 public class BusquedaModel implements Serializable {
 
+    private static final Logger LOG = Logger.getLogger(BusquedaModel.class.getName());
+
     private String entity;
     private Map<String, String> orders;
+    @JsonDeserialize(using = FiltersDeserializer.class)
     private Map<String, Object> filters;
     private Map<String, Object> functions;
     private List<String> groupsBy;
@@ -43,14 +51,67 @@ public class BusquedaModel implements Serializable {
      * Si es null o vacío, se selecciona la entidad completa (SELECT *).
      */
     private List<String> columns;
+    /**
+     * Relaciones (rutas con puntos) que se cargan junto con la entidad mediante un EntityGraph,
+     * ej: ["ciudad", "telefonos"]. Evita una consulta por registro al serializar.
+     */
+    private List<String> fetch;
 
     private Integer first;
     private Integer pageSize;
     private Boolean distinct = true;
     private Boolean unicoResultado = false;
+    /**
+     * Con {@code unicoResultado} trae hasta dos registros y falla si la búsqueda encuentra más de uno, en
+     * lugar de devolver el primero.
+     */
+    private Boolean validarUnico = false;
     private Boolean unproxy = false;
     private Boolean gson = false;
     private Boolean resolverDto = false;
+    /**
+     * Ejecuta la búsqueda en un StatelessSession: las entidades no quedan en el contexto de
+     * persistencia (sin snapshots ni dirty checking), las relaciones LAZY no cargadas no se pueden leer.
+     */
+    private Boolean stateless = false;
+    /**
+     * Con gson: {@code ID} escribe los proxies no inicializados solo con su id, sin consultar la base.
+     */
+    private HibernateProxyTypeAdapter.ProxyMode proxyMode;
+    /**
+     * Escribe los registros directamente en la respuesta a medida que se leen de la base, sin armar
+     * la lista en memoria. Siempre se serializa con Gson.
+     */
+    private Boolean stream = false;
+    /**
+     * Con gson: niveles de entidades que se escriben completos, las relaciones más profundas se
+     * escriben solo con su id. null sin límite.
+     */
+    private Integer depth;
+    /**
+     * Para consultas con {@code columns}: responde en formato columnar ({@link RespuestaColumnar}).
+     * También se activa con el header {@code Accept: application/vnd.buho.columnar+json}.
+     */
+    private Boolean columnar = false;
+    /**
+     * En formato columnar, codificar con diccionario las columnas de texto que se repiten.
+     */
+    private Boolean diccionario = true;
+    /**
+     * Segundos que se guarda la respuesta (ya comprimida) en el cache de resultados. Un request idéntico
+     * dentro de ese tiempo se responde sin ejecutar la búsqueda.
+     */
+    private Integer cacheSegundos;
+    /**
+     * Para {@code /findBy/facets}: rutas de las que se cuentan los valores con los filtros de la búsqueda, el
+     * valor es la cantidad de valores más frecuentes que se devuelven (null o 0 usa {@code buho.facets.limit}).
+     */
+    private Map<String, Integer> facets;
+    /**
+     * Agregados con alias, HAVING y orden por agregado en un solo SQL. Reemplaza a {@code functions},
+     * {@code groupsBy} y {@code orders}.
+     */
+    private AggregationSpec aggregation;
 
     private Boolean seek;            // Activar paginación por cursor
     private String cursorField;      // Campo ordenado (ruta con join si aplica)
@@ -93,33 +154,19 @@ public class BusquedaModel implements Serializable {
         return filters;
     }
 
+    /**
+     * Los Map de los filtros se convierten a {@link WhereCondition}. Desde el request ya llegan convertidos
+     * por {@link FiltersDeserializer}.
+     */
     public void setFilters(Map<String, Object> filters) {
         if (filters != null) {
             filters.replaceAll((key, value) -> {
                 if (value instanceof Map) {
-                    WhereCondition cond = null;
-                    try {
-                        cond = (WhereCondition) Utilities.toObjectFromJson(Utilities.toJson(value), WhereCondition.class);
-                        if (cond != null && (cond.comparador != null || cond.values != null)) {
-                            value = cond;
-                            return cond;
-                        } else {
-                            return value;
-                        }
-                    } catch (Exception c) {
-                        System.out.println("Error al extraer js desde Map key " + key + " vallue " + value + "-nValue " + value + " is map " + (value instanceof Map) + " cond " + cond);
-                        return value;
-                    }
-                } else if (value.toString().startsWith("{") && value.toString().endsWith("}")) {
-                    try {
-                        WhereCondition cond = (WhereCondition) Utilities.toObjectFromJson(value, WhereCondition.class);
-                        if (cond != null) {
-                            value = cond;
-                            return cond;
-                        }
-                    } catch (Exception c) {
-                        System.out.println("Error al extraer js key " + key + " vallue " + value);
+                    WhereCondition cond = WhereCondition.fromMap((Map<?, ?>) value);
+                    if (cond != null) {
+                        return cond;
                     }
+                    LOG.log(Level.FINE, "El filtro {0} no es una condición, se mantiene como Map: {1}", new Object[]{key, value});
                 }
                 return value;
             });
@@ -178,6 +225,14 @@ public class BusquedaModel implements Serializable {
         this.columns = columns;
     }
 
+    public List<String> getFetch() {
+        return fetch;
+    }
+
+    public void setFetch(List<String> fetch) {
+        this.fetch = fetch;
+    }
+
     public Boolean getUnproxy() {
         return unproxy;
     }
@@ -186,6 +241,78 @@ public class BusquedaModel implements Serializable {
         this.unproxy = unproxy;
     }
 
+    public Boolean getStateless() {
+        return stateless;
+    }
+
+    public void setStateless(Boolean stateless) {
+        this.stateless = stateless;
+    }
+
+    public HibernateProxyTypeAdapter.ProxyMode getProxyMode() {
+        return proxyMode;
+    }
+
+    public void setProxyMode(HibernateProxyTypeAdapter.ProxyMode proxyMode) {
+        this.proxyMode = proxyMode;
+    }
+
+    public Boolean getStream() {
+        return stream;
+    }
+
+    public void setStream(Boolean stream) {
+        this.stream = stream;
+    }
+
+    public Integer getDepth() {
+        return depth;
+    }
+
+    public void setDepth(Integer depth) {
+        this.depth = depth;
+    }
+
+    public Boolean getColumnar() {
+        return columnar;
+    }
+
+    public void setColumnar(Boolean columnar) {
+        this.columnar = columnar;
+    }
+
+    public Boolean getDiccionario() {
+        return diccionario;
+    }
+
+    public void setDiccionario(Boolean diccionario) {
+        this.diccionario = diccionario;
+    }
+
+    public Integer getCacheSegundos() {
+        return cacheSegundos;
+    }
+
+    public void setCacheSegundos(Integer cacheSegundos) {
+        this.cacheSegundos = cacheSegundos;
+    }
+
+    public Map<String, Integer> getFacets() {
+        return facets;
+    }
+
+    public void setFacets(Map<String, Integer> facets) {
+        this.facets = facets;
+    }
+
+    public AggregationSpec getAggregation() {
+        return aggregation;
+    }
+
+    public void setAggregation(AggregationSpec aggregation) {
+        this.aggregation = aggregation;
+    }
+
     public Boolean getUnicoResultado() {
         if (unicoResultado == null) {
             return unicoResultado;
@@ -197,6 +324,14 @@ public class BusquedaModel implements Serializable {
         this.unicoResultado = unicoResultado;
     }
 
+    public Boolean getValidarUnico() {
+        return validarUnico;
+    }
+
+    public void setValidarUnico(Boolean validarUnico) {
+        this.validarUnico = validarUnico;
+    }
+
     public Boolean getGson() {
         return gson;
     }
@@ -325,6 +460,74 @@ public class BusquedaModel implements Serializable {
         this.cursorIdValue = cursorIdValue;
     }
 
+    /**
+     * Copia superficial del modelo. Los ordenamientos se copian en un mapa nuevo porque la
+     * construcción del query puede agregar el id para asegurar un orden estable.
+     *
+     * @return Nuevo modelo con los mismos parametros
+     */
+    public BusquedaModel copy() {
+        BusquedaModel c = new BusquedaModel(entity);
+        c.orders = orders == null ? null : new LinkedHashMap<>(orders);
+        c.filters = filters;
+        c.functions = functions;
+        c.groupsBy = groupsBy;
+        c.columns = columns;
+        c.fetch = fetch;
+        c.first = first;
+        c.pageSize = pageSize;
+        c.distinct = distinct;
+        c.unicoResultado = unicoResultado;
+        c.validarUnico = validarUnico;
+        c.unproxy = unproxy;
+        c.gson = gson;
+        c.resolverDto = resolverDto;
+        c.stateless = stateless;
+        c.proxyMode = proxyMode;
+        c.stream = stream;
+        c.depth = depth;
+        c.columnar = columnar;
+        c.diccionario = diccionario;
+        c.cacheSegundos = cacheSegundos;
+        c.facets = facets;
+        c.aggregation = aggregation;
+        c.seek = seek;
+        c.cursorField = cursorField;
+        c.cursorDirection = cursorDirection;
+        c.cursorValue = cursorValue;
+        c.cursorIdValue = cursorIdValue;
+        c.ignoreFieldsGson = ignoreFieldsGson;
+        c.ignoreClassGson = ignoreClassGson;
+        c.ignoreClassGsonw = ignoreClassGsonw;
+        return c;
+    }
+
+    /**
+     * Búsqueda anidada de los comparadores IN_QUERY / EXISTS_QUERY. Desde el json llega como Map y se
+     * convierte con Jackson, igual que el body de la petición (los filtros pasan por {@link FiltersDeserializer}).
+     *
+     * @param value BusquedaModel o Map con sus campos
+     * @return Búsqueda o null si el valor no es una búsqueda
+     */
+    public static BusquedaModel from(Object value) {
+        if (value instanceof BusquedaModel) {
+            return (BusquedaModel) value;
+        }
+        if (!(value instanceof Map)) {
+            return null;
+        }
+        try {
+            return NestedReader.MAPPER.convertValue(value, BusquedaModel.class);
+        } catch (IllegalArgumentException e) {
+            LOG.log(Level.WARNING, "Búsqueda anidada no válida " + value, e);
+            return null;
+        }
+    }
+
+    private static final class NestedReader {
+        private static final ObjectMapper MAPPER = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
     @Override
     public String toString() {
         return "BusquedaDinamica{" + "entity='" + entity + '\'' + ", orders=" + orders + ", filters=" + filters + ", functions=" + functions + ", groupsBy=" + groupsBy + ", first=" + first + ", pageSize=" + pageSize + ", distinct=" + distinct + '}';
@@ -333,6 +536,7 @@ public class BusquedaModel implements Serializable {
     public static class WhereCondition {
         private static final Logger LOG = Logger.getLogger(WhereCondition.class.getName());
         private static volatile DateTimeSettings DATE_TIME_SETTINGS = DateTimeSettings.defaults();
+        private static volatile ValueConverters CONVERTERS = new ValueConverters(DATE_TIME_SETTINGS);
         private String comparador = "EQ";
         private Boolean trim = true;
         private Boolean upper = true;
@@ -357,6 +561,70 @@ public class BusquedaModel implements Serializable {
         public static void setDateTimeSettings(DateTimeSettings settings) {
             if (settings == null) return;
             DATE_TIME_SETTINGS = settings;
+            // Conversores y literales en cache dependen de la configuración
+            CONVERTERS = new ValueConverters(settings);
+        }
+
+        /**
+         * Convierte un Map ({@code comparador}, {@code trim}, {@code upper}, {@code values}) sin pasar por json.
+         * Los demás campos se ignoran.
+         *
+         * @param map Condición como Map
+         * @return Condición o null si el Map no tiene la forma de una condición
+         */
+        @SuppressWarnings("unchecked")
+        public static WhereCondition fromMap(Map<?, ?> map) {
+            WhereCondition cond = new WhereCondition();
+            if (map.containsKey("comparador")) {
+                Object c = map.get("comparador");
+                if (c != null && !(c instanceof String)) {
+                    return null;
+                }
+                cond.setComparador((String) c);
+            }
+            if (map.containsKey("trim")) {
+                Object t = map.get("trim");
+                Boolean b = toBoolean(t);
+                if (b == null && t != null) {
+                    return null;
+                }
+                cond.setTrim(b);
+            }
+            if (map.containsKey("upper")) {
+                Object u = map.get("upper");
+                Boolean b = toBoolean(u);
+                if (b == null && u != null) {
+                    return null;
+                }
+                cond.setUpper(b);
+            }
+            Object values = map.get("values");
+            if (values instanceof List) {
+                cond.setValues((List<Object>) values);
+            } else if (values instanceof Collection) {
+                cond.setValues(new ArrayList<>((Collection<Object>) values));
+            } else if (values != null) {
+                return null;
+            }
+            return cond;
+        }
+
+        /**
+         * @return Boolean o null si el valor no es booleano ({@code true}/{@code false} también como texto)
+         */
+        static Boolean toBoolean(Object value) {
+            if (value instanceof Boolean) {
+                return (Boolean) value;
+            }
+            if (value instanceof String) {
+                if ("true".equalsIgnoreCase((String) value)) {
+                    return Boolean.TRUE;
+                }
+                if ("false".equalsIgnoreCase((String) value)) {
+                    return Boolean.FALSE;
+                }
+            }
+            return null;
         }
 
         public static WhereCondition eq(Object value) {
@@ -408,6 +676,21 @@ public class BusquedaModel implements Serializable {
             return wc;
         }
 
+        /**
+         * {@code campo IN (SELECT columna FROM ...)}: la columna es la primera de {@code columns} de la
+         * búsqueda anidada, o el id de su entidad.
+         */
+        public static WhereCondition inQuery(BusquedaModel query) {
+            return new WhereCondition("IN_QUERY", new ArrayList<>(List.of(query)));
+        }
+
+        /**
+         * {@code EXISTS (SELECT 1 FROM ... WHERE columna = campo)}, correlacionado con el campo del filtro.
+         */
+        public static WhereCondition existsQuery(BusquedaModel query) {
+            return new WhereCondition("EXISTS_QUERY", new ArrayList<>(List.of(query)));
+        }
+
         public static WhereCondition like(Object value) {
             WhereCondition wc = new WhereCondition();
             wc.setComparador(ComparatorOp.LIKE.name());
@@ -498,165 +781,37 @@ public class BusquedaModel implements Serializable {
             return prefix + escapeLike(base, DATE_TIME_SETTINGS.likeEscape) + suffix;
         }
 
-        private Date tryParseDate(String s, int indexInValues) {
-            // 0) epoch millis
-            try {
-                long epoch = Long.parseLong(s);
-                return new Date(epoch);
-            } catch (NumberFormatException ignore) {
-            }
-
-            // 1) Instant ISO-8601
-            try {
-                Instant iso = Instant.parse(s);
-                return Date.from(iso);
-            } catch (Exception ignore) {
-            }
-
-            // 2) LocalDateTime con parsers configurados
-            for (DateTimeFormatter f : DATE_TIME_SETTINGS.localDateTimeParsers) {
-                try {
-                    LocalDateTime ldt = LocalDateTime.parse(s, f);
-                    ZonedDateTime zdt = ldt.atZone(DATE_TIME_SETTINGS.zoneId);
-                    return Date.from(zdt.toInstant());
-                } catch (Exception ignore) {
-                }
-            }
-
-            // 3) LocalDate con parsers configurados
-            for (DateTimeFormatter f : DATE_TIME_SETTINGS.localDateParsers) {
-                try {
-                    LocalDate ld = LocalDate.parse(s, f);
-                    // Si es BETWEEN y es el segundo valor y está habilitado: fin de día
-                    boolean endOfDay = getComparatorOp() == ComparatorOp.BETWEEN
-                                       && indexInValues == 1
-                                       && DATE_TIME_SETTINGS.endOfDayOnBetweenUpperBound;
-                    ZonedDateTime zdt = endOfDay
-                            ? ld.atTime(LocalTime.MAX).atZone(DATE_TIME_SETTINGS.zoneId)
-                            : ld.atStartOfDay(DATE_TIME_SETTINGS.zoneId);
-                    return Date.from(zdt.toInstant());
-                } catch (Exception ignore) {
-                }
-            }
-
-            // 4) Legado por compatibilidad
-            try {
-                java.text.SimpleDateFormat formato = new java.text.SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-                return formato.parse(s);
-            } catch (Exception ignore) {
-            }
-
-            return null;
-        }
-
+        /**
+         * Valores convertidos al tipo del atributo. Los conversores se resuelven una vez por tipo
+         * ({@link ValueConverters}); si un valor no se puede convertir se usa el original.
+         */
         @JsonIgnore
         public List<Object> getValuesCast(Class<?> fieldType) {
             if (values == null) return new ArrayList<>();
 
             List<Object> list = new ArrayList<>(values.size());
+            boolean string = fieldType == String.class;
+            ValueConverters converters = CONVERTERS;
+            Function<String, Object> converter = string ? null : converters.get(fieldType);
+            boolean endOfDay = fieldType == Date.class && getComparatorOp() == ComparatorOp.BETWEEN
+                               && DATE_TIME_SETTINGS.isEndOfDayOnBetweenUpperBound();
             for (int i = 0; i < values.size(); i++) {
                 Object value = values.get(i);
                 if (value == null) continue;
                 String s = value.toString();
                 if ("null".equalsIgnoreCase(s)) continue;
-
-                try {
-                    if (fieldType.equals(String.class)) {
-                        list.add(normalize(s));
-                        continue;
-                    }
-                    if (fieldType.equals(BigDecimal.class)) {
-                        list.add(new BigDecimal(s));
-                        continue;
-                    }
-                    if (fieldType.equals(BigInteger.class)) {
-                        list.add(new BigInteger(s));
-                        continue;
-                    }
-                    if (fieldType.equals(Long.class) || fieldType.equals(long.class)) {
-                        list.add(Long.valueOf(s));
-                        continue;
-                    }
-                    if (fieldType.equals(Integer.class) || fieldType.equals(int.class)) {
-                        list.add(Integer.valueOf(s));
-                        continue;
-                    }
-                    if (fieldType.equals(Short.class) || fieldType.equals(short.class)) {
-                        list.add(Short.valueOf(s));
-                        continue;
-                    }
-                    if (fieldType.equals(Byte.class) || fieldType.equals(byte.class)) {
-                        list.add(Byte.valueOf(s));
-                        continue;
-                    }
-                    if (fieldType.equals(Double.class) || fieldType.equals(double.class)) {
-                        list.add(Double.valueOf(s));
-                        continue;
-                    }
-                    if (fieldType.equals(Float.class) || fieldType.equals(float.class)) {
-                        list.add(Float.valueOf(s));
-                        continue;
-                    }
-                    if (fieldType.equals(Boolean.class) || fieldType.equals(boolean.class)) {
-                        list.add(Boolean.valueOf(s));
-                        continue;
-                    }
-
-                    if (fieldType.equals(LocalDate.class)) {
-                        for (DateTimeFormatter f : DATE_TIME_SETTINGS.localDateParsers) {
-                            try {
-                                list.add(LocalDate.parse(s, f));
-                                break;
-                            } catch (Exception ignore) {
-                            }
-                        }
-                        if (list.size() == i) list.add(value); // fallback si no parseó
-                        continue;
-                    }
-
-                    if (fieldType.equals(LocalDateTime.class)) {
-                        boolean parsed = false;
-                        for (DateTimeFormatter f : DATE_TIME_SETTINGS.localDateTimeParsers) {
-                            try {
-                                list.add(LocalDateTime.parse(s, f));
-                                parsed = true;
-                                break;
-                            } catch (Exception ignore) {
-                            }
-                        }
-                        if (!parsed) list.add(value);
-                        continue;
-                    }
-
-                    if (fieldType.equals(OffsetDateTime.class)) {
-                        list.add(OffsetDateTime.parse(s));
-                        continue;
-                    }
-
-                    if (fieldType.equals(Instant.class)) {
-                        try {
-                            long epoch = Long.parseLong(s);
-                            list.add(Instant.ofEpochMilli(epoch));
-                        } catch (NumberFormatException nfe) {
-                            list.add(Instant.parse(s));
-                        }
-                        continue;
-                    }
-
-                    if (fieldType.equals(Date.class)) {
-                        Date dt = tryParseDate(s, i);
-                        list.add(dt != null ? dt : value);
-                        continue;
-                    }
-
-                    if (Enum.class.isAssignableFrom(fieldType)) {
-                        @SuppressWarnings("unchecked")
-                        Class<? extends Enum> enumType = (Class<? extends Enum>) fieldType;
-                        list.add(Enum.valueOf(enumType, s.trim()));
-                        continue;
-                    }
-
+                if (string) {
+                    list.add(normalize(s));
+                    continue;
+                }
+                if (converter == ValueConverters.IDENTITY) {
                     list.add(value);
+                    continue;
+                }
+                try {
+                    // Si es BETWEEN y es el segundo valor: fin de día
+                    Object v = (endOfDay && i == 1 ? converters.dateEndOfDay() : converter).apply(s);
+                    list.add(v != null ? v : value);
                 } catch (Exception e) {
                     LOG.log(Level.FINE, "No se pudo castear el valor '" + s + "' a " + fieldType.getName(), e);
                     list.add(value);
@@ -758,6 +913,22 @@ public class BusquedaModel implements Serializable {
                 return new Builder();
             }
 
+            public ZoneId getZoneId() {
+                return zoneId;
+            }
+
+            public List<DateTimeFormatter> getLocalDateParsers() {
+                return localDateParsers;
+            }
+
+            public List<DateTimeFormatter> getLocalDateTimeParsers() {
+                return localDateTimeParsers;
+            }
+
+            public boolean isEndOfDayOnBetweenUpperBound() {
+                return endOfDayOnBetweenUpperBound;
+            }
+
             public static DateTimeSettings defaults() {
                 return builder()
                         .zoneId(ZoneId.systemDefault())
@@ -955,6 +1126,100 @@ public class BusquedaModel implements Serializable {
             return this;
         }
 
+        /**
+         * With {@code unicoResultado}, fails when the search matches more than one row instead of
+         * returning the first one.
+         *
+         * @param validarUnico true to check that the result is unique
+         */
+        public Builder validarUnico(Boolean validarUnico) {
+            b.setValidarUnico(validarUnico);
+            return this;
+        }
+
+        /**
+         * Executes the search on a Hibernate StatelessSession instead of the shared persistence context.
+         *
+         * @param stateless a Boolean value indicating whether to use a stateless session
+         * @return the Builder instance, enabling method chaining
+         */
+        public Builder stateless(Boolean stateless) {
+            b.setStateless(stateless);
+            return this;
+        }
+
+        /**
+         * Sets how uninitialized Hibernate proxies are written when the result is converted with Gson.
+         *
+         * @param proxyMode INITIALIZE loads the proxy, ID writes only its identifier
+         * @return the Builder instance, enabling method chaining
+         */
+        public Builder proxyMode(HibernateProxyTypeAdapter.ProxyMode proxyMode) {
+            b.setProxyMode(proxyMode);
+            return this;
+        }
+
+        /**
+         * Writes the rows straight to the response output stream while they are read.
+         *
+         * @param stream a Boolean value indicating whether to stream the response
+         * @return the Builder instance, enabling method chaining
+         */
+        public Builder stream(Boolean stream) {
+            b.setStream(stream);
+            return this;
+        }
+
+        /**
+         * Sets how many entity levels are written in full when the result is converted with Gson.
+         *
+         * @param depth the number of levels, deeper associations are written with their id only
+         * @return the Builder instance, enabling method chaining
+         */
+        public Builder depth(Integer depth) {
+            b.setDepth(depth);
+            return this;
+        }
+
+        /**
+         * Requests the columnar response format for column queries.
+         *
+         * @param columnar    a Boolean value indicating whether to answer with one array per column
+         * @param diccionario a Boolean value indicating whether repeated text columns are dictionary encoded
+         * @return the Builder instance, enabling method chaining
+         */
+        public Builder columnar(Boolean columnar, Boolean diccionario) {
+            b.setColumnar(columnar);
+            b.setDiccionario(diccionario);
+            return this;
+        }
+
+        /**
+         * Keeps the encoded response in the result cache.
+         *
+         * @param cacheSegundos seconds the response is served from the cache
+         * @return the Builder instance, enabling method chaining
+         */
+        public Builder cacheSegundos(Integer cacheSegundos) {
+            b.setCacheSegundos(cacheSegundos);
+            return this;
+        }
+
+        /**
+         * Adds a facet: value counts of the path for the current filters.
+         *
+         * @param path  the field path (joins and periods allowed, e.g. "ciudad.nombre", "fecha:month")
+         * @param limit the number of most frequent values returned, null for the configured default
+         * @return the Builder instance, enabling method chaining
+         */
+        public Builder facet(String path, Integer limit) {
+            if (b.getFacets() == null) {
+                b.setFacets(new LinkedHashMap<>());
+            }
+            b.getFacets().put(path, limit);
+            return this;
+        }
+
         /**
          * @param cursorDirection
          * @return
@@ -1020,6 +1285,28 @@ public class BusquedaModel implements Serializable {
             return this;
         }
 
+        /**
+         * Sets the associations to load together with the entity (fetch plan).
+         *
+         * @param paths the association paths, e.g. "ciudad", "telefonos"
+         * @return the Builder instance, enabling method chaining
+         */
+        public Builder fetch(String... paths) {
+            b.setFetch(Arrays.asList(paths));
+            return this;
+        }
+
+        /**
+         * Sets the aggregation (aliased aggregates, group by, having, order by aggregate and limit).
+         *
+         * @param aggregation the aggregation spec
+         * @return the Builder instance, enabling method chaining
+         */
+        public Builder aggregation(AggregationSpec aggregation) {
+            b.setAggregation(aggregation);
+            return this;
+        }
+
         /**
          * Builds and returns the configured instance of {@link BusquedaModel}.
          *
@@ -0,0 +1,209 @@
+package org.angbyte.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Fila de una consulta multiselect ({@code columns}/{@code functions}). Los nombres de las columnas se
+ * comparten entre todas las filas del resultado ({@link Schema}) y cada fila solo guarda sus valores,
+ * en lugar de un LinkedHashMap por registro.
+ * <p>
+ * Se comporta como un {@code Map<String, Object>} de solo lectura, en el orden de las columnas.
+ */
+@JsonSerialize(using = CompactRow.JacksonSerializer.class)
+public final class CompactRow extends AbstractMap<String, Object> implements Serializable {
+
+    /**
+     * Escribe las filas directamente con Gson, sin pasar por el entrySet.
+     */
+    public static final TypeAdapterFactory GSON_FACTORY = new TypeAdapterFactory() {
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            return CompactRow.class.equals(type.getRawType()) ? (TypeAdapter<T>) new GsonAdapter(gson) : null;
+        }
+    };
+
+    private final Schema schema;
+    private final Object[] values;
+
+    public CompactRow(Schema schema, Object[] values) {
+        if (values.length != schema.names.length) {
+            throw new IllegalArgumentException("Se esperaban " + schema.names.length + " valores, se recibieron " + values.length);
+        }
+        this.schema = schema;
+        this.values = values;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @param index Posición de la columna
+     * @return Valor de la columna
+     */
+    public Object get(int index) {
+        return values[index];
+    }
+
+    @Override
+    public Object get(Object key) {
+        Integer i = schema.index.get(key);
+        return i == null ? null : values[i];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return schema.index.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+                    private int i;
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < values.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (i >= values.length) {
+                            throw new NoSuchElementException();
+                        }
+                        int k = i++;
+                        return new SimpleImmutableEntry<>(schema.names[k], values[k]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+        };
+    }
+
+    /**
+     * Nombres de las columnas de un resultado, inmutable y compartido por todas sus filas.
+     */
+    public static final class Schema implements Serializable {
+        private final String[] names;
+        private final Map<String, Integer> index;
+
+        /**
+         * @param names Nombres de las columnas, sin repetidos
+         */
+        public Schema(String[] names) {
+            this.names = names.clone();
+            this.index = new HashMap<>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                if (this.index.putIfAbsent(names[i], i) != null) {
+                    throw new IllegalArgumentException("Columna repetida " + names[i]);
+                }
+            }
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        public String getName(int index) {
+            return names[index];
+        }
+
+        /**
+         * @param name Nombre de la columna
+         * @return Posición de la columna o -1 si no existe
+         */
+        public int indexOf(String name) {
+            Integer i = index.get(name);
+            return i == null ? -1 : i;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(names);
+        }
+    }
+
+    public static class JacksonSerializer extends JsonSerializer<CompactRow> {
+        @Override
+        public void serialize(CompactRow row, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeStartObject(row);
+            for (int i = 0; i < row.values.length; i++) {
+                gen.writeFieldName(row.schema.names[i]);
+                Object v = row.values[i];
+                if (v == null) {
+                    gen.writeNull();
+                } else {
+                    serializers.findValueSerializer(v.getClass()).serialize(v, gen, serializers);
+                }
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    private static class GsonAdapter extends TypeAdapter<CompactRow> {
+        private final Gson gson;
+
+        private GsonAdapter(Gson gson) {
+            this.gson = gson;
+        }
+
+        @Override
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        public void write(JsonWriter out, CompactRow row) throws IOException {
+            if (row == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            for (int i = 0; i < row.values.length; i++) {
+                out.name(row.schema.names[i]);
+                Object v = row.values[i];
+                if (v == null) {
+                    out.nullValue();
+                } else {
+                    TypeAdapter adapter = gson.getAdapter(v.getClass());
+                    adapter.write(out, v);
+                }
+            }
+            out.endObject();
+        }
+
+        @Override
+        public CompactRow read(JsonReader in) {
+            throw new UnsupportedOperationException("CompactRow es de solo lectura");
+        }
+    }
+}
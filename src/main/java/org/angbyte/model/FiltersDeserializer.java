@@ -0,0 +1,148 @@
+package org.angbyte.model;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lee el mapa {@code filters} de {@link BusquedaModel} directamente del stream de tokens: cada objeto
+ * de primer nivel se arma como {@link BusquedaModel.WhereCondition} sin pasar por un Map intermedio ni
+ * por Gson. Los campos desconocidos se ignoran, igual que antes.
+ * <p>
+ * Si el objeto no tiene la forma de una condición ({@code values} que no es arreglo, {@code trim}/{@code upper}
+ * que no son booleanos, etc.) se deja como Map. Los valores dentro de {@code values} (OR, CASE) quedan
+ * como Map/List; los números decimales se leen como BigDecimal para no perder precisión.
+ */
+public class FiltersDeserializer extends JsonDeserializer<Map<String, Object>> {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        JsonToken t = p.currentToken();
+        if (t == JsonToken.START_OBJECT) {
+            t = p.nextToken();
+        } else if (t != JsonToken.FIELD_NAME && t != JsonToken.END_OBJECT) {
+            return (Map<String, Object>) ctxt.handleUnexpectedToken(Map.class, p);
+        }
+        Map<String, Object> filters = new LinkedHashMap<>();
+        for (; t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+            String key = p.currentName();
+            filters.put(key, p.nextToken() == JsonToken.START_OBJECT ? readCondition(p) : readValue(p));
+        }
+        return filters;
+    }
+
+    /**
+     * @return WhereCondition, o el objeto como Map si no tiene la forma de una condición
+     */
+    @SuppressWarnings("unchecked")
+    private static Object readCondition(JsonParser p) throws IOException {
+        BusquedaModel.WhereCondition cond = new BusquedaModel.WhereCondition();
+        // Los valores originales solo se guardan cuando el objeto resulta no ser una condición
+        Map<String, Object> fields = null;
+        boolean valid = true;
+        for (JsonToken t = p.nextToken(); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+            String name = p.currentName();
+            p.nextToken();
+            Object value = readValue(p);
+            if (valid) {
+                switch (name) {
+                    case "comparador" -> {
+                        valid = value == null || value instanceof String;
+                        if (valid) {
+                            cond.setComparador((String) value);
+                        }
+                    }
+                    case "trim", "upper" -> {
+                        Boolean b = BusquedaModel.WhereCondition.toBoolean(value);
+                        valid = b != null || value == null;
+                        if (valid && name.equals("trim")) {
+                            cond.setTrim(b);
+                        } else if (valid) {
+                            cond.setUpper(b);
+                        }
+                    }
+                    case "values" -> {
+                        valid = value == null || value instanceof List;
+                        if (valid) {
+                            cond.setValues((List<Object>) value);
+                        }
+                    }
+                    default -> {
+                        // Igual que antes, los campos desconocidos se ignoran
+                    }
+                }
+                if (!valid) {
+                    fields = toMap(cond, name);
+                }
+            }
+            if (fields != null) {
+                fields.put(name, value);
+            }
+        }
+        return valid ? cond : fields;
+    }
+
+    /**
+     * Campos que ya se asignaron a la condición antes de descubrir que no lo es. Los campos
+     * desconocidos leídos antes no se conservan.
+     */
+    private static Map<String, Object> toMap(BusquedaModel.WhereCondition cond, String current) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        if (!current.equals("comparador")) {
+            map.put("comparador", cond.getComparador());
+        }
+        if (!current.equals("trim")) {
+            map.put("trim", cond.getTrim());
+        }
+        if (!current.equals("upper")) {
+            map.put("upper", cond.getUpper());
+        }
+        if (!current.equals("values") && cond.getValues() != null) {
+            map.put("values", cond.getValues());
+        }
+        return map;
+    }
+
+    private static Object readValue(JsonParser p) throws IOException {
+        switch (p.currentToken()) {
+            case START_OBJECT: {
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (JsonToken t = p.nextToken(); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+                    String name = p.currentName();
+                    p.nextToken();
+                    map.put(name, readValue(p));
+                }
+                return map;
+            }
+            case START_ARRAY: {
+                List<Object> list = new ArrayList<>();
+                while (p.nextToken() != JsonToken.END_ARRAY) {
+                    list.add(readValue(p));
+                }
+                return list;
+            }
+            case VALUE_STRING:
+                return p.getText();
+            case VALUE_NUMBER_INT:
+                return p.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return p.getDecimalValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_EMBEDDED_OBJECT:
+                return p.getEmbeddedObject();
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.angbyte.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Respuesta en formato columnar para consultas con {@code columns}: los nombres de las columnas una
+ * sola vez y un arreglo de valores por columna.
+ * <pre>
+ * {"columns": ["id", "ciudad.nombre"], "rows": 3,
+ *  "data": [[1, 2, 3], [0, 0, 1]],
+ *  "dictionaries": {"ciudad.nombre": ["Quito", "Guayaquil"]}}
+ * </pre>
+ * Las columnas de texto con pocos valores distintos se codifican con diccionario: en {@code data} van
+ * las posiciones dentro de {@code dictionaries}, los null se mantienen como null.
+ */
+public class RespuestaColumnar implements Serializable {
+
+    /**
+     * Media type para solicitar el formato desde el header Accept.
+     */
+    public static final String MEDIA_TYPE = "application/vnd.buho.columnar+json";
+    /**
+     * Máximo de valores distintos para codificar una columna con diccionario.
+     */
+    private static final int DICTIONARY_MAX_SIZE = 4096;
+
+    private List<String> columns;
+    private int rows;
+    private List<List<Object>> data;
+    private Map<String, List<Object>> dictionaries;
+
+    public RespuestaColumnar() {
+    }
+
+    /**
+     * Arma la respuesta a partir de las filas de una consulta multiselect.
+     *
+     * @param result      Filas (Map) del resultado
+     * @param diccionario Codificar con diccionario las columnas de texto que se repiten
+     * @return Respuesta columnar
+     */
+    public static RespuestaColumnar from(List<?> result, boolean diccionario) {
+        RespuestaColumnar r = new RespuestaColumnar();
+        Set<String> names = new LinkedHashSet<>();
+        if (result != null) {
+            for (Object row : result) {
+                if (row instanceof CompactRow) {
+                    // Todas las filas comparten el mismo esquema
+                    CompactRow.Schema schema = ((CompactRow) row).getSchema();
+                    for (int i = 0; i < schema.size(); i++) {
+                        names.add(schema.getName(i));
+                    }
+                    break;
+                }
+                if (row instanceof Map) {
+                    ((Map<?, ?>) row).keySet().forEach(k -> names.add(String.valueOf(k)));
+                }
+            }
+        }
+        r.columns = new ArrayList<>(names);
+        r.rows = result == null ? 0 : result.size();
+        r.data = new ArrayList<>(r.columns.size());
+        for (String column : r.columns) {
+            List<Object> values = new ArrayList<>(r.rows);
+            if (result != null) {
+                for (Object row : result) {
+                    values.add(row instanceof Map ? ((Map<?, ?>) row).get(column) : null);
+                }
+            }
+            List<Object> dictionary = diccionario ? dictionary(values) : null;
+            if (dictionary != null) {
+                if (r.dictionaries == null) {
+                    r.dictionaries = new LinkedHashMap<>();
+                }
+                r.dictionaries.put(column, dictionary);
+                values = encode(values, dictionary);
+            }
+            r.data.add(values);
+        }
+        return r;
+    }
+
+    /**
+     * Valores distintos de la columna si es de texto y se repiten lo suficiente (al menos dos veces en
+     * promedio), caso contrario null.
+     */
+    private static List<Object> dictionary(List<Object> values) {
+        Set<Object> distinct = new LinkedHashSet<>();
+        int nonNull = 0;
+        for (Object v : values) {
+            if (v == null) {
+                continue;
+            }
+            if (!(v instanceof String)) {
+                return null;
+            }
+            nonNull++;
+            distinct.add(v);
+            if (distinct.size() > DICTIONARY_MAX_SIZE) {
+                return null;
+            }
+        }
+        if (distinct.isEmpty() || distinct.size() * 2 > nonNull) {
+            return null;
+        }
+        return new ArrayList<>(distinct);
+    }
+
+    private static List<Object> encode(List<Object> values, List<Object> dictionary) {
+        Map<Object, Integer> codes = new HashMap<>(dictionary.size() * 2);
+        for (int i = 0; i < dictionary.size(); i++) {
+            codes.put(dictionary.get(i), i);
+        }
+        List<Object> encoded = new ArrayList<>(values.size());
+        for (Object v : values) {
+            encoded.add(v == null ? null : codes.get(v));
+        }
+        return encoded;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public void setColumns(List<String> columns) {
+        this.columns = columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public void setRows(int rows) {
+        this.rows = rows;
+    }
+
+    public List<List<Object>> getData() {
+        return data;
+    }
+
+    public void setData(List<List<Object>> data) {
+        this.data = data;
+    }
+
+    public Map<String, List<Object>> getDictionaries() {
+        return dictionaries;
+    }
+
+    public void setDictionaries(Map<String, List<Object>> dictionaries) {
+        this.dictionaries = dictionaries;
+    }
+
+    @Override
+    public String toString() {
+        return "RespuestaColumnar{" + "columns=" + columns + ", rows=" + rows + ", dictionaries=" + (dictionaries == null ? "[]" : dictionaries.keySet()) + '}';
+    }
+}
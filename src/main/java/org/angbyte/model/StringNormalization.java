@@ -0,0 +1,41 @@
+package org.angbyte.model;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Indica cómo están guardados los textos de una entidad o de un campo, para comparar contra la columna
+ * sin funciones (y poder usar sus índices) cuando es seguro. Se puede sobrescribir con
+ * {@code buho.string-normalization}.
+ * <pre>
+ * &#64;Entity
+ * &#64;StringNormalization(StringNormalization.Mode.STORED_UPPERCASE)
+ * public class Persona { ... }
+ * </pre>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE, ElementType.FIELD})
+public @interface StringNormalization {
+
+    Mode value();
+
+    enum Mode {
+        /**
+         * Comportamiento por defecto: se aplica {@code UPPER}/{@code TRIM} a la columna según {@code upper}/{@code trim}
+         * de la condición. Solo usa índices funcionales sobre {@code TRIM(UPPER(columna))}.
+         */
+        FUNCTION,
+        /**
+         * Los valores se guardan en mayúsculas y sin espacios al inicio/fin: se compara la columna directamente
+         * contra el valor normalizado.
+         */
+        STORED_UPPERCASE,
+        /**
+         * La columna usa una collation que no distingue mayúsculas y los valores se guardan sin espacios al
+         * inicio/fin: se compara la columna directamente.
+         */
+        CASE_INSENSITIVE
+    }
+}
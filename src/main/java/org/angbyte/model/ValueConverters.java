@@ -0,0 +1,263 @@
+package org.angbyte.model;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.ParsePosition;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQuery;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Conversores de los valores de {@link BusquedaModel.WhereCondition} al tipo del atributo. Se resuelven
+ * una sola vez por tipo y se guardan como {@code Function<String, Object>}; devuelven null cuando el
+ * texto no corresponde al tipo (se usa el valor original).
+ * <p>
+ * Las fechas no se prueban formato por formato capturando excepciones: se revisa la forma del texto
+ * (epoch, instante ISO, fecha con hora o solo fecha) y cada patrón se prueba con
+ * {@link DateTimeFormatter#parseUnresolved(CharSequence, ParsePosition)}, que no lanza excepción. Los
+ * literales de fechas ya convertidos se guardan en un cache acotado.
+ * <p>
+ * Cada instancia corresponde a una configuración de {@link BusquedaModel.WhereCondition.DateTimeSettings}.
+ */
+final class ValueConverters {
+
+    /**
+     * Tipos sin conversión, se usa el valor tal cual.
+     */
+    static final Function<String, Object> IDENTITY = s -> null;
+    private static final int LITERAL_CACHE_SIZE = 4096;
+    /**
+     * Formato que se aceptaba con SimpleDateFormat (ignora lo que sigue a los segundos).
+     */
+    private static final DateTimeFormatter LEGACY_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final BusquedaModel.WhereCondition.DateTimeSettings settings;
+    private final Map<Class<?>, Function<String, Object>> byType = new ConcurrentHashMap<>();
+    private final Cache<LiteralKey, Object> literals = CacheBuilder.newBuilder().maximumSize(LITERAL_CACHE_SIZE).build();
+    private final Function<String, Object> dateEndOfDay;
+
+    ValueConverters(BusquedaModel.WhereCondition.DateTimeSettings settings) {
+        this.settings = settings;
+        this.dateEndOfDay = cached(Date.class, true, s -> toDate(s, true));
+    }
+
+    /**
+     * @param type Tipo del atributo (no String, que depende de trim/upper de la condición)
+     * @return Conversor del tipo, {@link #IDENTITY} si no se convierte
+     */
+    Function<String, Object> get(Class<?> type) {
+        return byType.computeIfAbsent(type, this::resolve);
+    }
+
+    /**
+     * Fecha para el límite superior de un BETWEEN: si viene solo la fecha se toma el fin del día.
+     */
+    Function<String, Object> dateEndOfDay() {
+        return dateEndOfDay;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Function<String, Object> resolve(Class<?> type) {
+        if (type == BigDecimal.class) {
+            return BigDecimal::new;
+        }
+        if (type == BigInteger.class) {
+            return BigInteger::new;
+        }
+        if (type == Long.class || type == long.class) {
+            return Long::valueOf;
+        }
+        if (type == Integer.class || type == int.class) {
+            return Integer::valueOf;
+        }
+        if (type == Short.class || type == short.class) {
+            return Short::valueOf;
+        }
+        if (type == Byte.class || type == byte.class) {
+            return Byte::valueOf;
+        }
+        if (type == Double.class || type == double.class) {
+            return Double::valueOf;
+        }
+        if (type == Float.class || type == float.class) {
+            return Float::valueOf;
+        }
+        if (type == Boolean.class || type == boolean.class) {
+            return Boolean::valueOf;
+        }
+        if (type == LocalDate.class) {
+            return cached(type, false, s -> parse(s, settings.getLocalDateParsers(), LocalDate::from));
+        }
+        if (type == LocalDateTime.class) {
+            return cached(type, false, s -> parse(s, settings.getLocalDateTimeParsers(), LocalDateTime::from));
+        }
+        if (type == OffsetDateTime.class) {
+            return cached(type, false, OffsetDateTime::parse);
+        }
+        if (type == Instant.class) {
+            return cached(type, false, s -> isEpoch(s) ? Instant.ofEpochMilli(Long.parseLong(s)) : Instant.parse(s));
+        }
+        if (type == Date.class) {
+            return cached(type, false, s -> toDate(s, false));
+        }
+        if (Enum.class.isAssignableFrom(type)) {
+            Class<? extends Enum> enumType = (Class<? extends Enum>) type;
+            return s -> Enum.valueOf(enumType, s.trim());
+        }
+        return IDENTITY;
+    }
+
+    /**
+     * Guarda las conversiones de los literales. Date es mutable, se devuelve una copia.
+     */
+    private Function<String, Object> cached(Class<?> type, boolean endOfDay, Function<String, Object> converter) {
+        return s -> {
+            LiteralKey key = new LiteralKey(type, endOfDay, s);
+            Object v = literals.getIfPresent(key);
+            if (v == null) {
+                v = converter.apply(s);
+                if (v == null) {
+                    return null;
+                }
+                literals.put(key, v);
+            }
+            return v instanceof Date ? new Date(((Date) v).getTime()) : v;
+        };
+    }
+
+    private Date toDate(String s, boolean endOfDay) {
+        if (isEpoch(s)) {
+            return new Date(Long.parseLong(s));
+        }
+        ZoneId zone = settings.getZoneId();
+        if (isInstant(s)) {
+            TemporalAccessor t = parse(s, DateTimeFormatter.ISO_INSTANT, Instant::from, true);
+            if (t != null) {
+                return Date.from((Instant) t);
+            }
+        }
+        // Según la forma se prueban primero los patrones con hora o los de solo fecha
+        LocalDateTime ldt = null;
+        LocalDate ld = null;
+        if (hasTime(s)) {
+            ldt = parse(s, settings.getLocalDateTimeParsers(), LocalDateTime::from);
+            if (ldt == null) {
+                ld = parse(s, settings.getLocalDateParsers(), LocalDate::from);
+            }
+            if (ldt == null && ld == null) {
+                // Como SimpleDateFormat: lo que sigue a los segundos se ignora
+                ldt = parse(s, LEGACY_DATE_TIME, LocalDateTime::from, false);
+                zone = ZoneId.systemDefault();
+            }
+        } else {
+            ld = parse(s, settings.getLocalDateParsers(), LocalDate::from);
+            if (ld == null) {
+                ldt = parse(s, settings.getLocalDateTimeParsers(), LocalDateTime::from);
+            }
+        }
+        if (ldt != null) {
+            return Date.from(ldt.atZone(zone).toInstant());
+        }
+        if (ld != null) {
+            return Date.from((endOfDay ? ld.atTime(LocalTime.MAX).atZone(zone) : ld.atStartOfDay(zone)).toInstant());
+        }
+        return null;
+    }
+
+    private static <T> T parse(String s, List<DateTimeFormatter> formatters, TemporalQuery<T> query) {
+        for (DateTimeFormatter f : formatters) {
+            T t = parse(s, f, query, true);
+            if (t != null) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Solo resuelve (con excepción si la fecha no existe, ej. 31/02) cuando el texto tiene la forma del patrón.
+     */
+    private static <T> T parse(String s, DateTimeFormatter f, TemporalQuery<T> query, boolean complete) {
+        ParsePosition pos = new ParsePosition(0);
+        if (f.parseUnresolved(s, pos) == null || pos.getErrorIndex() >= 0 || (complete && pos.getIndex() != s.length())) {
+            return null;
+        }
+        try {
+            return complete ? f.parse(s, query) : f.parse(s.substring(0, pos.getIndex()), query);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean isEpoch(String s) {
+        int start = s.startsWith("-") ? 1 : 0;
+        if (s.length() == start || s.length() - start > 18) {
+            return false;
+        }
+        for (int i = start; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fecha y hora con zona: termina en Z o tiene un offset después de la hora.
+     */
+    private static boolean isInstant(String s) {
+        int t = s.indexOf('T');
+        if (t < 0) {
+            return false;
+        }
+        char last = s.charAt(s.length() - 1);
+        return last == 'Z' || last == 'z' || s.indexOf('+', t) > 0 || s.indexOf('-', t) > 0;
+    }
+
+    private static boolean hasTime(String s) {
+        return s.indexOf(':') > 0;
+    }
+
+    private static final class LiteralKey {
+        private final Class<?> type;
+        private final boolean endOfDay;
+        private final String value;
+
+        private LiteralKey(Class<?> type, boolean endOfDay, String value) {
+            this.type = type;
+            this.endOfDay = endOfDay;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LiteralKey)) {
+                return false;
+            }
+            LiteralKey k = (LiteralKey) o;
+            return endOfDay == k.endOfDay && type == k.type && value.equals(k.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * type.hashCode() + Boolean.hashCode(endOfDay)) + value.hashCode();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.angbyte.query;
+
+import org.angbyte.model.BusquedaModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Árbol de los filtros de {@link BusquedaModel}: grupos AND / OR, condiciones sobre una ruta y constantes
+ * (siempre verdadero / siempre falso). Lo arma {@link FilterParser} y lo simplifica {@link FilterOptimizer}.
+ * <p>
+ * Los nodos son inmutables; {@link #key()} es la forma canónica del nodo, se usa para ordenar y quitar
+ * duplicados.
+ */
+public abstract class FilterNode {
+
+    public static final Constant TRUE = new Constant(true);
+    public static final Constant FALSE = new Constant(false);
+
+    FilterNode() {
+    }
+
+    /**
+     * Forma canónica del nodo, dos nodos con la misma clave generan el mismo predicado.
+     */
+    public abstract String key();
+
+    /**
+     * Recorre las condiciones del árbol.
+     */
+    public abstract void forEachCondition(Consumer<Condition> action);
+
+    public static Group and(List<FilterNode> children) {
+        return new Group(false, children);
+    }
+
+    public static Group or(List<FilterNode> children) {
+        return new Group(true, children);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FilterNode && key().equals(((FilterNode) o).key());
+    }
+
+    @Override
+    public int hashCode() {
+        return key().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return key();
+    }
+
+    /**
+     * Grupo AND u OR.
+     */
+    public static final class Group extends FilterNode {
+        private final boolean or;
+        private final List<FilterNode> children;
+        private String key;
+
+        private Group(boolean or, List<FilterNode> children) {
+            this.or = or;
+            this.children = Collections.unmodifiableList(new ArrayList<>(children));
+        }
+
+        public boolean isOr() {
+            return or;
+        }
+
+        public List<FilterNode> getChildren() {
+            return children;
+        }
+
+        /**
+         * Mismo tipo de grupo con otros hijos.
+         */
+        public Group with(List<FilterNode> children) {
+            return new Group(or, children);
+        }
+
+        @Override
+        public String key() {
+            if (key == null) {
+                StringBuilder sb = new StringBuilder(or ? "OR(" : "AND(");
+                for (int i = 0; i < children.size(); i++) {
+                    if (i > 0) {
+                        sb.append(", ");
+                    }
+                    sb.append(children.get(i).key());
+                }
+                key = sb.append(')').toString();
+            }
+            return key;
+        }
+
+        @Override
+        public void forEachCondition(Consumer<Condition> action) {
+            children.forEach(c -> c.forEachCondition(action));
+        }
+    }
+
+    /**
+     * Condición sobre una ruta ({@code ciudad.nombre}). El comparador ya viene normalizado
+     * ({@link FilterParser#normalize(String)}); {@code parent} es el comparador del grupo de donde salió
+     * (OR / AND), lo usan los LIKE con varios valores para unirlos.
+     */
+    public static final class Condition extends FilterNode {
+        private final String path;
+        private final BusquedaModel.WhereCondition condition;
+        private final BusquedaModel.WhereCondition parent;
+        private String key;
+
+        Condition(String path, BusquedaModel.WhereCondition condition, BusquedaModel.WhereCondition parent) {
+            this.path = path;
+            this.condition = condition;
+            this.parent = parent;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public BusquedaModel.WhereCondition getCondition() {
+            return condition;
+        }
+
+        public BusquedaModel.WhereCondition getParent() {
+            return parent;
+        }
+
+        public String getComparador() {
+            return condition.getComparador();
+        }
+
+        /**
+         * Ruta con las opciones de texto: condiciones con la misma firma comparan la misma expresión.
+         */
+        String signature() {
+            return path + "|" + condition.getTrim() + "|" + condition.getUpper() + "|" + (parent == null ? "" : parent.getComparador());
+        }
+
+        @Override
+        public String key() {
+            if (key == null) {
+                key = path + " " + condition.getComparador() + " " + condition.getValues()
+                      + (condition.getTrim() ? "" : " notrim") + (condition.getUpper() ? "" : " noupper")
+                      + (parent == null ? "" : " in " + parent.getComparador());
+            }
+            return key;
+        }
+
+        @Override
+        public void forEachCondition(Consumer<Condition> action) {
+            action.accept(this);
+        }
+    }
+
+    /**
+     * Siempre verdadero (se omite) o siempre falso (no devuelve filas).
+     */
+    public static final class Constant extends FilterNode {
+        private final boolean value;
+
+        private Constant(boolean value) {
+            this.value = value;
+        }
+
+        public boolean getValue() {
+            return value;
+        }
+
+        @Override
+        public String key() {
+            return value ? "TRUE" : "FALSE";
+        }
+
+        @Override
+        public void forEachCondition(Consumer<Condition> action) {
+        }
+    }
+
+    static BusquedaModel.WhereCondition copy(BusquedaModel.WhereCondition c, String comparador, List<Object> values) {
+        BusquedaModel.WhereCondition n = new BusquedaModel.WhereCondition(comparador, values);
+        n.setTrim(c.getTrim());
+        n.setUpper(c.getUpper());
+        return n;
+    }
+}
@@ -0,0 +1,238 @@
+package org.angbyte.query;
+
+import org.angbyte.model.BusquedaModel;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Simplifica un {@link FilterNode}:
+ * <ol>
+ *     <li>Aplana grupos anidados del mismo tipo (AND dentro de AND, OR dentro de OR).</li>
+ *     <li>Quita condiciones repetidas.</li>
+ *     <li>Une los EQ / IN de un OR sobre la misma ruta en un solo IN.</li>
+ *     <li>Resuelve constantes: {@code x IS NULL AND x = 1}, {@code x = 1 AND x = 2} o un IN sin valores
+ *     en común son falsos; {@code x IS NULL OR x IS NOT NULL} es verdadero (solo campos de la raíz, en una
+ *     relación el join también filtra).</li>
+ *     <li>Ordena los hijos de cada grupo, el mismo filtro genera siempre el mismo SQL.</li>
+ * </ol>
+ * Las uniones y contradicciones de valores necesitan el tipo del campo ({@code types}, null si no se conoce)
+ * para comparar los valores convertidos; en los campos {@link Date} el EQ es el día completo y no se tocan.
+ */
+public final class FilterOptimizer {
+
+    private static final Comparator<FilterNode> ORDER = Comparator.comparing(FilterNode::key);
+
+    private final Function<String, Class<?>> types;
+
+    /**
+     * @param types Tipo del campo de cada ruta, null si no se conoce
+     */
+    public FilterOptimizer(Function<String, Class<?>> types) {
+        this.types = types == null ? p -> null : types;
+    }
+
+    public FilterNode optimize(FilterNode node) {
+        if (!(node instanceof FilterNode.Group)) {
+            return node;
+        }
+        FilterNode.Group group = (FilterNode.Group) node;
+        boolean or = group.isOr();
+        List<FilterNode> children = new ArrayList<>(group.getChildren().size());
+        for (FilterNode child : group.getChildren()) {
+            FilterNode c = optimize(child);
+            if (c instanceof FilterNode.Group && ((FilterNode.Group) c).isOr() == or) {
+                children.addAll(((FilterNode.Group) c).getChildren());
+            } else {
+                children.add(c);
+            }
+        }
+        // Constantes: en AND el falso gana y el verdadero sobra, en OR al revés
+        List<FilterNode> kept = new ArrayList<>(children.size());
+        for (FilterNode c : children) {
+            if (c instanceof FilterNode.Constant) {
+                if (((FilterNode.Constant) c).getValue() == or) {
+                    return c;
+                }
+            } else {
+                kept.add(c);
+            }
+        }
+        kept = new ArrayList<>(new LinkedHashSet<>(kept));
+        if (or) {
+            kept = mergeIn(kept);
+            if (isTautology(kept)) {
+                return FilterNode.TRUE;
+            }
+        } else if (isContradiction(kept)) {
+            return FilterNode.FALSE;
+        }
+        if (kept.isEmpty()) {
+            return or ? FilterNode.FALSE : FilterNode.TRUE;
+        }
+        if (kept.size() == 1) {
+            return kept.get(0);
+        }
+        kept.sort(ORDER);
+        return group.with(kept);
+    }
+
+    /**
+     * EQ / IN del OR sobre la misma ruta (y mismas opciones de texto) en un IN con todos los valores.
+     */
+    private List<FilterNode> mergeIn(List<FilterNode> children) {
+        Map<String, List<FilterNode.Condition>> bySignature = new LinkedHashMap<>();
+        for (FilterNode c : children) {
+            if (c instanceof FilterNode.Condition && isMergeable((FilterNode.Condition) c)) {
+                FilterNode.Condition cond = (FilterNode.Condition) c;
+                bySignature.computeIfAbsent(cond.signature(), k -> new ArrayList<>()).add(cond);
+            }
+        }
+        List<FilterNode> result = new ArrayList<>(children.size());
+        Set<FilterNode> merged = new HashSet<>();
+        for (FilterNode c : children) {
+            if (merged.contains(c)) {
+                continue;
+            }
+            List<FilterNode.Condition> same = c instanceof FilterNode.Condition ? bySignature.get(((FilterNode.Condition) c).signature()) : null;
+            if (same == null || same.size() < 2 || !same.contains(c)) {
+                result.add(c);
+                continue;
+            }
+            Set<Object> values = new LinkedHashSet<>();
+            for (FilterNode.Condition s : same) {
+                values.addAll(inValues(s));
+                merged.add(s);
+            }
+            FilterNode.Condition first = same.get(0);
+            result.add(new FilterNode.Condition(first.getPath(), FilterNode.copy(first.getCondition(), "IN", new ArrayList<>(values)), first.getParent()));
+        }
+        return result;
+    }
+
+    private boolean isMergeable(FilterNode.Condition c) {
+        String op = c.getComparador();
+        if (!("EQ".equals(op) || "IN".equals(op)) || !isPlainType(types.apply(c.getPath()))) {
+            return false;
+        }
+        List<Object> values = c.getCondition().getValues();
+        if (values == null || values.isEmpty()) {
+            return false;
+        }
+        for (Object v : inValues(c)) {
+            if (!(v instanceof String || v instanceof Number || v instanceof Boolean)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Valores que compara la condición: el EQ solo usa el primero.
+     */
+    private static List<Object> inValues(FilterNode.Condition c) {
+        List<Object> values = c.getCondition().getValues();
+        return "EQ".equals(c.getComparador()) ? values.subList(0, 1) : values;
+    }
+
+    /**
+     * Tipos donde EQ es igualdad exacta (en Date es el día completo).
+     */
+    private static boolean isPlainType(Class<?> type) {
+        return type != null && !Date.class.isAssignableFrom(type) && !Calendar.class.isAssignableFrom(type);
+    }
+
+    /**
+     * AND con IS NULL y IS NOT NULL (o un valor) sobre la misma ruta, o EQ / IN sin valores en común.
+     */
+    private boolean isContradiction(List<FilterNode> children) {
+        Map<String, Set<Object>> allowed = new LinkedHashMap<>();
+        Set<String> isNull = new HashSet<>();
+        Set<String> notNull = new HashSet<>();
+        for (FilterNode c : children) {
+            if (!(c instanceof FilterNode.Condition)) {
+                continue;
+            }
+            FilterNode.Condition cond = (FilterNode.Condition) c;
+            String op = cond.getComparador();
+            if ("ISNULL".equals(op)) {
+                isNull.add(cond.getPath());
+            } else if ("ISNOTNULL".equals(op)) {
+                notNull.add(cond.getPath());
+            } else if (isMergeable(cond)) {
+                notNull.add(cond.getPath());
+                Set<Object> values = castValues(cond);
+                if (values == null) {
+                    continue;
+                }
+                Set<Object> current = allowed.get(cond.signature());
+                if (current == null) {
+                    allowed.put(cond.signature(), values);
+                } else {
+                    current.retainAll(values);
+                    if (current.isEmpty()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        for (String path : isNull) {
+            if (notNull.contains(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * OR con IS NULL e IS NOT NULL sobre el mismo campo de la raíz.
+     */
+    private static boolean isTautology(List<FilterNode> children) {
+        Set<String> isNull = new HashSet<>();
+        Set<String> notNull = new HashSet<>();
+        for (FilterNode c : children) {
+            if (c instanceof FilterNode.Condition) {
+                FilterNode.Condition cond = (FilterNode.Condition) c;
+                if (cond.getPath().contains(".")) {
+                    continue;
+                }
+                if ("ISNULL".equals(cond.getComparador())) {
+                    isNull.add(cond.getPath());
+                } else if ("ISNOTNULL".equals(cond.getComparador())) {
+                    notNull.add(cond.getPath());
+                }
+            }
+        }
+        isNull.retainAll(notNull);
+        return !isNull.isEmpty();
+    }
+
+    /**
+     * Valores convertidos al tipo del campo (con trim/upper en los textos), null si no se pudieron convertir.
+     */
+    private Set<Object> castValues(FilterNode.Condition c) {
+        Class<?> type = types.apply(c.getPath());
+        try {
+            BusquedaModel.WhereCondition w = FilterNode.copy(c.getCondition(), c.getComparador(), inValues(c));
+            Set<Object> values = new HashSet<>(w.getValuesCast(type));
+            for (Object v : values) {
+                // Valor que no corresponde al tipo: lo decide la base
+                if (!type.isPrimitive() && !type.isInstance(v)) {
+                    return null;
+                }
+            }
+            return values;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package org.angbyte.query;
+
+import org.angbyte.model.BusquedaModel;
+import org.angbyte.utils.Utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Convierte el mapa {@code filters} en un {@link FilterNode}. Los filtros de primer nivel se unen con AND.
+ * <p>
+ * En los comparadores OR / AND cada elemento de {@code values} puede ser:
+ * <ul>
+ *     <li>una condición ({@code {"comparador": "EQ", "values": [...]}}) sobre la misma ruta,</li>
+ *     <li>un mapa de filtros ({@code {"apellido": {...}}}) con sus propias rutas, varias claves se unen con AND,</li>
+ *     <li>un valor simple, que es un EQ sobre la misma ruta.</li>
+ * </ul>
+ * Los comparadores se normalizan ({@code IS_NULL} → {@code ISNULL}, {@code GE} → {@code GTE}, etc.); el
+ * resto (LIKE, BETWEEN...) queda como condición y se arma igual que antes. Los operandos de un CASE se
+ * separan con {@link #parseCase(String, BusquedaModel.WhereCondition)}.
+ */
+public final class FilterParser {
+
+    private static final Logger LOG = Logger.getLogger(FilterParser.class.getName());
+    private static final Set<String> CONDITION_FIELDS = Set.of("comparador", "values", "trim", "upper");
+
+    private FilterParser() {
+    }
+
+    /**
+     * @param filters Filtros de la búsqueda (ruta → condición o valor)
+     * @return Árbol AND de los filtros, {@link FilterNode#TRUE} si no hay filtros
+     */
+    public static FilterNode parse(Map<String, Object> filters) {
+        if (filters == null || filters.isEmpty()) {
+            return FilterNode.TRUE;
+        }
+        List<FilterNode> children = new ArrayList<>(filters.size());
+        filters.forEach((path, value) -> {
+            if (path != null && !path.trim().isEmpty()) {
+                children.add(parse(path, value, null));
+            }
+        });
+        return children.size() == 1 ? children.get(0) : FilterNode.and(children);
+    }
+
+    private static FilterNode parse(String path, Object value, BusquedaModel.WhereCondition parent) {
+        BusquedaModel.WhereCondition cond = toCondition(value);
+        if (cond == null) {
+            cond = new BusquedaModel.WhereCondition(Arrays.asList(value));
+        }
+        String comparador = normalize(cond.getComparador());
+        if ("OR".equals(comparador) || "AND".equals(comparador)) {
+            List<FilterNode> children = new ArrayList<>();
+            if (cond.getValues() != null) {
+                for (Object item : cond.getValues()) {
+                    FilterNode child = parseItem(path, item, cond);
+                    if (child != null) {
+                        children.add(child);
+                    }
+                }
+            }
+            return "OR".equals(comparador) ? FilterNode.or(children) : FilterNode.and(children);
+        }
+        return new FilterNode.Condition(path, FilterNode.copy(cond, comparador, cond.getValues()), parent);
+    }
+
+    /**
+     * Elemento de un OR / AND: condición sobre la misma ruta, mapa de filtros o valor simple.
+     */
+    @SuppressWarnings("unchecked")
+    private static FilterNode parseItem(String path, Object item, BusquedaModel.WhereCondition parent) {
+        item = fromJsonText(item);
+        if (item == null) {
+            return null;
+        }
+        if (item instanceof BusquedaModel.WhereCondition || isCondition(item)) {
+            return parse(path, item, parent);
+        }
+        if (item instanceof Map) {
+            Map<String, Object> filters = (Map<String, Object>) item;
+            List<FilterNode> children = new ArrayList<>(filters.size());
+            filters.forEach((p, v) -> children.add(parse(p, v, parent)));
+            return children.size() == 1 ? children.get(0) : FilterNode.and(children);
+        }
+        return new FilterNode.Condition(path, new BusquedaModel.WhereCondition("EQ", Arrays.asList(item)), parent);
+    }
+
+    /**
+     * Condiciones enviadas como texto json, null si el texto no es válido.
+     */
+    private static Object fromJsonText(Object item) {
+        if (item instanceof String && ((String) item).startsWith("{")) {
+            try {
+                return Utilities.toObjectFromJson(item, HashMap.class);
+            } catch (Exception e) {
+                LOG.log(Level.WARNING, "Condición no válida " + item, e);
+                return null;
+            }
+        }
+        return item;
+    }
+
+    /**
+     * Operandos de un CASE ({@code {"comparador": "CASE", "values": [then, cond1, cond2, ...]}}):
+     * <ul>
+     *     <li>El primer valor es el THEN: una condición / mapa de filtros (se arma como predicado) o un valor simple.</li>
+     *     <li>El resto son los WHEN, unidos con AND; los de comparador {@code ELSE} son el ELSE (EQ sobre su ruta).</li>
+     * </ul>
+     * Cada operando se lee igual que un elemento de OR / AND; las claves de los mapas son relativas a la
+     * entidad del campo del CASE ({@code persona.estado} → {@code {"nombre": ...}} es {@code persona.nombre}).
+     */
+    public static Case parseCase(String path, BusquedaModel.WhereCondition cond) {
+        List<Object> values = cond.getValues() == null ? List.of() : cond.getValues();
+        Case result = new Case();
+        for (int i = 0; i < values.size(); i++) {
+            Object item = fromJsonText(values.get(i));
+            if (i == 0 && !(item instanceof Map) && !(item instanceof BusquedaModel.WhereCondition)) {
+                result.then = item;
+                continue;
+            }
+            FilterNode node = item == null ? null : parseItem(path, relative(path, item), cond);
+            if (node == null) {
+                continue;
+            }
+            if (i == 0) {
+                result.thenNode = node;
+            } else if (node instanceof FilterNode.Condition && "ELSE".equals(((FilterNode.Condition) node).getComparador())) {
+                FilterNode.Condition c = (FilterNode.Condition) node;
+                result.otherwise.add(new FilterNode.Condition(c.getPath(), FilterNode.copy(c.getCondition(), "EQ", c.getCondition().getValues()), cond));
+            } else {
+                result.when.add(node);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Mapa de filtros con las claves desde la raíz.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object relative(String path, Object item) {
+        int dot = path.lastIndexOf('.');
+        if (dot < 0 || !(item instanceof Map) || isCondition(item)) {
+            return item;
+        }
+        String prefix = path.substring(0, dot + 1);
+        Map<String, Object> filters = new LinkedHashMap<>();
+        ((Map<String, Object>) item).forEach((p, v) -> filters.put(prefix + p, v));
+        return filters;
+    }
+
+    private static BusquedaModel.WhereCondition toCondition(Object value) {
+        if (value instanceof BusquedaModel.WhereCondition) {
+            return (BusquedaModel.WhereCondition) value;
+        }
+        if (isCondition(value)) {
+            return BusquedaModel.WhereCondition.fromMap((Map<?, ?>) value);
+        }
+        return null;
+    }
+
+    /**
+     * Map con solo los campos de una condición y al menos {@code comparador} o {@code values}.
+     */
+    private static boolean isCondition(Object value) {
+        if (!(value instanceof Map) || ((Map<?, ?>) value).isEmpty()) {
+            return false;
+        }
+        Map<?, ?> map = (Map<?, ?>) value;
+        if (!CONDITION_FIELDS.containsAll(map.keySet()) || !(map.containsKey("comparador") || map.containsKey("values"))) {
+            return false;
+        }
+        return BusquedaModel.WhereCondition.fromMap(map) != null;
+    }
+
+    /**
+     * Nombre del comparador como lo espera el armado de predicados: mayúsculas, sin guiones bajos y con
+     * los alias unificados. Null o vacío es EQ.
+     */
+    public static String normalize(String comparador) {
+        if (comparador == null || comparador.isBlank()) {
+            return "EQ";
+        }
+        String c = comparador.trim().toUpperCase(Locale.ROOT).replace("_", "");
+        switch (c) {
+            case "=":
+            case "==":
+            case "EQUAL":
+            case "EQUALS":
+                return "EQ";
+            case "!=":
+            case "<>":
+            case "NOTEQUAL":
+                return "NE";
+            case "GE":
+                return "GTE";
+            case "LE":
+                return "LTE";
+            default:
+                return c;
+        }
+    }
+
+    /**
+     * Operandos de un CASE ya convertidos en filtros.
+     */
+    public static final class Case {
+        private Object then;
+        private FilterNode thenNode;
+        private final List<FilterNode> when = new ArrayList<>();
+        private final List<FilterNode> otherwise = new ArrayList<>();
+
+        private Case() {
+        }
+
+        /**
+         * Valor simple del THEN, null si el THEN es un filtro.
+         */
+        public Object getThen() {
+            return then;
+        }
+
+        /**
+         * THEN como filtro, null si es un valor simple.
+         */
+        public FilterNode getThenNode() {
+            return thenNode;
+        }
+
+        public List<FilterNode> getWhen() {
+            return when;
+        }
+
+        public List<FilterNode> getOtherwise() {
+            return otherwise;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.angbyte.repositories;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.dialect.CockroachDialect;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.query.sqm.produce.function.StandardFunctionReturnTypeResolvers;
+import org.hibernate.type.StandardBasicTypes;
+
+import java.util.ServiceLoader;
+
+/**
+ * Funciones SQL propias de Buho que se registran en Hibernate (META-INF/services).
+ * <p>
+ * {@value #IN_ARRAY}: {@code campo = any(?)} con la lista como un solo parámetro arreglo, solo en las bases
+ * que lo soportan. La función {@code any} de Hibernate es el agregado {@code bool_or}, por eso se registra
+ * con otro nombre.
+ * <p>
+ * {@code buho_bucket_<unidad>(campo)}: fecha truncada al periodo ({@link TimeBucketDialect}), para agrupar
+ * por día, semana, mes, etc.
+ */
+public class BuhoFunctionContributor implements FunctionContributor {
+
+    /**
+     * {@code buho_in_array(campo, arreglo)}
+     */
+    public static final String IN_ARRAY = "buho_in_array";
+    /**
+     * Prefijo de {@code buho_bucket_<unidad>(campo)}
+     */
+    public static final String TIME_BUCKET_PREFIX = "buho_bucket_";
+
+    @Override
+    public void contributeFunctions(FunctionContributions contributions) {
+        Dialect dialect = contributions.getDialect();
+        if (dialect instanceof PostgreSQLDialect || dialect instanceof CockroachDialect || dialect instanceof H2Dialect) {
+            contributions.getFunctionRegistry().registerPattern(IN_ARRAY, "(?1 = any(?2))",
+                    contributions.getTypeConfiguration().getBasicTypeRegistry().resolve(StandardBasicTypes.BOOLEAN));
+        }
+        TimeBucketDialect buckets = timeBuckets(dialect);
+        if (buckets != null) {
+            for (TimeBucketDialect.Unit unit : TimeBucketDialect.Unit.values()) {
+                String pattern = buckets.pattern(unit);
+                if (pattern != null) {
+                    contributions.getFunctionRegistry().patternDescriptorBuilder(unit.functionName(), pattern)
+                            .setExactArgumentCount(1)
+                            .setReturnTypeResolver(StandardFunctionReturnTypeResolvers.useArgType(1))
+                            .register();
+                }
+            }
+        }
+    }
+
+    private static TimeBucketDialect timeBuckets(Dialect dialect) {
+        for (TimeBucketDialect custom : ServiceLoader.load(TimeBucketDialect.class, BuhoFunctionContributor.class.getClassLoader())) {
+            if (custom.supports(dialect)) {
+                return custom;
+            }
+        }
+        for (TimeBucketDialect standard : StandardTimeBucketDialect.values()) {
+            if (standard.supports(dialect)) {
+                return standard;
+            }
+        }
+        return null;
+    }
+}
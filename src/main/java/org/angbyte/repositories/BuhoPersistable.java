@@ -8,6 +8,8 @@ import org.springframework.util.MultiValueMap;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface BuhoPersistable {
     /**
@@ -29,6 +31,41 @@ public interface BuhoPersistable {
      */
     <T> List<T> findAllDinamic(BusquedaModel busq, MultiValueMap<String, String> headers);
 
+    /**
+     * Busqueda de un solo registro: el query se limita a una fila (dos con {@code validarUnico}) y no se
+     * arma la lista completa.
+     *
+     * @param busq Modelo con los datos para la busqueda
+     * @param <T>  Cualquier tipo de dato
+     * @return Primer registro encontrado, null si no hay resultados
+     * @throws jakarta.persistence.NonUniqueResultException Con {@code validarUnico} si hay más de un registro
+     */
+    <T> T findUnique(BusquedaModel busq);
+
+    /**
+     * Recorre los registros de la busqueda uno a uno, sin cargar la lista completa en memoria.
+     *
+     * @param busq     Modelo con los datos para la busqueda
+     * @param consumer Recibe cada registro, Map para multiselect o la entidad
+     */
+    void forEachDinamic(BusquedaModel busq, Consumer<Object> consumer);
+
+    /**
+     * Conteo de los registros que cumplen los filtros de la busqueda.
+     *
+     * @param busq Modelo con los datos para la busqueda
+     * @return Total de registros
+     */
+    Long count(BusquedaModel busq);
+
+    /**
+     * Conteo por valor de cada ruta de {@link BusquedaModel#getFacets()} con los filtros de la busqueda.
+     *
+     * @param busq Modelo con los datos para la busqueda y las facetas
+     * @return Por cada ruta, los valores más frecuentes ({@code value}, {@code count}) ordenados por el conteo
+     */
+    Map<String, List<Map<String, Object>>> facets(BusquedaModel busq);
+
     /**
      * Resaliza la ejecución de una funcion de base de datos.
      *
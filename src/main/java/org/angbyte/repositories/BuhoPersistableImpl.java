@@ -2,27 +2,49 @@ package org.angbyte.repositories;
 
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.persistence.*;
 import jakarta.persistence.criteria.*;
 import jakarta.persistence.metamodel.Attribute;
 import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.ManagedType;
+import jakarta.persistence.metamodel.Metamodel;
+import jakarta.persistence.metamodel.PluralAttribute;
 import jakarta.persistence.metamodel.SingularAttribute;
+import jakarta.persistence.metamodel.Type;
 import org.angbyte.config.BuhoProperties;
+import org.angbyte.model.AggregationSpec;
 import org.angbyte.model.BusquedaModel;
+import org.angbyte.model.CompactRow;
 import org.angbyte.model.EjecucionFuncion;
+import org.angbyte.model.StringNormalization;
+import org.angbyte.query.FilterNode;
+import org.angbyte.query.FilterOptimizer;
+import org.angbyte.query.FilterParser;
 import org.angbyte.model.GuardarModel;
 import org.angbyte.model.Respuesta;
 import org.angbyte.utils.BuhoCache;
+import org.angbyte.utils.EntityTypeAdapterFactory;
 import org.angbyte.utils.Messages;
 import org.angbyte.utils.Utilities;
 import org.antlr.v4.runtime.misc.NotNull;
 import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.query.criteria.JpaCriteriaQuery;
+import org.hibernate.query.criteria.JpaSubQuery;
+import org.hibernate.query.sqm.NodeBuilder;
+import org.hibernate.query.sqm.function.SqmFunctionDescriptor;
+import org.hibernate.query.sqm.tree.expression.SqmDistinct;
+import org.hibernate.query.sqm.tree.expression.SqmExpression;
 import org.mapstruct.Mapper;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
 import org.springframework.core.type.filter.AnnotationTypeFilter;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.NoTransactionException;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import org.springframework.util.MultiValueMap;
 
 import java.lang.reflect.Array;
@@ -31,31 +53,75 @@ import java.lang.reflect.Method;
 import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 @Repository
 public class BuhoPersistableImpl<T> implements BuhoPersistable {
 
     private static final int DEFAULT_FETCH_SIZE = 500;
     private static final int DEFAULT_QUERY_TIMEOUT_MS = 10000;
+    private static final String LOAD_GRAPH_HINT = "jakarta.persistence.loadgraph";
     private static final int JDBC_BATCH_SIZE = 50;
 
 
     private static final String ENTITY_PREFIX = "entitys_";
     private static final String CLASS_TRANSLATION_PREFIX = "clazz_trans_";
+    private static final Set<String> SUBQUERY_COMPARATORS = Set.of("INQUERY", "NOTINQUERY", "EXISTSQUERY", "NOTEXISTSQUERY");
     private final static Logger LOGGER = Logger.getLogger(BuhoPersistableImpl.class.getName());
     private final BuhoProperties buhoProperties;
     private final BuhoCache cache;
+    private final EntityManagerRouter router;
+    private final ShardScatterGather scatterGather;
+    private final AtomicLong transactionSequence = new AtomicLong();
+    private final StringNormalizations stringNormalizations;
+    private final InLists inLists;
+    /**
+     * Parámetros que quedan para las listas IN de la sentencia que se está armando, por transacción.
+     */
+    private final Map<Long, InLists.Budget> inListBudgets = new ConcurrentHashMap<>();
+    private final RollupRegistry rollups;
     @PersistenceContext
     private EntityManager entityManager;
     private Map<Long, Map<String, Object>> joinMappings;
     private Map<Long, Map<String, EntityType>> entityTypes;
+    private volatile ExecutorService facetExecutor;
 
     public BuhoPersistableImpl(BuhoCache cache, BuhoProperties buhoProperties) {
+        this(cache, buhoProperties, null);
+    }
+
+    public BuhoPersistableImpl(BuhoCache cache, BuhoProperties buhoProperties, EntityManagerRouter router) {
+        this(cache, buhoProperties, router, null);
+    }
+
+    public BuhoPersistableImpl(BuhoCache cache, BuhoProperties buhoProperties, EntityManagerRouter router, ShardScatterGather scatterGather) {
+        this(cache, buhoProperties, router, scatterGather, null);
+    }
+
+    public BuhoPersistableImpl(BuhoCache cache, BuhoProperties buhoProperties, EntityManagerRouter router, ShardScatterGather scatterGather,
+                               RollupRegistry rollups) {
         this.cache = cache;
+        this.rollups = rollups;
         this.buhoProperties = buhoProperties;
+        this.router = router;
+        this.scatterGather = scatterGather;
+        this.stringNormalizations = new StringNormalizations(buhoProperties);
+        this.inLists = new InLists(buhoProperties);
     }
 
     /**
@@ -64,17 +130,104 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
     @PostConstruct
     public void init() {
         refreshEntityModelCache(null);
-        joinMappings = new LinkedHashMap<>();
-        entityTypes = new LinkedHashMap<>();
+        // Las búsquedas sobre shards construyen sus queries en paralelo
+        joinMappings = new ConcurrentHashMap<>();
+        entityTypes = new ConcurrentHashMap<>();
+        if (buhoProperties.isGeneratedSerializers()) {
+            Utilities.setGeneratedSerializers(true);
+            prepareSerializers();
+        }
+        if (rollups != null) {
+            rollups.start(name -> {
+                Long transactionId = getIdTrans();
+                try {
+                    return getEntityTypeFromCache(name, transactionId);
+                } finally {
+                    removeTranssaction(transactionId);
+                }
+            }, type -> getEntityManager(type).getEntityManagerFactory());
+        }
+    }
+
+    private void prepareSerializers() {
+        try {
+            Set<Class<?>> entities = new LinkedHashSet<>();
+            getMetamodels().forEach(m -> m.getEntities().forEach(e -> entities.add(e.getJavaType())));
+            EntityTypeAdapterFactory.prepare(entities);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "No se pudo generar los serializadores de las entidades", e);
+        }
     }
 
     protected EntityManager getEntityManager() {
         return entityManager;
     }
 
+    /**
+     * EntityManager de la unidad de persistencia configurada para la entidad ({@code buho.datasources}),
+     * si no tiene una ruta se usa el EntityManager principal.
+     *
+     * @param domainClass Clase de la entidad
+     * @return EntityManager que atiende a la entidad
+     */
+    protected EntityManager getEntityManager(Class<?> domainClass) {
+        if (router == null) {
+            return entityManager;
+        }
+        return router.getEntityManager(domainClass, entityManager);
+    }
+
+    /**
+     * Ejecuta el trabajo en una transacción de la unidad que atiende a la entidad
+     * ({@link EntityManagerRouter#inTransaction}); las del EntityManager principal usan la del método.
+     */
+    private <R> R inTransaction(Class<?> domainClass, Supplier<R> work) {
+        return inTransaction(domainClass, false, work);
+    }
+
+    private <R> R inTransaction(Class<?> domainClass, boolean readOnly, Supplier<R> work) {
+        return router == null ? work.get() : router.inTransaction(domainClass, readOnly, work);
+    }
+
+    private boolean isRouted(Class<?> domainClass) {
+        return router != null && router.resolveUnit(domainClass).isPresent();
+    }
+
+    /**
+     * Marca para rollback la transacción del método; el EntityManager compartido no permite
+     * {@code getTransaction()}.
+     */
+    private static void rollbackOnly() {
+        try {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        } catch (NoTransactionException e) {
+            LOGGER.log(Level.FINE, "Sin transacción para marcar rollback", e);
+        }
+    }
+
+    private Class<?> getRootClass(AbstractQuery<?> query) {
+        if (query.getRoots() == null || query.getRoots().isEmpty()) {
+            return null;
+        }
+        return query.getRoots().iterator().next().getJavaType();
+    }
+
+    private List<Metamodel> getMetamodels() {
+        List<Metamodel> metamodels = new ArrayList<>();
+        metamodels.add(entityManager.getMetamodel());
+        if (router != null) {
+            router.getEntityManagers().values().forEach(em -> metamodels.add(em.getMetamodel()));
+        }
+        if (scatterGather != null) {
+            metamodels.addAll(scatterGather.getMetamodels());
+        }
+        return metamodels;
+    }
+
     @NotNull
     protected Long getIdTrans() {
-        return (long) (Math.random() * 100000);
+        // Secuencial para que dos peticiones concurrentes no compartan los joins de la transacción
+        return transactionSequence.incrementAndGet();
     }
 
     /**
@@ -92,7 +245,7 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
             AtomicReference<EntityType> entityTypeC = new AtomicReference<>();
             StringBuffer sb = new StringBuffer();
             AtomicReference<Integer> count = new AtomicReference<>(0);
-            entityManager.getMetamodel().getEntities().forEach(entityType -> {
+            getMetamodels().stream().flatMap(m -> m.getEntities().stream()).forEach(entityType -> {
                 String cacheKey = ENTITY_PREFIX + entityType.getName();
                 if (entityType.getName().equalsIgnoreCase(entityName)) {
                     entityTypeC.set(entityType);
@@ -120,7 +273,8 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
 
     private boolean isMultiColumnQuery(BusquedaModel searchCriteria) {
         return (searchCriteria.getFunctions() != null && searchCriteria.getFunctions().size() > 1)
-               || (searchCriteria.getColumns() != null && !searchCriteria.getColumns().isEmpty());
+               || (searchCriteria.getColumns() != null && !searchCriteria.getColumns().isEmpty())
+               || searchCriteria.getAggregation() != null;
     }
 
     private EntityType<?> getEntityTypeFromCache(String entityName, Long idTrans) {
@@ -184,16 +338,24 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
     }
 
     private TypedQuery<?> criteriaDistinct(BusquedaModel filtros, CriteriaQuery<?> query) {
+        return criteriaDistinct(filtros, query, getEntityManager(getRootClass(query)));
+    }
+
+    private TypedQuery<?> criteriaDistinct(BusquedaModel filtros, CriteriaQuery<?> query, EntityManager em) {
         try {
-            if (Boolean.TRUE.equals(filtros.getDistinct())) {
+            if (needsDistinct(filtros, query)) {
                 query.distinct(true);
             }
 
-            TypedQuery<?> typedQuery = getEntityManager().createQuery(query);
+            TypedQuery<?> typedQuery = em.createQuery(query);
+            EntityGraph<?> fetchGraph = createFetchGraph(filtros, query, em);
+            if (fetchGraph != null) {
+                typedQuery.setHint(LOAD_GRAPH_HINT, fetchGraph);
+            }
 
             Optional.ofNullable(filtros.getFirst()).ifPresent(typedQuery::setFirstResult);
 
-            Optional.ofNullable(filtros.getPageSize()).ifPresent(typedQuery::setMaxResults);
+            Optional.ofNullable(maxResults(filtros)).ifPresent(typedQuery::setMaxResults);
 
             // Hints de alto volumen
             typedQuery.setFlushMode(FlushModeType.COMMIT);
@@ -216,6 +378,141 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
         }
     }
 
+    /**
+     * Convierte las tuplas de un resultado en {@link CompactRow}, los nombres de columnas se calculan con
+     * la primera tupla y se comparten entre todas las filas.
+     */
+    private static class TupleRowMapper {
+        private CompactRow.Schema schema;
+        /**
+         * Posición en la fila de cada elemento de la tupla, los alias repetidos comparten posición.
+         */
+        private int[] slots;
+
+        private CompactRow toRow(Tuple single) {
+            if (schema == null) {
+                List<TupleElement<?>> elements = single.getElements();
+                List<String> names = new ArrayList<>(elements.size());
+                slots = new int[elements.size()];
+                for (int i = 0; i < elements.size(); i++) {
+                    String alias = elements.get(i).getAlias();
+                    // Fallback: usar índice si no hay alias
+                    String name = alias != null && !alias.isEmpty() ? alias : "col_" + names.size();
+                    int slot = names.indexOf(name);
+                    if (slot < 0) {
+                        slot = names.size();
+                        names.add(name);
+                    }
+                    slots[i] = slot;
+                }
+                schema = new CompactRow.Schema(names.toArray(new String[0]));
+            }
+            Object[] values = new Object[schema.size()];
+            for (int i = 0; i < slots.length; i++) {
+                values[slots[i]] = single.get(i);
+            }
+            return new CompactRow(schema, values);
+        }
+    }
+
+    /**
+     * Arma el EntityGraph con las rutas de {@link BusquedaModel#getFetch()}, solo para consultas que
+     * devuelven la entidad. Con paginación las colecciones se excluyen, Hibernate paginaría en memoria;
+     * esas quedan para la carga por lotes ({@code buho.fetch-batch-size}).
+     *
+     * @return EntityGraph o null si no hay rutas que aplicar
+     */
+    private EntityGraph<?> createFetchGraph(BusquedaModel busq, CriteriaQuery<?> query, EntityManager em) {
+        if (Utilities.isEmpty(busq.getFetch()) || Tuple.class.equals(query.getResultType())) {
+            return null;
+        }
+        Class<?> domainClass = getRootClass(query);
+        if (domainClass == null || !domainClass.equals(query.getResultType())) {
+            return null;
+        }
+        boolean paginated = busq.getPageSize() != null || busq.getFirst() != null;
+        EntityGraph<?> graph = em.createEntityGraph(domainClass);
+        Map<String, Subgraph<?>> subgraphs = new HashMap<>();
+        int nodes = 0;
+        for (String path : busq.getFetch()) {
+            if (path == null || path.isBlank()) {
+                continue;
+            }
+            ManagedType<?> type = em.getMetamodel().managedType(domainClass);
+            Subgraph<?> parent = null;
+            String prefix = "";
+            String[] parts = path.trim().split("\\.");
+            for (int i = 0; i < parts.length; i++) {
+                Attribute<?, ?> attr;
+                try {
+                    attr = type.getAttribute(parts[i]);
+                } catch (IllegalArgumentException e) {
+                    LOGGER.log(Level.WARNING, "Fetch {0}: {1} no tiene el atributo {2}", new Object[]{path, type.getJavaType().getSimpleName(), parts[i]});
+                    break;
+                }
+                if (attr.isCollection() && paginated) {
+                    if (buhoProperties.isDebug()) LOGGER.log(Level.INFO, "Fetch {0}: coleccion {1} excluida por paginación", new Object[]{path, parts[i]});
+                    break;
+                }
+                String key = prefix + parts[i];
+                if (i == parts.length - 1) {
+                    if (parent == null) {
+                        graph.addAttributeNodes(parts[i]);
+                    } else {
+                        parent.addAttributeNodes(parts[i]);
+                    }
+                    nodes++;
+                    break;
+                }
+                Type<?> target = attr instanceof PluralAttribute ? ((PluralAttribute<?, ?, ?>) attr).getElementType() : ((SingularAttribute<?, ?>) attr).getType();
+                if (!(target instanceof ManagedType)) {
+                    break;
+                }
+                Subgraph<?> sg = subgraphs.get(key);
+                if (sg == null) {
+                    sg = parent == null ? graph.addSubgraph(parts[i]) : parent.addSubgraph(parts[i]);
+                    subgraphs.put(key, sg);
+                }
+                parent = sg;
+                type = (ManagedType<?>) target;
+                prefix = key + ".";
+            }
+        }
+        return nodes == 0 && subgraphs.isEmpty() ? null : graph;
+    }
+
+    /**
+     * Ejecuta el query en un StatelessSession, los registros no se agregan al contexto de persistencia
+     * (sin cache de primer nivel, snapshots ni dirty checking). Se aplican la misma paginación y hints
+     * que en {@link #criteriaDistinct(BusquedaModel, CriteriaQuery, EntityManager)}.
+     */
+    private List<?> getStatelessResultList(BusquedaModel filtros, CriteriaQuery<?> query, EntityManager em) {
+        try (StatelessSession session = openStatelessSession(em)) {
+            return createStatelessQuery(session, filtros, query, em).getResultList();
+        }
+    }
+
+    private StatelessSession openStatelessSession(EntityManager em) {
+        return em.getEntityManagerFactory().unwrap(SessionFactory.class).openStatelessSession();
+    }
+
+    private org.hibernate.query.Query<?> createStatelessQuery(StatelessSession session, BusquedaModel filtros, CriteriaQuery<?> query, EntityManager em) {
+        if (needsDistinct(filtros, query)) {
+            query.distinct(true);
+        }
+        org.hibernate.query.Query<?> hq = session.createQuery(query);
+        EntityGraph<?> fetchGraph = createFetchGraph(filtros, query, em);
+        if (fetchGraph != null) {
+            hq.setHint(LOAD_GRAPH_HINT, fetchGraph);
+        }
+        Optional.ofNullable(filtros.getFirst()).ifPresent(hq::setFirstResult);
+        Optional.ofNullable(maxResults(filtros)).ifPresent(hq::setMaxResults);
+        hq.setReadOnly(true);
+        hq.setFetchSize(DEFAULT_FETCH_SIZE);
+        hq.setTimeout(Math.max(1, DEFAULT_QUERY_TIMEOUT_MS / 1000));
+        return hq;
+    }
+
     private void ensureStableOrder(Long idTrans, BusquedaModel busq, Root<?> root) {
         try {
             Map<String, String> orders = busq.getOrders();
@@ -325,30 +622,25 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
 
 
     private <T> List getList(BusquedaModel busq, boolean isTuple, CriteriaQuery query) {
-        TypedQuery tq = criteriaDistinct(busq, query);
-        if (tq == null) {
-            return null;
+        return getList(busq, isTuple, query, getEntityManager(getRootClass(query)));
+    }
+
+    private <T> List getList(BusquedaModel busq, boolean isTuple, CriteriaQuery query, EntityManager em) {
+        List tuples;
+        if (Boolean.TRUE.equals(busq.getStateless())) {
+            tuples = getStatelessResultList(busq, query, em);
+        } else {
+            TypedQuery tq = criteriaDistinct(busq, query, em);
+            if (tq == null) {
+                return null;
+            }
+            tuples = tq.getResultList();
         }
-        List tuples = tq.getResultList();
         if (isTuple) {
-            List<Map<String, Object>> resultp = new ArrayList<>();
+            List<Map<String, Object>> resultp = new ArrayList<>(tuples.size());
+            TupleRowMapper mapper = new TupleRowMapper();
             for (Tuple single : (List<Tuple>) tuples) {
-                Map<String, Object> tempMap = new LinkedHashMap<>();
-                single.getElements().forEach((element) -> {
-                    String alias = element.getAlias();
-                    if (alias != null && !alias.isEmpty()) {
-                        tempMap.put(alias, single.get(alias));
-                    } else {
-                        // Fallback: usar índice si no hay alias
-                        int idx = tempMap.size();
-                        try {
-                            tempMap.put("col_" + idx, single.get(idx));
-                        } catch (Exception ignore) {
-                            // Elemento sin acceso por índice
-                        }
-                    }
-                });
-                resultp.add(tempMap);
+                resultp.add(mapper.toRow(single));
             }
             if (resultp.size() == 0) {
                 return null;
@@ -403,51 +695,128 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
                 return (From) j.get(joinKey);
             }
 
-            From join = from;
             String[] pathParts = key.split("\\.");
             if (pathParts.length <= 1) {
                 return from;
             }
+            From join = joinPath(j, from, pathParts);
+            joinMappings.put(idTrans, j);
+            return join;
 
-            StringBuilder currentPath = new StringBuilder();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "findProperty key " + key, e);
+        }
+        return null;
+    }
 
-            for (int i = 0; i < pathParts.length - 1; i++) {
-                String part = pathParts[i];
+    /**
+     * Realiza los joins de la ruta (menos el último segmento, que es el campo) desde {@code start},
+     * reutilizando los que ya están en {@code j} por prefijo de la ruta.
+     */
+    private From joinPath(Map<String, Object> j, From start, String[] pathParts) {
+        From join = start;
+        StringBuilder currentPath = new StringBuilder();
 
-                if (currentPath.length() > 0) currentPath.append(".");
-                currentPath.append(part);
-                String currentPathStr = currentPath.toString();
+        for (int i = 0; i < pathParts.length - 1; i++) {
+            String part = pathParts[i];
 
-                if (j.containsKey(currentPathStr)) {
-                    join = (From) j.get(currentPathStr);
-                    continue;
-                }
+            if (currentPath.length() > 0) currentPath.append(".");
+            currentPath.append(part);
+            String currentPathStr = currentPath.toString();
 
-                Class<?> attributeType = join.get(part).getJavaType();
+            if (j.containsKey(currentPathStr)) {
+                join = (From) j.get(currentPathStr);
+                continue;
+            }
 
-                boolean isEntity = attributeType.isAnnotationPresent(Entity.class) &&
-                                   !isBasicType(attributeType) &&
-                                   !attributeType.isAnnotationPresent(Embeddable.class) &&
-                                   !attributeType.getSimpleName().endsWith("PK");
+            Class<?> attributeType = join.get(part).getJavaType();
 
-                if (isEntity) {
-                    join = join.join(part, JoinType.INNER);
-                    LOGGER.fine("Created JOIN: " + currentPathStr + " -> " + join.getJavaType().getSimpleName());
-                } else {
-                    LOGGER.fine("Skip JOIN for: " + currentPathStr + " (type: " + attributeType.getSimpleName() + ")");
-                }
-                j.put(currentPathStr, join);
-            }
+            boolean isEntity = attributeType.isAnnotationPresent(Entity.class) &&
+                               !isBasicType(attributeType) &&
+                               !attributeType.isAnnotationPresent(Embeddable.class) &&
+                               !attributeType.getSimpleName().endsWith("PK");
 
-            joinMappings.put(idTrans, j);
-            return join;
+            if (isEntity) {
+                join = join.join(part, JoinType.INNER);
+                LOGGER.fine("Created JOIN: " + currentPathStr + " -> " + join.getJavaType().getSimpleName());
+            } else {
+                LOGGER.fine("Skip JOIN for: " + currentPathStr + " (type: " + attributeType.getSimpleName() + ")");
+            }
+            j.put(currentPathStr, join);
+        }
+        return join;
+    }
 
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "findProperty key " + key, e);
+    /**
+     * Prefijo de la ruta hasta el primer atributo de colección (OneToMany, ManyToMany, ElementCollection),
+     * ej. {@code telefonos} para {@code telefonos.numero}; null si la ruta no pasa por una colección o si
+     * la colección es el último segmento.
+     */
+    private static String collectionPrefix(ManagedType<?> type, String key) {
+        String[] parts = key.split("\\.");
+        ManagedType<?> current = type;
+        for (int i = 0; i < parts.length - 1 && current != null; i++) {
+            Attribute<?, ?> attr;
+            try {
+                attr = current.getAttribute(parts[i]);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            if (attr.isCollection()) {
+                return String.join(".", Arrays.copyOfRange(parts, 0, i + 1));
+            }
+            Type<?> next = attr instanceof SingularAttribute ? ((SingularAttribute<?, ?>) attr).getType() : null;
+            current = next instanceof ManagedType ? (ManagedType<?>) next : null;
         }
         return null;
     }
 
+    /**
+     * Indica si el query tiene algún join hacia una colección, que es lo único que repite las filas
+     * de la entidad raíz.
+     */
+    private static boolean hasCollectionJoin(AbstractQuery<?> query) {
+        for (Root<?> root : query.getRoots()) {
+            if (hasCollectionJoin(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasCollectionJoin(From<?, ?> from) {
+        for (Join<?, ?> join : from.getJoins()) {
+            if (join instanceof PluralJoin || (join.getAttribute() != null && join.getAttribute().isCollection()) || hasCollectionJoin(join)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * DISTINCT solo cuando hace falta: si se selecciona la entidad raíz y no queda ningún join a una
+     * colección las filas ya son únicas (por la PK) y el DISTINCT solo obliga a la base a ordenar o
+     * agrupar el resultado. Con columnas, funciones o group by se respeta lo solicitado.
+     */
+    private static boolean needsDistinct(BusquedaModel filtros, CriteriaQuery<?> query) {
+        // En una agregación se seleccionan todos los grupos, las filas ya son únicas
+        if (!Boolean.TRUE.equals(filtros.getDistinct()) || filtros.getAggregation() != null) {
+            return false;
+        }
+        boolean rootSelection = query.getSelection() == null || query.getSelection() instanceof Root;
+        return !rootSelection || !query.getGroupList().isEmpty() || hasCollectionJoin(query);
+    }
+
+    /**
+     * {@code pageSize}, o el {@code limit} de la agregación si no hay página.
+     */
+    private static Integer maxResults(BusquedaModel filtros) {
+        if (filtros.getPageSize() == null && filtros.getAggregation() != null) {
+            return filtros.getAggregation().getLimit();
+        }
+        return filtros.getPageSize();
+    }
+
     private boolean isBasicType(Class<?> clazz) {
         if (clazz.isAnnotationPresent(Embeddable.class) ||
             clazz.isAnnotationPresent(Entity.class)) {
@@ -510,7 +879,7 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
     }
 
 
-    private void processGroupBy(Long idTrans, BusquedaModel busq, CriteriaQuery query, Root from) {
+    private void processGroupBy(Long idTrans, BusquedaModel busq, CriteriaBuilder builder, CriteriaQuery query, Root from) {
         try {
             if (busq.getGroupsBy() != null && busq.getGroupsBy().size() > 0) {
                 List<Expression<Object>> groups = new ArrayList<>(busq.getFunctions().size());
@@ -520,7 +889,7 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
                         From join = from;
                         try {
                             join = createJoin(idTrans, key, from);
-                            groups.add(join.get(nameField));
+                            groups.add(fieldOrBucket(builder, join, nameField));
                         } catch (Exception e) {
                             LOGGER.log(Level.SEVERE, "findProperty key " + key, e);
                         }
@@ -534,6 +903,219 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
         }
     }
 
+    /**
+     * Campo de la entidad o, con sufijo de periodo ({@code fechaCreacion:month}), la fecha truncada al periodo
+     * con la función de la base ({@link TimeBucketDialect}). Se usa en groupsBy, functions y orders.
+     *
+     * @param nameField Último segmento de la ruta, con o sin {@code :periodo}
+     */
+    private static Expression fieldOrBucket(CriteriaBuilder builder, From join, String nameField) {
+        int sep = nameField.indexOf(':');
+        if (sep < 0) {
+            return join.get(nameField);
+        }
+        Path path = join.get(nameField.substring(0, sep));
+        TimeBucketDialect.Unit unit = TimeBucketDialect.Unit.parse(nameField.substring(sep + 1));
+        if (unit == null) {
+            throw new IllegalArgumentException("Periodo no soportado " + nameField);
+        }
+        return timeBucket(builder, path, unit);
+    }
+
+    /**
+     * Arma la agregación en el query: {@code SELECT grupos, agregados GROUP BY grupos HAVING ... ORDER BY ...}.
+     * Las columnas del resultado se llaman como la ruta (grupos) o el alias (agregados). Sobre un subquery
+     * (conteo de grupos) no se agrega el ORDER BY.
+     */
+    private void processAggregation(Long idTrans, AggregationSpec spec, CriteriaBuilder builder, AbstractQuery query, Root from) {
+        Map<String, Expression> columns = new LinkedHashMap<>();
+        List<Expression> groups = new ArrayList<>();
+        if (spec.getGroupBy() != null) {
+            for (String key : spec.getGroupBy()) {
+                if (key == null || key.isBlank()) {
+                    continue;
+                }
+                Expression group = aggregationPath(idTrans, builder, from, key);
+                groups.add(group);
+                columns.put(key, group);
+            }
+        }
+        if (spec.getAggregates() != null) {
+            for (AggregationSpec.Aggregate aggregate : spec.getAggregates()) {
+                String alias = aggregate.getAlias() == null || aggregate.getAlias().isBlank()
+                        ? aggregate.getFunction() + "_" + columns.size() : aggregate.getAlias();
+                if (columns.containsKey(alias)) {
+                    throw new IllegalArgumentException("Alias repetido en la agregación " + alias);
+                }
+                columns.put(alias, aggregateExpression(idTrans, builder, from, aggregate));
+            }
+        }
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("Agregación sin grupos ni agregados");
+        }
+        List<Selection<?>> selections = new ArrayList<>(columns.size());
+        columns.forEach((alias, expression) -> selections.add(expression.alias(alias)));
+        if (query instanceof CriteriaQuery) {
+            ((CriteriaQuery) query).multiselect(selections);
+        } else {
+            ((JpaSubQuery) query).multiselect(selections);
+        }
+        if (!groups.isEmpty()) {
+            query.groupBy(groups);
+        }
+        if (spec.getHaving() != null && !spec.getHaving().isEmpty()) {
+            List<Predicate> having = new ArrayList<>(spec.getHaving().size());
+            spec.getHaving().forEach((alias, value) -> having.add(havingPredicate(builder, aggregationColumn(columns, alias), havingCondition(value))));
+            query.having(having.toArray(new Predicate[0]));
+        }
+        if (query instanceof CriteriaQuery && spec.getOrders() != null && !spec.getOrders().isEmpty()) {
+            List<Order> orders = new ArrayList<>(spec.getOrders().size());
+            spec.getOrders().forEach((alias, dir) -> {
+                Expression column = aggregationColumn(columns, alias);
+                orders.add("DESC".equalsIgnoreCase(dir) ? builder.desc(column) : builder.asc(column));
+            });
+            ((CriteriaQuery) query).orderBy(orders);
+        }
+        Utilities.logs(this, "Procesando agregación " + spec);
+    }
+
+    private Expression aggregationPath(Long idTrans, CriteriaBuilder builder, Root from, String key) {
+        From join = createJoin(idTrans, key, from);
+        return fieldOrBucket(builder, join == null ? from : join, Utilities.getUltimaPosicion(key, "\\."));
+    }
+
+    private static Expression aggregationColumn(Map<String, Expression> columns, String alias) {
+        Expression column = columns.get(alias);
+        if (column == null) {
+            throw new IllegalArgumentException("La agregación no tiene la columna " + alias);
+        }
+        return column;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Expression aggregateExpression(Long idTrans, CriteriaBuilder builder, Root from, AggregationSpec.Aggregate aggregate) {
+        if (aggregate.getFunction() == null || aggregate.getFunction().isBlank()) {
+            throw new IllegalArgumentException("Agregado sin función " + aggregate);
+        }
+        String function = aggregate.getFunction().trim().toLowerCase(Locale.ROOT);
+        String field = aggregate.getField();
+        boolean distinct = Boolean.TRUE.equals(aggregate.getDistinct());
+        Expression path = field == null || field.isBlank() || "*".equals(field) ? from : aggregationPath(idTrans, builder, from, field);
+        switch (function) {
+            case "count":
+                return distinct ? builder.countDistinct(path) : builder.count(path);
+            case "sum":
+                return distinct ? distinctAggregate(builder, function, path) : builder.sum(path);
+            case "avg":
+                return distinct ? distinctAggregate(builder, function, path) : builder.avg(path);
+            case "min":
+                // least/greatest también sirven para fechas y textos; distinct no cambia el resultado
+                return builder.least(path);
+            case "max":
+                return builder.greatest(path);
+            default:
+                return distinct ? distinctAggregate(builder, function, path) : builder.function(function, Object.class, path);
+        }
+    }
+
+    /**
+     * {@code funcion(DISTINCT ruta)}; JPA solo lo tiene para count, se arma con la función registrada en Hibernate.
+     */
+    private static Expression distinctAggregate(CriteriaBuilder builder, String function, Expression path) {
+        if (!(builder instanceof NodeBuilder) || !(path instanceof SqmExpression)) {
+            throw new IllegalArgumentException("Distinct no soportado en la agregación " + function);
+        }
+        NodeBuilder nodeBuilder = (NodeBuilder) builder;
+        SqmFunctionDescriptor descriptor = nodeBuilder.getQueryEngine().getSqmFunctionRegistry().findFunctionDescriptor(function);
+        if (descriptor == null) {
+            throw new IllegalArgumentException("Función de agregación no registrada para distinct " + function);
+        }
+        return descriptor.generateSqmExpression(new SqmDistinct<>((SqmExpression<?>) path, nodeBuilder), null, nodeBuilder.getQueryEngine());
+    }
+
+    private static BusquedaModel.WhereCondition havingCondition(Object value) {
+        if (value instanceof BusquedaModel.WhereCondition) {
+            return (BusquedaModel.WhereCondition) value;
+        }
+        if (value instanceof Map) {
+            BusquedaModel.WhereCondition condition = BusquedaModel.WhereCondition.fromMap((Map<?, ?>) value);
+            if (condition != null) {
+                return condition;
+            }
+        }
+        return new BusquedaModel.WhereCondition("EQ", Arrays.asList(value));
+    }
+
+    /**
+     * Condición del HAVING sobre un agregado o grupo, con los mismos comparadores de los filtros.
+     */
+    @SuppressWarnings("unchecked")
+    private static Predicate havingPredicate(CriteriaBuilder builder, Expression column, BusquedaModel.WhereCondition condition) {
+        String comparador = FilterParser.normalize(condition.getComparador());
+        List<Object> values = havingValues(column.getJavaType(), condition);
+        switch (comparador) {
+            case "ISNULL":
+                return builder.isNull(column);
+            case "ISNOTNULL":
+                return builder.isNotNull(column);
+            case "IN":
+                return column.in(values);
+            case "NOTIN":
+                return builder.not(column.in(values));
+            default:
+                break;
+        }
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException("Condición sin valores en la agregación " + condition);
+        }
+        Comparable value = (Comparable) values.get(0);
+        switch (comparador) {
+            case "EQ":
+                return builder.equal(column, value);
+            case "NE":
+                return builder.notEqual(column, value);
+            case "GT":
+                return builder.greaterThan(column, value);
+            case "GTE":
+                return builder.greaterThanOrEqualTo(column, value);
+            case "LT":
+                return builder.lessThan(column, value);
+            case "LTE":
+                return builder.lessThanOrEqualTo(column, value);
+            case "BETWEEN":
+                if (values.size() < 2) {
+                    throw new IllegalArgumentException("BETWEEN necesita dos valores " + condition);
+                }
+                return builder.between(column, value, (Comparable) values.get(1));
+            default:
+                throw new IllegalArgumentException("Comparador no soportado en la agregación " + condition.getComparador());
+        }
+    }
+
+    /**
+     * Los agregados numéricos (count, sum...) se comparan con números; el texto se convierte con BigDecimal,
+     * Hibernate lo ajusta al tipo del agregado. El resto usa la conversión de los filtros.
+     */
+    private static List<Object> havingValues(Class<?> type, BusquedaModel.WhereCondition condition) {
+        List<Object> values = condition.getValues() == null ? List.of() : condition.getValues();
+        if (type == null || type == Object.class || Number.class.isAssignableFrom(type) || type.isPrimitive()) {
+            List<Object> numbers = new ArrayList<>(values.size());
+            for (Object v : values) {
+                numbers.add(v instanceof String ? new BigDecimal(((String) v).trim()) : v);
+            }
+            return numbers;
+        }
+        return condition.getValuesCast(type);
+    }
+
+    private static Expression timeBucket(CriteriaBuilder builder, Expression path, TimeBucketDialect.Unit unit) {
+        if (!(builder instanceof NodeBuilder)
+            || ((NodeBuilder) builder).getQueryEngine().getSqmFunctionRegistry().findFunctionDescriptor(unit.functionName()) == null) {
+            throw new IllegalArgumentException("Agrupación por " + unit + " no disponible para la base de datos");
+        }
+        return builder.function(unit.functionName(), path.getJavaType(), path);
+    }
+
     /**
      * Procesa el mapa de parametro con los ordenamientos para realizar la consulta.
      *
@@ -576,6 +1158,8 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
                                     length = builder.length(join.get(nameField));
                                 } else if (func.toLowerCase().contains("trim")) {
                                     length = builder.trim(join.get(nameField));
+                                } else if (TimeBucketDialect.Unit.parse(func) != null) {
+                                    length = timeBucket(builder, join.get(nameField), TimeBucketDialect.Unit.parse(func));
                                 }
                                 if (length == null) {
                                     ordersby.add(builder.asc(join.get(nameField)));
@@ -594,6 +1178,8 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
                                     length = builder.length(join.get(nameField));
                                 } else if (func.toLowerCase().contains("trim")) {
                                     length = builder.trim(join.get(nameField));
+                                } else if (TimeBucketDialect.Unit.parse(func) != null) {
+                                    length = timeBucket(builder, join.get(nameField), TimeBucketDialect.Unit.parse(func));
                                 }
 
                                 if (length == null) {
@@ -638,9 +1224,9 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
                         for (Object ob : vals) {
                             nameField = Utilities.getUltimaPosicion(ob + "", "\\.");
                             join = createJoin(idTrans, ob + "", from);
-                            Path path = null;
+                            Expression path = null;
                             try {
-                                path = join.get(nameField);
+                                path = fieldOrBucket(builder, join, nameField);
                             } catch (Exception v) {
                                 System.out.println(v.getMessage());
                             }
@@ -705,99 +1291,324 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
 
     /**
      * Procesa el mapa de parametro con los filtras para realizar los predicados de la consulta.
+     * <p>
+     * Con {@code semiJoins} los filtros sobre rutas que pasan por una colección (ej. {@code telefonos.numero})
+     * se resuelven con un EXISTS correlacionado en vez de un INNER JOIN, así las filas de la raíz no se
+     * repiten y no hace falta el DISTINCT. Los filtros sobre la misma colección van en el mismo EXISTS (el
+     * mismo elemento debe cumplirlos todos, igual que con el join). Si la colección ya tiene join (columnas
+     * o funciones) se filtra sobre ese join.
      *
      * @param idTrans
      * @param builder Permite crear las predicados para la conculta.
      * @param from    Root donde se va realizar la selección de la tabla.
      * @param filtros Mapa de parametros con los filtro para los predicados.
      * @param query   Objeto con selección de la tabla
+     * @param semiJoins Usar EXISTS, solo cuando se pidió distinct (con el join las filas se repetirían)
      * @return
      */
-    private Predicate[] processWhere(Long idTrans, CriteriaBuilder builder, Root from, Map<String, Object> filtros, CriteriaQuery query) {
+    private Predicate[] processWhere(Long idTrans, CriteriaBuilder builder, Root from, Map<String, Object> filtros, AbstractQuery query, boolean semiJoins) {
         try {
-            List<Predicate> predicates = new ArrayList<>();
-            if (filtros == null) {
-                Utilities.logs(this, "Predicates agregados al query 0");
-                return new Predicate[0];
-            }
-            if (filtros.size() == 0) {
+            if (filtros == null || filtros.isEmpty()) {
                 Utilities.logs(this, "Predicates agregados al query 0");
                 return new Predicate[0];
             }
-            filtros.entrySet().forEach((Map.Entry<String, Object> entry) -> {
-                String key = entry.getKey();
-                if (!(key.trim() == "")) {
-                    BusquedaModel.WhereCondition condicion = null;
-                    if (entry.getValue() instanceof BusquedaModel.WhereCondition) {
-                        condicion = (BusquedaModel.WhereCondition) entry.getValue();
-                    } else {
-                        condicion = new BusquedaModel.WhereCondition(Arrays.asList(entry.getValue()));
-                    }
-                    Predicate findProperty = null;
-                    From join = from;
-                    String nameField = Utilities.getUltimaPosicion(key, "\\.");
-                    try {
-                        join = createJoin(idTrans, key, from);
-                        if (join == null) {
-                            LOGGER.log(Level.WARNING, "createJoin retornó null para key: " + key + ", usando root");
-                            join = from;
-                        }
-                        findProperty = getPredicateField(idTrans, builder, nameField, join, condicion, from, null);
-                    } catch (Exception e) {
-                        LOGGER.log(Level.WARNING, "Error al buscar NameField " + nameField + " condicion " + condicion
-                                                  + " Join type " + (join != null ? join.getJavaType().getSimpleName() : "null"), e);
-                    }
-                    if (findProperty != null) {
-                        predicates.add(findProperty);
-                    }
+            return processWhere(idTrans, builder, from, compileFilters(from.getModel(), filtros), query, semiJoins);
+        } catch (UnsupportedOperationException e) {
+            throw e;
+        } catch (Exception e) {
+            System.out.println("BusquedaDinamica " + filtros);
+            LOGGER.log(Level.SEVERE, "", e);
+        }
+        return null;
+    }
+
+    /**
+     * Árbol simplificado de los filtros. Solo depende de la entidad, se puede usar en varias consultas.
+     */
+    private FilterNode compileFilters(ManagedType<?> model, Map<String, Object> filtros) {
+        return new FilterOptimizer(key -> attributeType(model, key)).optimize(FilterParser.parse(filtros));
+    }
+
+    private Predicate[] processWhere(Long idTrans, CriteriaBuilder builder, Root from, FilterNode tree, AbstractQuery query, boolean semiJoins) {
+        // Las listas IN de la sentencia (y de sus subqueries) comparten el límite de parámetros
+        inListBudgets.put(idTrans, inLists.budget(builder));
+        try {
+            List<FilterNode> nodes = tree instanceof FilterNode.Group && !((FilterNode.Group) tree).isOr()
+                    ? ((FilterNode.Group) tree).getChildren() : List.of(tree);
+            Function<String, From> joins = key -> {
+                From join = createJoin(idTrans, key, from);
+                if (join == null) {
+                    LOGGER.log(Level.WARNING, "createJoin retornó null para key: " + key + ", usando root");
+                    return from;
                 }
-            });
+                return join;
+            };
+            List<Predicate> predicates = toPredicates(idTrans, builder, from, query, nodes, false, joins, semiJoins);
             if (predicates.size() > 0) {
-                Predicate[] result = new Predicate[predicates.size()];
-                result = predicates.toArray(result);
-                query.where(predicates.toArray(result));
+                Predicate[] result = predicates.toArray(new Predicate[0]);
+                query.where(result);
                 Utilities.logs(this, "Predicates agregados al query : " + predicates.size());
                 return result;
             }
             Utilities.logs(this, "Predicates agregados al query 0");
+        } catch (UnsupportedOperationException e) {
+            throw e;
         } catch (Exception e) {
-            System.out.println("BusquedaDinamica " + filtros);
-            LOGGER.log(Level.SEVERE, "", e);
+            LOGGER.log(Level.SEVERE, "BusquedaDinamica " + tree, e);
+        } finally {
+            inListBudgets.remove(idTrans);
         }
         return null;
     }
 
     /**
-     * Procesa los predicados para la consulta.
+     * Predicados de los nodos de un grupo. Con {@code semiJoins} los nodos cuyas rutas pasan todas por la
+     * misma colección (sin join en el query) se juntan en un solo EXISTS, unidos con el operador del grupo.
      *
-     * @param idTrans
-     * @param builder   Permite crear las predicados para la conculta.
-     * @param nameField Nombre del campo a filtrar.
-     * @param join      Join hacia la tabla relacionada.
-     * @param condicion Objecto con la condición where para la tabla.
-     * @param from
-     * @return Predicado sobre el join realizado
+     * @param or    Operador del grupo, solo se usa para los EXISTS
+     * @param joins Join de cada ruta (en el query principal o dentro de un EXISTS)
      */
-    private Predicate getPredicateField(Long idTrans, CriteriaBuilder builder, String nameField, From join, BusquedaModel.WhereCondition condicion, Root from, BusquedaModel.WhereCondition condicionPrin) {
+    private List<Predicate> toPredicates(Long idTrans, CriteriaBuilder builder, Root from, CommonAbstractCriteria query, List<FilterNode> nodes,
+                                         boolean or, Function<String, From> joins, boolean semiJoins) {
+        List<Predicate> predicates = new ArrayList<>(nodes.size());
+        // Prefijo de la colección -> nodos que van en su EXISTS
+        Map<String, List<FilterNode>> semiJoinNodes = new LinkedHashMap<>();
+        for (FilterNode node : nodes) {
+            String prefix = semiJoins ? semiJoinPrefix(idTrans, from, node) : null;
+            if (prefix != null) {
+                semiJoinNodes.computeIfAbsent(prefix, k -> new ArrayList<>()).add(node);
+                continue;
+            }
+            Predicate p = toPredicate(idTrans, builder, from, query, node, joins, semiJoins);
+            if (p != null) {
+                predicates.add(p);
+            }
+        }
+        semiJoinNodes.forEach((prefix, group) -> {
+            Predicate exists = semiJoin(idTrans, builder, from, query, group, or);
+            if (exists != null) {
+                predicates.add(exists);
+            }
+        });
+        return predicates;
+    }
+
+    private Predicate toPredicate(Long idTrans, CriteriaBuilder builder, Root from, CommonAbstractCriteria query, FilterNode node,
+                                  Function<String, From> joins, boolean semiJoins) {
+        if (node instanceof FilterNode.Constant) {
+            return ((FilterNode.Constant) node).getValue() ? null : builder.disjunction();
+        }
+        if (node instanceof FilterNode.Group) {
+            FilterNode.Group group = (FilterNode.Group) node;
+            List<Predicate> preds = toPredicates(idTrans, builder, from, query, group.getChildren(), group.isOr(), joins, semiJoins);
+            if (preds.isEmpty()) {
+                return null;
+            }
+            Predicate[] array = preds.toArray(new Predicate[0]);
+            return group.isOr() ? builder.or(array) : builder.and(array);
+        }
+        FilterNode.Condition condition = (FilterNode.Condition) node;
+        String key = condition.getPath();
+        String nameField = Utilities.getUltimaPosicion(key, "\\.");
+        From join = from;
+        try {
+            join = joins.apply(key);
+            if (SUBQUERY_COMPARATORS.contains(condition.getComparador())) {
+                return subqueryPredicate(idTrans, builder, query, join.get(nameField), condition.getCondition());
+            }
+            if ("CASE".equals(condition.getComparador())) {
+                return casePredicate(idTrans, builder, from, query, FilterParser.parseCase(key, condition.getCondition()), joins);
+            }
+            return getPredicateField(idTrans, builder, nameField, join, condition.getCondition(), from, condition.getParent());
+        } catch (UnsupportedOperationException e) {
+            // El filtro no se puede armar (ej. IN sobre el límite de parámetros), quitarlo cambiaría el resultado
+            throw e;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Error al buscar NameField " + nameField + " condicion " + condition
+                                      + " Join type " + (join != null ? join.getJavaType().getSimpleName() : "null"), e);
+        }
+        return null;
+    }
+
+    /**
+     * {@code CASE WHEN <when> THEN <then> ELSE <otherwise> END = true}. Los operandos se arman como el resto de
+     * los filtros, con los mismos joins.
+     */
+    private Predicate casePredicate(Long idTrans, CriteriaBuilder builder, Root from, CommonAbstractCriteria query, FilterParser.Case operands,
+                                    Function<String, From> joins) {
+        List<Predicate> when = toPredicates(idTrans, builder, from, query, operands.getWhen(), false, joins, false);
+        Expression then = operands.getThenNode() != null ? toPredicate(idTrans, builder, from, query, operands.getThenNode(), joins, false)
+                : operands.getThen() != null ? builder.literal(operands.getThen()) : null;
+        if (then == null) {
+            then = builder.nullLiteral(Boolean.class);
+        }
+        LOGGER.log(Level.INFO, "Generando case " + when.size() + " then value " + operands.getThen() + " Else " + operands.getOtherwise().size());
+        CriteriaBuilder.Case<Object> select = builder.selectCase().when(builder.and(when.toArray(new Predicate[0])), then);
+        List<Predicate> otherwise = toPredicates(idTrans, builder, from, query, operands.getOtherwise(), false, joins, false);
+        if (!otherwise.isEmpty()) {
+            select.otherwise(builder.and(otherwise.toArray(new Predicate[0])));
+        }
+        return builder.isTrue(select.as(Boolean.class));
+    }
+
+    /**
+     * Comparadores con una búsqueda anidada ({@link BusquedaModel#from(Object)}) como valor:
+     * <ul>
+     *     <li>{@code IN_QUERY} / {@code NOT_IN_QUERY}: {@code campo IN (SELECT columna FROM Entidad WHERE ...)}.</li>
+     *     <li>{@code EXISTS_QUERY} / {@code NOT_EXISTS_QUERY}: {@code EXISTS (SELECT 1 FROM Entidad WHERE ... AND columna = campo)}.</li>
+     * </ul>
+     * La columna es la primera de {@code columns} de la búsqueda anidada (puede ser una ruta, ej.
+     * {@code persona.id}), si no tiene se usa el id de la entidad. De la búsqueda anidada solo se usan
+     * {@code entity}, {@code filters} y {@code columns}.
+     */
+    private Predicate subqueryPredicate(Long idTrans, CriteriaBuilder builder, CommonAbstractCriteria query, Expression field, BusquedaModel.WhereCondition condicion) {
+        BusquedaModel nested = Utilities.isNotEmpty(condicion.getValues()) ? BusquedaModel.from(condicion.getValues().get(0)) : null;
+        EntityType<?> entityType = nested == null || nested.getEntity() == null ? null : getEntityTypeFromCache(nested.getEntity(), idTrans);
+        if (entityType == null) {
+            LOGGER.log(Level.WARNING, "Búsqueda anidada sin entidad válida " + condicion);
+            return null;
+        }
+        String comparador = condicion.getComparador();
+        boolean exists = comparador.endsWith("EXISTSQUERY");
+        Subquery sq = query.subquery(exists ? Integer.class : field.getJavaType());
+        Root sub = sq.from(entityType.getJavaType());
+        // Los joins de la búsqueda anidada son propios del subquery
+        Map<String, Object> local = new LinkedHashMap<>();
+        Function<String, From> joins = key -> joinPath(local, sub, key.split("\\."));
+        String column = Utilities.isNotEmpty(nested.getColumns()) ? nested.getColumns().get(0) : idAttribute(entityType);
+        Path columnPath = joins.apply(column).get(Utilities.getUltimaPosicion(column, "\\."));
+
+        List<Predicate> preds = new ArrayList<>();
+        if (nested.getFilters() != null && !nested.getFilters().isEmpty()) {
+            ManagedType<?> model = sub.getModel();
+            FilterNode tree = new FilterOptimizer(key -> attributeType(model, key)).optimize(FilterParser.parse(nested.getFilters()));
+            preds.addAll(toPredicates(idTrans, builder, sub, sq, List.of(tree), false, joins, false));
+        }
+        Predicate result;
+        if (exists) {
+            preds.add(builder.equal(columnPath, field));
+            sq.select(builder.literal(1)).where(preds.toArray(new Predicate[0]));
+            result = builder.exists(sq);
+        } else {
+            sq.select(columnPath).where(preds.toArray(new Predicate[0]));
+            result = field.in(sq);
+        }
+        return comparador.startsWith("NOT") ? builder.not(result) : result;
+    }
+
+    private static String idAttribute(EntityType<?> entityType) {
+        for (SingularAttribute<?, ?> attr : entityType.getSingularAttributes()) {
+            if (attr.isId()) {
+                return attr.getName();
+            }
+        }
+        return "id";
+    }
+
+    /**
+     * Colección por la que pasan todas las rutas del nodo, null si alguna no pasa por una colección, pasan
+     * por varias o la colección ya tiene join en el query.
+     */
+    private String semiJoinPrefix(Long idTrans, Root from, FilterNode node) {
+        Set<String> prefixes = new HashSet<>();
+        boolean[] plain = {false};
+        node.forEachCondition(c -> {
+            String prefix = collectionPrefix(from.getModel(), c.getPath());
+            if (prefix == null) {
+                plain[0] = true;
+            } else {
+                prefixes.add(prefix);
+            }
+        });
+        if (plain[0] || prefixes.size() != 1) {
+            return null;
+        }
+        String prefix = prefixes.iterator().next();
+        Map<String, Object> joined = joinMappings.get(idTrans);
+        return joined != null && joined.containsKey(prefix) ? null : prefix;
+    }
+
+    /**
+     * EXISTS (SELECT 1 ...) correlacionado con la raíz, con los joins de las rutas dentro del subquery.
+     *
+     * @param nodes Filtros sobre la misma colección
+     * @param or    Unir los filtros con OR en vez de AND
+     * @return Predicado EXISTS, null si ningún filtro generó predicado
+     */
+    private Predicate semiJoin(Long idTrans, CriteriaBuilder builder, Root from, CommonAbstractCriteria query, List<FilterNode> nodes, boolean or) {
+        Subquery<Integer> sq = query.subquery(Integer.class);
+        Root correlated = sq.correlate(from);
+        // Los joins del subquery no se comparten con el query principal
+        Map<String, Object> local = new LinkedHashMap<>();
+        List<Predicate> preds = toPredicates(idTrans, builder, from, query, nodes, or,
+                key -> joinPath(local, correlated, key.split("\\.")), false);
+        if (preds.isEmpty()) {
+            return null;
+        }
+        Predicate[] array = preds.toArray(new Predicate[0]);
+        sq.select(builder.literal(1)).where(or ? builder.or(array) : builder.and(array));
+        return builder.exists(sq);
+    }
+
+    /**
+     * Tipo del campo de la ruta, null si la ruta no existe en el modelo.
+     */
+    private static Class<?> attributeType(ManagedType<?> type, String key) {
+        String[] parts = key.split("\\.");
+        ManagedType<?> current = type;
+        for (int i = 0; i < parts.length && current != null; i++) {
+            Attribute<?, ?> attr;
+            try {
+                attr = current.getAttribute(parts[i]);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            if (i == parts.length - 1) {
+                return attr.getJavaType();
+            }
+            Type<?> next = attr instanceof PluralAttribute ? ((PluralAttribute<?, ?, ?>) attr).getElementType()
+                    : attr instanceof SingularAttribute ? ((SingularAttribute<?, ?>) attr).getType() : null;
+            current = next instanceof ManagedType ? (ManagedType<?>) next : null;
+        }
+        return null;
+    }
+
+    /**
+     * Condición anidada (valores de un LIKE) como WhereCondition, los Map se convierten sin pasar por json.
+     */
+    private static BusquedaModel.WhereCondition toCondition(Object value) {
+        if (value instanceof BusquedaModel.WhereCondition) {
+            return (BusquedaModel.WhereCondition) value;
+        }
+        if (value instanceof Map) {
+            return BusquedaModel.WhereCondition.fromMap((Map<?, ?>) value);
+        }
+        throw new IllegalArgumentException("Condición no válida " + value);
+    }
+
+    /**
+     * Procesa los predicados para la consulta.
+     *
+     * @param idTrans
+     * @param builder   Permite crear las predicados para la conculta.
+     * @param nameField Nombre del campo a filtrar.
+     * @param join      Join hacia la tabla relacionada.
+     * @param condicion Objecto con la condición where para la tabla.
+     * @param from
+     * @return Predicado sobre el join realizado
+     */
+    private Predicate getPredicateField(Long idTrans, CriteriaBuilder builder, String nameField, From join, BusquedaModel.WhereCondition condicion, Root from, BusquedaModel.WhereCondition condicionPrin) {
         String clazzNameJoin = join.getJavaType().getSimpleName();
         try {
             EntityType o = getEntityTypeFromCache(clazzNameJoin, idTrans);
-            Attribute metaField = null;
-            Expression path = null;
-            if (!nameField.equalsIgnoreCase("SELECTCASE")) {
-                if (o == null) {
-                    System.out.println(clazzNameJoin + " No se encontro referencia a " + nameField);
-                    return null;
-                }
-                metaField = o.getAttribute(nameField);
-                path = join.get(nameField);
-                if (metaField.getJavaType().equals(String.class) || metaField.getJavaType().equals(Character.class)) {
-                    if (condicion.getTrim()) {
-                        path = builder.trim(builder.upper(join.get(nameField)));
-                    } else {
-                        path = builder.upper(join.get(nameField));
-                    }
-                }
+            if (o == null) {
+                LOGGER.log(Level.WARNING, clazzNameJoin + " No se encontro referencia a " + nameField);
+                return null;
+            }
+            Attribute metaField = o.getAttribute(nameField);
+            Expression path = join.get(nameField);
+            if (metaField.getJavaType().equals(String.class) || metaField.getJavaType().equals(Character.class)) {
+                path = stringPath(builder, join, nameField, condicion);
             }
             if (condicion == null || condicion.getComparador() == null) {
                 LOGGER.log(Level.INFO, "---> EntityModel No tiene comparador " + (ENTITY_PREFIX + clazzNameJoin) + " nameField " + nameField + " condicion " + condicion);
@@ -813,15 +1624,15 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
                         return builder.notEqual(path, l.get(0));
                     }
                 case "IN":
-                    return join.get(nameField).in(condicion.getValuesCast(metaField.getJavaType()));
+                    return inLists.in(builder, path, condicion.getValuesCast(metaField.getJavaType()), metaField.getJavaType(), inListBudgets.get(idTrans));
                 case "NOTIN":
-                    return join.get(nameField).in(condicion.getValuesCast(metaField.getJavaType())).not();
+                    return inLists.in(builder, path, condicion.getValuesCast(metaField.getJavaType()), metaField.getJavaType(), inListBudgets.get(idTrans)).not();
                 case "NOTLIKE":
                 case "NOTCONTAINS":
                     return getPredicatelLike(idTrans, builder, nameField, join, condicion, from, path, 1, true, condicionPrin);
                 case "LIKE":
                 case "CONTAINS":
-                    return builder.like(builder.upper(path), condicion.getValueLikes());
+                    return builder.like(likePath(builder, path), condicion.getValueLikes());
                 case "STARTSWITH":
                     if (metaField.getJavaType() == String.class) {
                         boolean negado = false;
@@ -896,120 +1707,6 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
                     return builder.isEmpty(path);
                 case "ISNOTEMPTY":
                     return builder.isNotEmpty(path);
-                case "CASE":
-                    List<Predicate> conds = new ArrayList<>(condicion.getValues().size());
-                    List<Predicate> condElse = new ArrayList<>(condicion.getValues().size());
-                    List<Object> values = condicion.getValues();
-                    Object v2 = values.get(0);
-                    values = values.subList(1, values.size());
-                    for (Object cd : values) {
-                        BusquedaModel.WhereCondition v = null;
-                        if (cd instanceof Map) {
-                            Map cdv = (Map) cd;
-                            nameField = (String) cdv.keySet().stream().findFirst().get();
-                            v = (BusquedaModel.WhereCondition) Utilities.toObjectFromJson(Utilities.toJson(cdv.values().stream().findFirst().get()), BusquedaModel.WhereCondition.class);
-                        } else if (cd instanceof BusquedaModel.WhereCondition) {
-                            v = (BusquedaModel.WhereCondition) cd;
-                        }
-                        LOGGER.log(Level.INFO, "Verificando valores " + cd + " where cond " + v);
-                        Predicate field = null;
-                        if (v.getComparador() == null && cd.toString().startsWith("{") && cd.toString().endsWith("{")) {
-                            analizarOrPred(idTrans, builder, from, conds, cd, condicion, null);
-                        } else if (v.getComparador() != null) {
-                            field = this.getPredicateField(idTrans, builder, nameField, join, v, from, condicion);
-                        }
-                        if (field != null) {
-                            if ("ELSE".equalsIgnoreCase(v.getComparador())) {
-                                condElse.add(field);
-                            } else {
-                                conds.add(field);
-                            }
-                        }
-                    }
-                    Expression vv = null;
-                    if (v2 != null) {
-                        try {
-                            if (v2 instanceof Map) {
-                                Map cdv = (Map) v2;
-                                nameField = (String) cdv.keySet().stream().findFirst().get();
-                                v2 = Utilities.toObjectFromJson(Utilities.toJson(cdv.values().stream().findFirst().get()), BusquedaModel.WhereCondition.class);
-                            }
-                        } catch (Exception e) {
-                            LOGGER.log(Level.INFO, "No es js " + e.getMessage());
-                            v2 = new BusquedaModel.WhereCondition(null, null);
-                        }
-                        if (v2 instanceof BusquedaModel.WhereCondition) {
-                            vv = this.getPredicateField(idTrans, builder, nameField, join, (BusquedaModel.WhereCondition) v2, from, condicion);
-                        } else {
-                            vv = builder.literal(v2);
-                        }
-                    }
-                    Predicate[] result = new Predicate[conds.size()];
-                    LOGGER.log(Level.INFO, "Generando case " + conds.size() + " then value " + v2 + " Else " + condElse.size());
-                    CriteriaBuilder.Case<Object> when = builder.selectCase().when(builder.and(conds.toArray(result)), vv);
-                    if (condElse != null && condElse.size() > 0) {
-                        when.otherwise(condElse);
-                    }
-                    return builder.isTrue(when.as(Boolean.class));
-                case "OR":
-                    System.out.println("Ingreso al OR values " + condicion.getValues());
-                    List<Predicate> ors = new ArrayList<>(condicion.getValues().size());
-                    for (Object cd : condicion.getValues()) {
-                        BusquedaModel.WhereCondition v = null;
-                        Map val = null;
-                        try {
-                            if (cd instanceof BusquedaModel.WhereCondition) {
-                                v = (BusquedaModel.WhereCondition) cd;
-                            } else if (cd instanceof Map) {
-                                val = (Map) cd;
-                            } else {
-                                System.out.println("Or values no es BusquedaDinamica.WhereCondition ni  Map " + cd);
-                                if (!cd.toString().startsWith("{")) {
-//                                    v = new BusquedaDinamica.WhereCondition("AND", Arrays.asList(cd));
-                                } else {
-                                    v = (BusquedaModel.WhereCondition) Utilities.toObjectFromJson(cd.toString(), BusquedaModel.WhereCondition.class);
-                                }
-                            }
-                        } catch (Exception e) {
-                            System.out.println("No es js " + e.getMessage());
-                            v = new BusquedaModel.WhereCondition(null, null);
-                        }
-                        if ((v == null || v.getComparador() == null) && val != null) {
-                            analizarOrPred(idTrans, builder, from, ors, cd, condicion, nameField);
-                        } else if (v != null && v.getComparador() != null) {
-                            ors.add(this.getPredicateField(idTrans, builder, nameField, join, v, from, condicion));
-                        } else {
-                            BusquedaModel.WhereCondition oc = new BusquedaModel.WhereCondition(Arrays.asList(cd));
-                            ors.add(this.getPredicateField(idTrans, builder, nameField, join, oc, from, condicion));
-                        }
-                    }
-                    return builder.or(ors.toArray(new Predicate[]{}));
-                case "AND":
-                    if (Utilities.isNotEmpty(condicion.getValues())) {
-                        List<Predicate> ands = new ArrayList<>(condicion.getValues().size());
-                        for (Object cd : condicion.getValues()) {
-                            BusquedaModel.WhereCondition v = null;
-                            try {
-                                if (!cd.toString().startsWith("{")) {
-//                                v = new BusquedaDinamica.WhereCondition("AND", Arrays.asList(cd));
-                                } else {
-                                    v = (BusquedaModel.WhereCondition) Utilities.toObjectFromJson(cd.toString(), BusquedaModel.WhereCondition.class);
-                                }
-                            } catch (Exception e) {
-                                System.out.println("No es js " + e.getMessage());
-                                v = new BusquedaModel.WhereCondition(null, null);
-                            }
-                            if (v.getComparador() == null && cd.toString().startsWith("{")) {
-                                analizarOrPred(idTrans, builder, from, ands, cd, condicion, null);
-                            } else if (v.getComparador() != null) {
-                                ands.add(this.getPredicateField(idTrans, builder, nameField, join, v, from, condicion));
-                            } else {
-                                BusquedaModel.WhereCondition oc = new BusquedaModel.WhereCondition(Arrays.asList(cd));
-                                ands.add(this.getPredicateField(idTrans, builder, nameField, join, oc, from, condicion));
-                            }
-                        }
-                        return builder.and(ands.toArray(new Predicate[]{}));
-                    }
                 default:
                     Object v = null;
                     if (metaField.getJavaType().equals(String.class) || metaField.getJavaType().equals(Character.class)) {
@@ -1041,9 +1738,10 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
                         }
                     }
             }
+        } catch (UnsupportedOperationException e) {
+            throw e;
         } catch (Exception e) {
-            System.out.println("----->entityModel " + (ENTITY_PREFIX + clazzNameJoin) + " nameField " + nameField + " condicion " + condicion);
-            LOGGER.log(Level.SEVERE, "entityModel", e);
+            LOGGER.log(Level.SEVERE, "entityModel " + (ENTITY_PREFIX + clazzNameJoin) + " nameField " + nameField + " condicion " + condicion, e);
             return null;
         }
         return null;
@@ -1054,25 +1752,9 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
             List<Predicate> pred = new ArrayList<>(condicion.getValues().size());
             for (Object ob : condicion.getValues()) {
                 if (ob instanceof Map) {
-                    pred.add(this.getPredicateField(idTrans, builder, nameField, join, (BusquedaModel.WhereCondition) Utilities.toObjectFromJson(Utilities.toJson(ob), BusquedaModel.WhereCondition.class), from, condicionPrin));
+                    pred.add(this.getPredicateField(idTrans, builder, nameField, join, toCondition(ob), from, condicionPrin));
                 } else {
-                    if (!negado) {
-                        if (i == 1) {
-                            pred.add(builder.like(builder.upper(path), (ob.toString().endsWith("%") ? ob.toString().toUpperCase() : ob.toString().toUpperCase().concat("%"))));
-                        } else if (i == 2) {
-                            pred.add(builder.like(builder.upper(path), (ob.toString().startsWith("%") ? ob.toString().toUpperCase() : "%".concat(ob.toString().toUpperCase()))));
-                        } else {
-                            pred.add(builder.like(builder.upper(path), (ob.toString().contains("%") ? ob.toString().toUpperCase() : "%".concat(ob.toString().toUpperCase()).concat("%"))));
-                        }
-                    } else {
-                        if (i == 1) {
-                            pred.add(builder.notLike(builder.upper(path), (ob.toString().endsWith("%") ? ob.toString().toUpperCase() : ob.toString().toUpperCase().concat("%"))));
-                        } else if (i == 2) {
-                            pred.add(builder.notLike(builder.upper(path), (ob.toString().startsWith("%") ? ob.toString().toUpperCase() : "%".concat(ob.toString().toUpperCase()))));
-                        } else {
-                            pred.add(builder.notLike(builder.upper(path), (ob.toString().contains("%") ? ob.toString().toUpperCase() : "%".concat(ob.toString().toUpperCase()).concat("%"))));
-                        }
-                    }
+                    pred.add(like(builder, path, likePattern(likeValue(ob, condicion), i), negado));
                 }
             }
             LOGGER.log(Level.INFO, "negado " + negado + " pred " + pred.size());
@@ -1084,79 +1766,83 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
         } else {
             Object vd = condicion.getValues().get(0);
             if (vd instanceof Map) {
-                return getPredicatelLike(idTrans, builder, nameField, join, (BusquedaModel.WhereCondition) Utilities.toObjectFromJson(Utilities.toJson(vd), BusquedaModel.WhereCondition.class), from, path, i, negado, condicion);
+                return getPredicatelLike(idTrans, builder, nameField, join, toCondition(vd), from, path, i, negado, condicion);
             } else {
-                String v = condicion.getValues().get(0).toString();
-                v = v.toUpperCase();
-                if (!negado) {
-                    if (i == 1) {
-                        return builder.like(builder.upper(path), (v.endsWith("%") ? v : v.concat("%")));
-                    } else if (i == 2) {
-                        return builder.like(builder.upper(path), (v.startsWith("%") ? v : "%".concat(v)));
-                    } else {
-                        return builder.like(builder.upper(path), (v.contains("%") ? v : "%".concat(v).concat("%")));
-                    }
-                } else {
-                    if (i == 1) {
-                        return builder.notLike(builder.upper(path), (v.endsWith("%") ? v : v.concat("%")));
-                    } else if (i == 2) {
-                        return builder.notLike(builder.upper(path), (v.startsWith("%") ? v : "%".concat(v)));
-                    } else {
-                        return builder.notLike(builder.upper(path), (v.contains("%") ? v : "%".concat(v).concat("%")));
-                    }
-                }
+                String v = likeValue(condicion.getValues().get(0), condicion);
+                return like(builder, path, likePattern(v, i), negado);
             }
         }
     }
 
-    private void analizarOrPred(Long idTrans, CriteriaBuilder builder, Root from, List<Predicate> ors, Object cd, org.angbyte.model.BusquedaModel.WhereCondition condicion, String nameField) {
-        if (cd != null) {
-            if (cd instanceof String && cd.toString().startsWith("{")) {
-                try {
-                    BusquedaModel.WhereCondition x = (BusquedaModel.WhereCondition) Utilities.toObjectFromJson(cd.toString(), BusquedaModel.WhereCondition.class);
-                    Object o = (x.getComparador() == null) ? Utilities.toObjectFromJson(cd.toString(), HashMap.class) : x;
-                    analizarOrPred(idTrans, builder, from, ors, o, condicion, null);
-                } catch (Exception e) {
-                    System.out.println("error al convertir " + e);
-                }
-            } else {
-                HashMap<String, Object> fil = (cd instanceof HashMap) ? (HashMap<String, Object>) cd : (HashMap<String, Object>) Utilities.toObjectFromJson(cd.toString(), HashMap.class);
-                BusquedaModel d = new BusquedaModel();
-                // Aqui se envia hacer la conversion de Map a WhereCondition
-                d.setFilters(fil);
-                List<Predicate> orss = new ArrayList<>(fil.size());
-                fil.entrySet().forEach((Map.Entry<String, Object> entry) -> {
-                    try {
-                        BusquedaModel.WhereCondition b = (BusquedaModel.WhereCondition) Utilities.toObjectFromJson(cd.toString(), BusquedaModel.WhereCondition.class);
-                        for (Object o : b.getValues()) {
-                            if (o.toString().startsWith("{")) {
-                                HashMap<String, Object> cp = new HashMap<>();
-                                cp.put(entry.getKey(), o);
-                                analizarOrPred(idTrans, builder, from, orss, cp, condicion, null);
-                            } else {
-                                orss.add(this.getPredicateField(idTrans, builder, entry.getKey(), this.createJoin(idTrans, entry.getKey(), from), new BusquedaModel.WhereCondition("EQ", Arrays.asList(o)), from, condicion));
+    /**
+     * Columna de texto para comparar. Con {@link StringNormalization.Mode#FUNCTION} se aplica UPPER/TRIM
+     * según la condición; si los textos se guardan normalizados o la collation no distingue mayúsculas se
+     * compara la columna directamente (usa sus índices). Los valores se normalizan en getValuesCast.
+     */
+    private Expression stringPath(CriteriaBuilder builder, From join, String nameField, BusquedaModel.WhereCondition condicion) {
+        Expression<String> path = join.get(nameField);
+        if (stringNormalizations.mode(join.getJavaType(), nameField) != StringNormalization.Mode.FUNCTION) {
+            return path;
+        }
+        if (condicion.getUpper()) {
+            path = builder.upper(path);
+        }
+        if (condicion.getTrim()) {
+            path = builder.trim(path);
+        }
+        return path;
+    }
 
-                            }
-                        }
-                    } catch (Exception e) {
-                        LOGGER.log(Level.SEVERE, "Value " + entry.getValue(), e);
-                    }
-                });
-                ors.add(builder.or(orss.toArray(new Predicate[]{})));
-            }
+    /**
+     * Los textos ya vienen de {@link #stringPath}, los demás tipos se comparan como texto en mayúsculas.
+     */
+    private static Expression<String> likePath(CriteriaBuilder builder, Expression path) {
+        Class<?> type = path.getJavaType();
+        if (String.class.equals(type) || Character.class.equals(type)) {
+            return path;
+        }
+        return builder.upper(path);
+    }
+
+    private static Predicate like(CriteriaBuilder builder, Expression path, String pattern, boolean negado) {
+        return negado ? builder.notLike(likePath(builder, path), pattern) : builder.like(likePath(builder, path), pattern);
+    }
+
+    /**
+     * Patrón del LIKE: {@code i} 1 empieza con, 2 termina con, otro contiene. Si el valor ya trae el
+     * comodín en esa posición se usa tal cual.
+     */
+    private static String likePattern(String v, int i) {
+        if (i == 1) {
+            return v.endsWith("%") ? v : v.concat("%");
+        }
+        if (i == 2) {
+            return v.startsWith("%") ? v : "%".concat(v);
         }
+        return v.contains("%") ? v : "%".concat(v).concat("%");
     }
 
+    private static String likeValue(Object value, BusquedaModel.WhereCondition condicion) {
+        String v = value.toString();
+        return condicion.getUpper() ? v.toUpperCase() : v;
+    }
 
     private void buildQuery(Long transactionId, BusquedaModel searchCriteria, CriteriaBuilder builder, CriteriaQuery<?> query, Root<?> root) {
+        if (searchCriteria.getAggregation() != null) {
+            // Sin seek ni orden estable: el id no está en el GROUP BY
+            // Primero los joins de la agregación, así un filtro sobre la misma colección los reutiliza
+            processAggregation(transactionId, searchCriteria.getAggregation(), builder, query, root);
+            processWhere(transactionId, builder, root, searchCriteria.getFilters(), query, Boolean.TRUE.equals(searchCriteria.getDistinct()));
+            return;
+        }
         processFunction(transactionId, searchCriteria, builder, query, root);
-        processWhere(transactionId, builder, root, searchCriteria.getFilters(), query);
+        processWhere(transactionId, builder, root, searchCriteria.getFilters(), query, Boolean.TRUE.equals(searchCriteria.getDistinct()));
         // Aplica seek (agrega predicado al WHERE)
         applySeekPagination(transactionId, searchCriteria, builder, query, root);
         // Asegura orden estable (agrega PK a los Orders si falta)
         ensureStableOrder(transactionId, searchCriteria, root);
 
-        processGroupBy(transactionId, searchCriteria, query, root);
+        processGroupBy(transactionId, searchCriteria, builder, query, root);
         processOrderBY(transactionId, builder, root, searchCriteria.getOrders(), query);
     }
 
@@ -1208,6 +1894,83 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
         try {
             String entityName = searchCriteria.getEntity();
             Long transactionId = getIdTrans();
+            EntityType<?> entityType = getEntityTypeFromCache(entityName, transactionId);
+            Class<?> domainClass = getDomainClass(entityType, entityName, searchCriteria);
+            removeTranssaction(transactionId);
+
+            List resultList;
+            if (isSharded(domainClass)) {
+                resultList = scatterGather.findAll(domainClass, searchCriteria, this::executeDynamic);
+            } else {
+                resultList = inTransaction(domainClass, true, () -> {
+                    List<Object> rows = executeDynamic(searchCriteria, getEntityManager(domainClass));
+                    // Sin open-in-view en la unidad: lo que se va a serializar se carga antes de cerrar el EntityManager
+                    if (isRouted(domainClass)) {
+                        LazyGraphs.initialize(rows, searchCriteria);
+                    }
+                    return rows;
+                });
+            }
+            if (Boolean.TRUE.equals(searchCriteria.getResolverDto())) {
+                Function<List, List> toDto = dtoMapper(searchCriteria.getEntity());
+                if (toDto != null) {
+                    Utilities.logs(this, "Lista toDto: " + (resultList == null ? "0" : resultList.size()));
+                    return Optional.ofNullable(toDto.apply(resultList));
+                }
+            }
+            return Optional.ofNullable(resultList);
+        } catch (UnsupportedOperationException e) {
+            // Búsqueda que no se puede resolver (ej. funciones en shards), se responde CONFLICT
+            throw e;
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error executing dynamic query", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Método {@code toDto(List)} del mapper de la entidad ({@code <Entidad>Mapper} en
+     * {@code org.ventanilla.interna.mappers}), null si no existe.
+     */
+    private static Function<List, List> dtoMapper(String entity) throws ReflectiveOperationException {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(true);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(Mapper.class));
+        for (BeanDefinition bd : scanner.findCandidateComponents("org.ventanilla.interna.mappers")) {
+            Class aClass = Class.forName(bd.getBeanClassName());
+            if (aClass.getSimpleName().startsWith(entity + "Mapper")) {
+                Object instance = aClass.newInstance();
+                for (Method m : aClass.getMethods()) {
+                    Class<?>[] types = m.getParameterTypes();
+                    if ("toDto".equals(m.getName()) && types.length == 1 && types[0].equals(List.class)) {
+                        return rows -> {
+                            try {
+                                return (List) m.invoke(instance, rows);
+                            } catch (ReflectiveOperationException e) {
+                                throw new IllegalStateException("Error en " + m, e);
+                            }
+                        };
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isSharded(Class<?> domainClass) {
+        return scatterGather != null && scatterGather.isSharded(domainClass);
+    }
+
+    /**
+     * Construye y ejecuta la búsqueda sobre el EntityManager indicado.
+     *
+     * @param searchCriteria Modelo con los datos para la busqueda
+     * @param em             EntityManager de la unidad o del shard
+     * @return Registros encontrados
+     */
+    private List<Object> executeDynamic(BusquedaModel searchCriteria, EntityManager em) {
+        String entityName = searchCriteria.getEntity();
+        Long transactionId = getIdTrans();
+        try {
             boolean isMultiColumnQuery = isMultiColumnQuery(searchCriteria);
 
             EntityType<?> entityType = getEntityTypeFromCache(entityName, transactionId);
@@ -1215,39 +1978,110 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
 
             updateJoinMappings(transactionId, domainClass);
 
-            CriteriaBuilder builder = this.getEntityManager().getCriteriaBuilder();
+            CriteriaBuilder builder = em.getCriteriaBuilder();
             CriteriaQuery<?> query = createAppropriateQuery(builder, domainClass, isMultiColumnQuery);
             Root<?> root = query.from(domainClass);
 
             buildQuery(transactionId, searchCriteria, builder, query, root);
 
+            return getList(searchCriteria, isMultiColumnQuery, query, em);
+        } finally {
             removeTranssaction(transactionId);
+        }
+    }
 
-            List resultList = getList(searchCriteria, isMultiColumnQuery, query);
-            if (Boolean.TRUE.equals(searchCriteria.getResolverDto())) {
-                ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(true);
-                scanner.addIncludeFilter(new AnnotationTypeFilter(Mapper.class));
-                for (BeanDefinition bd : scanner.findCandidateComponents("org.ventanilla.interna.mappers")) {
-                    Class aClass = Class.forName(bd.getBeanClassName());
-                    String classMapper = searchCriteria.getEntity() + "Mapper";
-                    if (aClass.getSimpleName().startsWith(classMapper)) {
-                        Object instance = aClass.newInstance();
-                        Method[] method = aClass.getMethods();
-                        for (Method m : method) {
-                            Class<?>[] types = m.getParameterTypes();
-                            if ("toDto".equals(m.getName()) && types[0].equals(List.class)) {
-                                System.out.println(aClass.getSimpleName() + " Encontrado " + m + " Lista toDto: " + (resultList == null ? "0" : resultList.size()));
-                                List rsdto = (List) m.invoke(instance, resultList);
-                                return Optional.ofNullable(rsdto);
-                            }
-                        }
+    /**
+     * Recorre los resultados de la búsqueda fila por fila sin armar la lista completa. Las filas de tupla
+     * se entregan como Map; con {@code resolverDto} las entidades pasan por el mapper toDto. En unidades
+     * de {@code buho.datasources} se abre una transacción de solo lectura de la unidad.
+     *
+     * @param searchCriteria Modelo con los datos para la busqueda
+     * @param consumer       Recibe cada registro
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachDinamic(BusquedaModel searchCriteria, Consumer<Object> consumer) {
+        String entityName = searchCriteria.getEntity();
+        Long transactionId = getIdTrans();
+        try {
+            EntityType<?> entityType = getEntityTypeFromCache(entityName, transactionId);
+            Class<?> domainClass = getDomainClass(entityType, entityName, searchCriteria);
+            boolean isMultiColumnQuery = isMultiColumnQuery(searchCriteria);
+            Function<List, List> toDto = !isMultiColumnQuery && Boolean.TRUE.equals(searchCriteria.getResolverDto())
+                    ? dtoMapper(entityName) : null;
+            if (isSharded(domainClass)) {
+                // El merge entre shards necesita las páginas de cada shard completas
+                List<Object> rows = scatterGather.findAll(domainClass, searchCriteria, this::executeDynamic);
+                emit(rows == null ? new ArrayList<>() : rows, toDto, consumer, null);
+                return;
+            }
+            inTransaction(domainClass, true, () -> {
+                streamRows(transactionId, searchCriteria, domainClass, isMultiColumnQuery, toDto, consumer);
+                return null;
+            });
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No se pudo crear el mapper toDto de " + entityName, e);
+        } finally {
+            removeTranssaction(transactionId);
+        }
+    }
+
+    /**
+     * Ejecuta el query como stream y entrega las filas en bloques de {@link #DEFAULT_FETCH_SIZE}. Después de
+     * entregar cada bloque se limpia el contexto de persistencia, así tampoco se acumulan las asociaciones
+     * cargadas al serializar.
+     */
+    private void streamRows(Long transactionId, BusquedaModel searchCriteria, Class<?> domainClass, boolean isMultiColumnQuery,
+                            Function<List, List> toDto, Consumer<Object> consumer) {
+        updateJoinMappings(transactionId, domainClass);
+        EntityManager em = getEntityManager(domainClass);
+        CriteriaBuilder builder = em.getCriteriaBuilder();
+        CriteriaQuery<?> query = createAppropriateQuery(builder, domainClass, isMultiColumnQuery);
+        Root<?> root = query.from(domainClass);
+        buildQuery(transactionId, searchCriteria, builder, query, root);
+
+        TupleRowMapper mapper = new TupleRowMapper();
+        List<Object> chunk = new ArrayList<>(DEFAULT_FETCH_SIZE);
+        if (Boolean.TRUE.equals(searchCriteria.getStateless())) {
+            try (StatelessSession session = openStatelessSession(em);
+                 Stream<?> rows = createStatelessQuery(session, searchCriteria, query, em).getResultStream()) {
+                rows.forEach(row -> {
+                    chunk.add(row instanceof Tuple ? mapper.toRow((Tuple) row) : row);
+                    if (chunk.size() == DEFAULT_FETCH_SIZE) {
+                        emit(chunk, toDto, consumer, null);
                     }
-                }
+                });
+                emit(chunk, toDto, consumer, null);
             }
-            return Optional.ofNullable(resultList);
-        } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error executing dynamic query", e);
-            return Optional.empty();
+            return;
+        }
+        TypedQuery<?> tq = criteriaDistinct(searchCriteria, query, em);
+        try (Stream<?> rows = tq.getResultStream()) {
+            rows.forEach(row -> {
+                chunk.add(row instanceof Tuple ? mapper.toRow((Tuple) row) : row);
+                if (chunk.size() == DEFAULT_FETCH_SIZE) {
+                    emit(chunk, toDto, consumer, em);
+                }
+            });
+            emit(chunk, toDto, consumer, em);
+        }
+    }
+
+    /**
+     * Entrega un bloque de filas (por el mapper toDto si hay) y lo vacía; con {@code em} limpia además el
+     * contexto de persistencia.
+     */
+    private static void emit(List<Object> chunk, Function<List, List> toDto, Consumer<Object> consumer, EntityManager em) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List rows = toDto == null ? chunk : toDto.apply(chunk);
+        if (rows != null) {
+            rows.forEach(consumer);
+        }
+        chunk.clear();
+        if (em != null) {
+            em.clear();
         }
     }
 
@@ -1260,6 +2094,25 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
         return null;
     }
 
+    /**
+     * El limite se aplica sobre una copia para no cambiar la página del modelo recibido; en shards cada
+     * shard devuelve a lo sumo {@code first + limite} filas.
+     */
+    @Override
+    public <T> T findUnique(BusquedaModel busq) {
+        boolean validar = Boolean.TRUE.equals(busq.getValidarUnico());
+        BusquedaModel limited = busq.copy();
+        limited.setPageSize(validar ? 2 : 1);
+        List<T> rs = findAllDinamic(limited);
+        if (Utilities.isEmpty(rs)) {
+            return null;
+        }
+        if (validar && rs.size() > 1) {
+            throw new NonUniqueResultException("Mas de un resultado para la busqueda unica de " + busq.getEntity());
+        }
+        return rs.get(0);
+    }
+
     /**
      * Implementación para la busqueda dinamica
      *
@@ -1290,21 +2143,29 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
                 LOGGER.log(Level.INFO, "No existe objeto " + nameClazz + " con parametros " + searchCriteria);
                 return null;
             }
-            CriteriaBuilder builder = this.getEntityManager().getCriteriaBuilder();
             List resultList = null;
             Optional<List<Object>> optionalObjects = findAllDynamic(searchCriteria);
             if (optionalObjects.isPresent()) {
                 resultList = optionalObjects.get();
             }
             Utilities.logs(this, "Datos procesados ", resultList);
-            // Para realizar el conteo
-            count = countData(searchCriteria, builder, domainClass, idTrans);
+            // Para realizar el conteo; en una agregación son los grupos, la página incompleta ya los tiene todos
+            Integer max = maxResults(searchCriteria);
+            int first = searchCriteria.getFirst() == null ? 0 : searchCriteria.getFirst();
+            int size = resultList == null ? 0 : resultList.size();
+            if (searchCriteria.getAggregation() != null && (max == null || size < max) && (size > 0 || first == 0)) {
+                count = (long) first + size;
+            } else {
+                count = countDynamic(searchCriteria, domainClass, idTrans);
+            }
             if (headers != null) {
                 headers.add("rootSize", (count == null ? "0" : count.toString()));
             }
             Utilities.logs(this, "Registros encontrados", count);
             removeTranssaction(idTrans);
             return resultList;
+        } catch (UnsupportedOperationException e) {
+            throw e;
         } catch (Exception e) {
             LOGGER.log(Level.INFO, "Transaccion parametros " + searchCriteria);
             LOGGER.log(Level.SEVERE, "", e);
@@ -1313,13 +2174,86 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
         }
     }
 
+    /**
+     * Conteo de la búsqueda, para entidades en shards se suma el conteo de cada shard.
+     */
+    private Long countDynamic(BusquedaModel searchCriteria, Class domainClass, Long idTrans) {
+        if (searchCriteria.getAggregation() != null) {
+            if (isSharded(domainClass)) {
+                throw new UnsupportedOperationException("Agregaciones no soportadas en entidades con shards: " + searchCriteria.getEntity());
+            }
+            return inTransaction(domainClass, true, () -> countGroups(searchCriteria, domainClass));
+        }
+        if (isSharded(domainClass)) {
+            return scatterGather.count(domainClass, searchCriteria, (busq, em) -> {
+                Long shardTrans = getIdTrans();
+                try {
+                    updateJoinMappings(shardTrans, domainClass);
+                    return countData(busq, em.getCriteriaBuilder(), domainClass, shardTrans, em);
+                } finally {
+                    removeTranssaction(shardTrans);
+                }
+            });
+        }
+        Long rollup = rollupCount(searchCriteria, domainClass);
+        if (rollup != null) {
+            return rollup;
+        }
+        return inTransaction(domainClass, true,
+                () -> countData(searchCriteria, this.getEntityManager(domainClass).getCriteriaBuilder(), domainClass, idTrans));
+    }
+
+    /**
+     * Número de grupos de la agregación: {@code SELECT count(1) FROM (SELECT grupos ... GROUP BY ... HAVING ...)}.
+     * Usa su propia transacción para que los joins queden sobre el root del subquery.
+     */
+    private Long countGroups(BusquedaModel searchCriteria, Class<?> domainClass) {
+        Long groupsTrans = getIdTrans();
+        try {
+            updateJoinMappings(groupsTrans, domainClass);
+            EntityManager em = getEntityManager(domainClass);
+            CriteriaBuilder builder = em.getCriteriaBuilder();
+            JpaCriteriaQuery<Long> countQuery = (JpaCriteriaQuery<Long>) builder.createQuery(Long.class);
+            JpaSubQuery<Tuple> groups = (JpaSubQuery<Tuple>) countQuery.subquery(Tuple.class);
+            Root<?> from = groups.from(domainClass);
+            processAggregation(groupsTrans, searchCriteria.getAggregation(), builder, groups, from);
+            processWhere(groupsTrans, builder, from, searchCriteria.getFilters(), groups, Boolean.TRUE.equals(searchCriteria.getDistinct()));
+            countQuery.from(groups);
+            countQuery.select(builder.count(builder.literal(1)));
+            return em.createQuery(countQuery).getSingleResult();
+        } finally {
+            removeTranssaction(groupsTrans);
+        }
+    }
+
+    /**
+     * Conteo desde un rollup en memoria ({@code buho.rollups}), null si ninguno cubre los filtros.
+     */
+    private Long rollupCount(BusquedaModel searchCriteria, Class<?> domainClass) {
+        if (rollups == null) {
+            return null;
+        }
+        try {
+            EntityType<?> entityType = getEntityManager(domainClass).getMetamodel().entity(domainClass);
+            return rollups.count(domainClass, compileFilters(entityType, searchCriteria.getFilters()));
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.FINE, "Rollup no disponible para " + domainClass, e);
+            return null;
+        }
+    }
+
     private Long countData(BusquedaModel searchCriteria, CriteriaBuilder builder, Class domainClass, Long idTrans) {
+        return countData(searchCriteria, builder, domainClass, idTrans, this.getEntityManager(domainClass));
+    }
+
+    private Long countData(BusquedaModel searchCriteria, CriteriaBuilder builder, Class domainClass, Long idTrans, EntityManager em) {
         Long count;
         CriteriaQuery<Long> countQuery = builder.createQuery(Long.class);
         Root from = countQuery.from(domainClass);
         removeTranssaction(idTrans);
-        Predicate[] preds = processWhere(idTrans, builder, from, searchCriteria.getFilters(), countQuery);
-        if (searchCriteria.getDistinct() != null && searchCriteria.getDistinct().equals(true)) {
+        Predicate[] preds = processWhere(idTrans, builder, from, searchCriteria.getFilters(), countQuery, Boolean.TRUE.equals(searchCriteria.getDistinct()));
+        // Sin joins a colecciones cada fila es una entidad distinta
+        if (Boolean.TRUE.equals(searchCriteria.getDistinct()) && hasCollectionJoin(countQuery)) {
             countQuery.select(builder.countDistinct(from));
         } else {
             countQuery.select(builder.count(from));
@@ -1327,7 +2261,7 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
         if (Utilities.isNotEmpty(preds)) {
             countQuery.where(preds);
         }
-        count = this.getEntityManager().createQuery(countQuery).getSingleResult();
+        count = em.createQuery(countQuery).getSingleResult();
         return count;
     }
 
@@ -1395,35 +2329,8 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
                 d.add(Utilities.toObjectFromJson(model.getData(), entityClass));
             }
             rws.setEstado(true);
-            Object datas = null;
-            List rs = new ArrayList();
-            for (Object entity : d) {
-                boolean ok = this.processValidations(rws, entity, model);
-                System.out.println("Guardar " + ok);
-                if (ok) {
-                    SingularAttribute id = o.getDeclaredId(o.getIdType().getJavaType());
-                    Field field = entity.getClass().getDeclaredField(id.getName());
-                    field.setAccessible(true);
-                    Object idVal = field.get(entity);
-                    if (idVal == null) {
-                        this.getEntityManager().persist(entity);
-                        //this.getEm().getTransaction().commit();
-                        try {
-                            this.getEntityManager().merge(entity);
-                        } catch (Exception e) {
-                            System.out.println("Error al refrescar " + e.getMessage());
-                        }
-                    } else {
-                        this.getEntityManager().merge(entity);
-                    }
-                    datas = entity;
-                    rs.add(entity);
-                    rws.setEstado(true);
-                } else {
-                    rws.setEstado(false);
-                    break;
-                }
-            }
+            List<Object> rs = inTransaction(o.getJavaType(), () -> persistValidated(rws, o, d, model));
+            Object datas = rs.isEmpty() ? null : rs.get(rs.size() - 1);
             if (Utilities.isNotEmpty(rs)) {
                 try {
                     rws.setData(Utilities.toJson(rs));
@@ -1465,30 +2372,74 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
             rws.setEstado(false);
             rws.setMensaje(e.getMessage());
             LOGGER.log(Level.SEVERE, "", e);
-            this.getEntityManager().getTransaction().rollback();
+            rollbackOnly();
         }
         return rws;
     }
 
+    /**
+     * Guarda (persist o merge según el id) las entidades que cumplen las validaciones, se detiene en la
+     * primera que no las cumple.
+     *
+     * @return Entidades guardadas
+     */
+    private List<Object> persistValidated(Respuesta rws, EntityType o, List<Object> entities, GuardarModel model) {
+        List<Object> rs = new ArrayList<>();
+        EntityManager em = this.getEntityManager(o.getJavaType());
+        for (Object entity : entities) {
+            boolean ok = this.processValidations(rws, entity, model);
+            System.out.println("Guardar " + ok);
+            if (!ok) {
+                rws.setEstado(false);
+                break;
+            }
+            if (idValue(o, entity) == null) {
+                em.persist(entity);
+                try {
+                    em.merge(entity);
+                } catch (Exception e) {
+                    System.out.println("Error al refrescar " + e.getMessage());
+                }
+            } else {
+                em.merge(entity);
+            }
+            rs.add(entity);
+            rws.setEstado(true);
+        }
+        return rs;
+    }
+
+    private static Object idValue(EntityType o, Object entity) {
+        try {
+            SingularAttribute id = o.getDeclaredId(o.getIdType().getJavaType());
+            Field field = entity.getClass().getDeclaredField(id.getName());
+            field.setAccessible(true);
+            return field.get(entity);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No se pudo leer el id de " + entity.getClass().getSimpleName(), e);
+        }
+    }
+
     @Override
     @Transactional
     public Object saveUpdate(Object entity) {
         try {
             EntityType o = getEntityTypeFromCache(entity.getClass().getSimpleName(), getIdTrans());
-            SingularAttribute id = o.getDeclaredId(o.getIdType().getJavaType());
-            Field field = entity.getClass().getDeclaredField(id.getName());
-            field.setAccessible(true);
-            Object idVal = field.get(entity);
-            if (idVal == null) {
-                this.getEntityManager().persist(entity);
-                this.getEntityManager().refresh(entity);
-            } else {
-                update(entity);
-            }
-            return entity;
-        } catch (Exception e) {
+            Object idVal = idValue(o, entity);
+            return inTransaction(entity.getClass(), () -> {
+                EntityManager em = this.getEntityManager(entity.getClass());
+                if (idVal == null) {
+                    em.persist(entity);
+                    em.refresh(entity);
+                } else {
+                    em.merge(entity);
+                }
+                return entity;
+            });
+        } catch (RuntimeException e) {
+            // La transacción de la unidad (y la del método) hacen rollback con la excepción
             LOGGER.log(Level.SEVERE, "-->", e);
-            return null;
+            throw e;
         }
     }
 
@@ -1501,30 +2452,37 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
     @Transactional
     public Collection saveAll(Collection list) {
         try {
-            Collection saved = new ArrayList(list.size());
-            int i = 0;
-
-            for (Object entity : list) {
-                saved.add(saveUpdate(entity));
-                if (++i % JDBC_BATCH_SIZE == 0) {
-                    this.getEntityManager().flush();
-                    this.getEntityManager().clear();
+            Object[] items = list.toArray();
+            Object[] saved = new Object[items.length];
+            // Cada unidad en su transacción, con flush / clear sobre su propio EntityManager
+            Map<EntityManager, List<Integer>> byUnit = new LinkedHashMap<>();
+            for (int i = 0; i < items.length; i++) {
+                byUnit.computeIfAbsent(this.getEntityManager(items[i].getClass()), k -> new ArrayList<>()).add(i);
+            }
+            byUnit.forEach((em, indexes) -> inTransaction(items[indexes.get(0)].getClass(), () -> {
+                int n = 0;
+                for (int i : indexes) {
+                    saved[i] = saveUpdate(items[i]);
+                    if (++n % JDBC_BATCH_SIZE == 0) {
+                        em.flush();
+                        em.clear();
+                    }
                 }
-            }
-            this.getEntityManager().flush();
-            this.getEntityManager().clear();
-            return saved;
-        } catch (Exception e) {
+                em.flush();
+                em.clear();
+                return null;
+            }));
+            return new ArrayList(Arrays.asList(saved));
+        } catch (RuntimeException e) {
             LOGGER.log(Level.SEVERE, "--> Error el persistir entidad ", e);
-            this.getEntityManager().getTransaction().rollback();
+            throw e;
         }
-        return null;
     }
 
     @Transactional
     public Object update(Object entity) {
         try {
-            this.getEntityManager().merge(entity);
+            inTransaction(entity.getClass(), () -> this.getEntityManager(entity.getClass()).merge(entity));
             return entity;
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "-->", e);
@@ -1637,16 +2595,21 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
             }
             mapClazzDonm.put(CLASS_TRANSLATION_PREFIX + transsaction, domainClass);
             joinMappings.put(transsaction, mapClazzDonm);
-            CriteriaBuilder builder = this.getEntityManager().getCriteriaBuilder();
+            CriteriaBuilder builder = this.getEntityManager(domainClass).getCriteriaBuilder();
             CriteriaQuery query = builder.createQuery(domainClass);
             if (isTuple) {
                 query = builder.createTupleQuery();
             }
             Root from = query.from(domainClass);
-            processFunction(transsaction, busq, builder, query, from);
-            processWhere(transsaction, builder, from, busq.getFilters(), query);
-            processGroupBy(transsaction, busq, query, from);
-            processOrderBY(transsaction, builder, from, busq.getOrders(), query);
+            if (busq.getAggregation() != null) {
+                processAggregation(transsaction, busq.getAggregation(), builder, query, from);
+                processWhere(transsaction, builder, from, busq.getFilters(), query, Boolean.TRUE.equals(busq.getDistinct()));
+            } else {
+                processFunction(transsaction, busq, builder, query, from);
+                processWhere(transsaction, builder, from, busq.getFilters(), query, Boolean.TRUE.equals(busq.getDistinct()));
+                processGroupBy(transsaction, busq, builder, query, from);
+                processOrderBY(transsaction, builder, from, busq.getOrders(), query);
+            }
             removeTranssaction(transsaction);
             List list = getList(busq, isTuple, query);
             if (Utilities.isNotEmpty(list)) {
@@ -1659,6 +2622,149 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
         }
     }
 
+    /**
+     * Conteo por valor de cada ruta de {@code facets} con los filtros de la búsqueda: un GROUP BY por faceta
+     * ordenado por el conteo. Los filtros se compilan una sola vez y cada consulta arma sus predicados del
+     * mismo árbol; con más de una faceta las consultas se ejecutan en paralelo ({@code buho.facets}), cada
+     * una en su propio EntityManager. Hibernate no expone GROUPING SETS en criteria, por eso son consultas
+     * separadas.
+     */
+    @Override
+    public Map<String, List<Map<String, Object>>> facets(BusquedaModel busq) {
+        Map<String, List<Map<String, Object>>> result = new LinkedHashMap<>();
+        if (busq.getFacets() == null || busq.getFacets().isEmpty()) {
+            return result;
+        }
+        Long transactionId = getIdTrans();
+        Class<?> domainClass;
+        FilterNode tree;
+        try {
+            EntityType<?> entityType = getEntityTypeFromCache(busq.getEntity(), transactionId);
+            domainClass = getDomainClass(entityType, busq.getEntity(), busq);
+            tree = compileFilters(entityType, busq.getFilters());
+        } finally {
+            removeTranssaction(transactionId);
+        }
+        if (isSharded(domainClass)) {
+            throw new IllegalArgumentException("Facetas no soportadas en entidades con shards: " + busq.getEntity());
+        }
+        BuhoProperties.Facets config = buhoProperties.getFacets() == null ? new BuhoProperties.Facets() : buhoProperties.getFacets();
+        boolean semiJoins = Boolean.TRUE.equals(busq.getDistinct());
+        Map<String, Integer> limits = new LinkedHashMap<>();
+        busq.getFacets().forEach((path, limit) -> {
+            if (path == null || path.isBlank()) {
+                return;
+            }
+            int max = limit == null || limit == 0 ? config.getLimit() : limit;
+            // Mismo orden de la petición; las que responde un rollup no van a la base
+            List<Map<String, Object>> rows = rollups == null ? null : rollups.facet(domainClass, tree, path, max);
+            result.put(path, rows);
+            if (rows == null) {
+                limits.put(path, max);
+            }
+        });
+        if (limits.isEmpty()) {
+            return result;
+        }
+        if (limits.size() == 1 || config.getParallelism() <= 1) {
+            EntityManager em = getEntityManager(domainClass);
+            limits.forEach((path, limit) -> result.put(path, facet(domainClass, tree, semiJoins, path, limit, em)));
+            return result;
+        }
+        EntityManagerFactory emf = getEntityManager(domainClass).getEntityManagerFactory();
+        ExecutorService executor = facetExecutor(config.getParallelism());
+        Map<String, Future<List<Map<String, Object>>>> futures = new LinkedHashMap<>();
+        limits.forEach((path, limit) -> futures.put(path, executor.submit(() -> {
+            EntityManager em = emf.createEntityManager();
+            try {
+                return facet(domainClass, tree, semiJoins, path, limit, em);
+            } finally {
+                em.close();
+            }
+        })));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.getTimeoutSeconds());
+        try {
+            for (Map.Entry<String, Future<List<Map<String, Object>>>> f : futures.entrySet()) {
+                try {
+                    result.put(f.getKey(), f.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Error en la faceta " + f.getKey(), e.getCause());
+                } catch (TimeoutException e) {
+                    throw new IllegalStateException("Tiempo de espera agotado en la faceta " + f.getKey(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Facetas interrumpidas", e);
+        } finally {
+            futures.values().forEach(f -> f.cancel(true));
+        }
+        return result;
+    }
+
+    /**
+     * {@code SELECT ruta, COUNT(*) ... GROUP BY ruta ORDER BY 2 DESC}. Si la ruta o los filtros dejan un join a
+     * una colección se cuentan las entidades distintas.
+     *
+     * @param limit Cantidad de valores, 0 o menos devuelve todos
+     * @return Filas {@code {"value": ..., "count": ...}}
+     */
+    private List<Map<String, Object>> facet(Class<?> domainClass, FilterNode tree, boolean semiJoins, String path, int limit, EntityManager em) {
+        Long transactionId = getIdTrans();
+        try {
+            updateJoinMappings(transactionId, domainClass);
+            CriteriaBuilder builder = em.getCriteriaBuilder();
+            CriteriaQuery<Tuple> query = builder.createTupleQuery();
+            Root root = query.from(domainClass);
+            From join = createJoin(transactionId, path, root);
+            Expression value = fieldOrBucket(builder, join == null ? root : join, Utilities.getUltimaPosicion(path, "\\."));
+            processWhere(transactionId, builder, root, tree, query, semiJoins);
+            Expression<Long> count = hasCollectionJoin(query) ? builder.countDistinct(root) : builder.count(root);
+            query.multiselect(value, count).groupBy(value).orderBy(builder.desc(count), builder.asc(value));
+            TypedQuery<Tuple> typed = em.createQuery(query);
+            typed.setHint("org.hibernate.readOnly", Boolean.TRUE);
+            if (limit > 0) {
+                typed.setMaxResults(limit);
+            }
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (Tuple t : typed.getResultList()) {
+                Map<String, Object> row = new LinkedHashMap<>(4);
+                row.put("value", t.get(0));
+                row.put("count", t.get(1));
+                rows.add(row);
+            }
+            return rows;
+        } finally {
+            removeTranssaction(transactionId);
+        }
+    }
+
+    private ExecutorService facetExecutor(int parallelism) {
+        if (facetExecutor == null) {
+            synchronized (this) {
+                if (facetExecutor == null) {
+                    AtomicInteger seq = new AtomicInteger();
+                    facetExecutor = Executors.newFixedThreadPool(parallelism, r -> {
+                        Thread t = new Thread(r, "buho-facet-" + seq.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    });
+                }
+            }
+        }
+        return facetExecutor;
+    }
+
+    /**
+     * Detiene los hilos de las facetas.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (facetExecutor != null) {
+            facetExecutor.shutdownNow();
+        }
+    }
+
     public boolean exists(BusquedaModel busq) {
         try {
             Long transsaction = getIdTrans();
@@ -1672,7 +2778,7 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
                 LOGGER.log(Level.INFO, "(exists) No existe objeto " + busq.getEntity() + " con parametros " + busq);
                 return false;
             }
-            CriteriaBuilder builder = this.getEntityManager().getCriteriaBuilder();
+            CriteriaBuilder builder = this.getEntityManager(domainClass).getCriteriaBuilder();
             CriteriaQuery<Long> countQuery = builder.createQuery(Long.class);
 
             Map<String, Object> mapClazzDonm = joinMappings.get(transsaction);
@@ -1683,8 +2789,8 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
             joinMappings.put(transsaction, mapClazzDonm);
 
             Root from = countQuery.from(domainClass);
-            Predicate[] preds = processWhere(transsaction, builder, from, busq.getFilters(), countQuery);
-            if (busq.getDistinct() != null && busq.getDistinct().equals(true)) {
+            Predicate[] preds = processWhere(transsaction, builder, from, busq.getFilters(), countQuery, Boolean.TRUE.equals(busq.getDistinct()));
+            if (Boolean.TRUE.equals(busq.getDistinct()) && hasCollectionJoin(countQuery)) {
                 if (preds == null) {
                     countQuery.select(builder.countDistinct(from));
                 } else {
@@ -1698,7 +2804,7 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
                 }
             }
 //            Long count = this.getEntityManager().createQuery(countQuery).getSingleResult();
-            TypedQuery<Long> countTyped = this.getEntityManager().createQuery(countQuery);
+            TypedQuery<Long> countTyped = this.getEntityManager(domainClass).createQuery(countQuery);
             countTyped.setHint("org.hibernate.readOnly", Boolean.TRUE);
             try {
                 org.hibernate.query.Query<?> hq = countTyped.unwrap(org.hibernate.query.Query.class);
@@ -1758,7 +2864,7 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
             return deleteAll;
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "--> Error el persistir entidad ", e);
-            this.getEntityManager().getTransaction().rollback();
+            rollbackOnly();
         }
         return false;
     }
@@ -1766,37 +2872,50 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
     @Transactional
     public boolean deleteAll(Collection list) {
         try {
+            // Cada unidad en su transacción, con flush / clear sobre su propio EntityManager
+            Map<EntityManager, List<Object>> byUnit = new LinkedHashMap<>();
             for (Object entity : list) {
-                Long transsaction = getIdTrans();
-                EntityType o = getEntityTypeFromCache(entity.getClass().getSimpleName(), transsaction);
-                if (o == null) {
-                    System.out.println("No existe objeto " + entity.getClass().getSimpleName() + " con parametros " + entity.getClass().getSimpleName());
+                byUnit.computeIfAbsent(this.getEntityManager(entity.getClass()), k -> new ArrayList<>()).add(entity);
+            }
+            for (Map.Entry<EntityManager, List<Object>> unit : byUnit.entrySet()) {
+                EntityManager em = unit.getKey();
+                boolean deleted = inTransaction(unit.getValue().get(0).getClass(), () -> {
+                    for (Object entity : unit.getValue()) {
+                        if (!deleteById(em, entity)) {
+                            return false;
+                        }
+                    }
+                    em.flush();
+                    em.clear();
+                    return true;
+                });
+                if (!deleted) {
                     return false;
                 }
-                CriteriaDelete<?> criteriaDelete = this.getEntityManager().getCriteriaBuilder().createCriteriaDelete(entity.getClass());
-                Root from = criteriaDelete.from(o.getJavaType());
-                Field f = entity.getClass().getDeclaredField(o.getDeclaredId(o.getIdType().getJavaType()).getName());
-                f.setAccessible(true);
-                Object idVal = f.get(entity);
-                criteriaDelete.where(this.getEntityManager().getCriteriaBuilder().equal(from.get(o.getDeclaredId(o.getIdType().getJavaType()).getName()), idVal));
-                int i = this.getEntityManager().createQuery(criteriaDelete).executeUpdate();
-                removeTranssaction(transsaction);
-                if (++i % JDBC_BATCH_SIZE == 0) {
-                    this.getEntityManager().flush();
-                    this.getEntityManager().clear();
-                }
             }
-            this.getEntityManager().flush();
-            this.getEntityManager().clear();
-
             return true;
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "--> Error el persistir entidad ", e);
-            this.getEntityManager().getTransaction().rollback();
+            rollbackOnly();
         }
         return false;
     }
 
+    private boolean deleteById(EntityManager em, Object entity) {
+        Long transsaction = getIdTrans();
+        EntityType o = getEntityTypeFromCache(entity.getClass().getSimpleName(), transsaction);
+        if (o == null) {
+            System.out.println("No existe objeto " + entity.getClass().getSimpleName() + " con parametros " + entity.getClass().getSimpleName());
+            return false;
+        }
+        CriteriaDelete<?> criteriaDelete = em.getCriteriaBuilder().createCriteriaDelete(entity.getClass());
+        Root from = criteriaDelete.from(o.getJavaType());
+        criteriaDelete.where(em.getCriteriaBuilder().equal(from.get(o.getDeclaredId(o.getIdType().getJavaType()).getName()), idValue(o, entity)));
+        em.createQuery(criteriaDelete).executeUpdate();
+        removeTranssaction(transsaction);
+        return true;
+    }
+
     @Override
     public Long count(BusquedaModel searchCriteria) {
         String nameClazz = searchCriteria.getEntity();
@@ -1820,11 +2939,12 @@ public class BuhoPersistableImpl<T> implements BuhoPersistable {
                 LOGGER.log(Level.INFO, "No existe objeto " + nameClazz + " con parametros " + searchCriteria);
                 return null;
             }
-            CriteriaBuilder builder = this.getEntityManager().getCriteriaBuilder();
-            count = countData(searchCriteria, builder, domainClass, idTrans);
+            count = countDynamic(searchCriteria, domainClass, idTrans);
 
             Utilities.logs(this, "Registros encontrados", count);
             removeTranssaction(idTrans);
+        } catch (UnsupportedOperationException e) {
+            throw e;
         } catch (Exception e) {
             e.printStackTrace();
         }
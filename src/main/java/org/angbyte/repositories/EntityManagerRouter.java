@@ -0,0 +1,201 @@
+package org.angbyte.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.angbyte.config.BuhoProperties;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resuelve el EntityManager que atiende a cada entidad según las rutas configuradas en
+ * {@code buho.datasources}. Permite tener entidades operacionales e históricas en bases
+ * distintas, cada una con su propio pool de conexiones.
+ * <p>
+ * Los EntityManager entregados son compartidos (transaccionales) igual que el inyectado con
+ * {@code @PersistenceContext}, por lo que pueden usarse desde el repositorio singleton. Cada unidad tiene
+ * su propio administrador de transacciones ({@code transaction-manager} o un {@link JpaTransactionManager}
+ * sobre su EntityManagerFactory), las escrituras se ejecutan con {@link #inTransaction}.
+ */
+public class EntityManagerRouter {
+
+    private static final Logger LOGGER = Logger.getLogger(EntityManagerRouter.class.getName());
+    /**
+     * Marca usada en el cache de rutas para las clases que se atienden con el EntityManager principal.
+     */
+    private static final String DEFAULT_UNIT = "";
+
+    private final BuhoProperties buhoProperties;
+    private final ListableBeanFactory beanFactory;
+    private final Map<String, EntityManagerFactory> factories = new LinkedHashMap<>();
+    private final Map<String, EntityManager> entityManagers = new LinkedHashMap<>();
+    private final Map<String, TransactionTemplate> transactions = new LinkedHashMap<>();
+    private final Map<String, TransactionTemplate> readOnlyTransactions = new LinkedHashMap<>();
+    private final Map<Class<?>, String> routes = new ConcurrentHashMap<>();
+    private volatile boolean initialized;
+
+    public EntityManagerRouter(BuhoProperties buhoProperties, ListableBeanFactory beanFactory) {
+        this.buhoProperties = buhoProperties;
+        this.beanFactory = beanFactory;
+    }
+
+    /**
+     * Los EntityManagerFactory se buscan de forma diferida, en el primer uso, para no forzar el orden
+     * de creación de los beans del host.
+     */
+    private void init() {
+        if (initialized) {
+            return;
+        }
+        synchronized (this) {
+            if (initialized) {
+                return;
+            }
+            Map<String, BuhoProperties.DataSourceRoute> datasources = buhoProperties.getDatasources();
+            if (datasources != null) {
+                datasources.forEach((unit, route) -> {
+                    if (route == null || route.getEntityManagerFactory() == null) {
+                        LOGGER.log(Level.WARNING, "Unidad de persistencia {0} sin entityManagerFactory, se ignora", unit);
+                        return;
+                    }
+                    try {
+                        EntityManagerFactory emf = beanFactory.getBean(route.getEntityManagerFactory(), EntityManagerFactory.class);
+                        factories.put(unit, emf);
+                        entityManagers.put(unit, SharedEntityManagerCreator.createSharedEntityManager(emf));
+                        PlatformTransactionManager tm = route.getTransactionManager() == null || route.getTransactionManager().isBlank()
+                                ? new JpaTransactionManager(emf)
+                                : beanFactory.getBean(route.getTransactionManager(), PlatformTransactionManager.class);
+                        transactions.put(unit, new TransactionTemplate(tm));
+                        TransactionTemplate readOnly = new TransactionTemplate(tm);
+                        readOnly.setReadOnly(true);
+                        readOnlyTransactions.put(unit, readOnly);
+                        if (buhoProperties.isDebug()) LOGGER.log(Level.INFO, "Unidad de persistencia {0} -> {1}", new Object[]{unit, route});
+                    } catch (Exception e) {
+                        LOGGER.log(Level.SEVERE, "No se pudo resolver el EntityManagerFactory " + route.getEntityManagerFactory() + " de la unidad " + unit, e);
+                    }
+                });
+            }
+            initialized = true;
+        }
+    }
+
+    /**
+     * Nombre de la unidad que atiende a la entidad, vacío si corresponde al EntityManager principal.
+     *
+     * @param domainClass Clase de la entidad
+     * @return Unidad de persistencia configurada para la entidad
+     */
+    public Optional<String> resolveUnit(Class<?> domainClass) {
+        if (domainClass == null) {
+            return Optional.empty();
+        }
+        init();
+        if (entityManagers.isEmpty()) {
+            return Optional.empty();
+        }
+        String unit = routes.computeIfAbsent(domainClass, this::findUnit);
+        return DEFAULT_UNIT.equals(unit) ? Optional.empty() : Optional.of(unit);
+    }
+
+    /**
+     * Primero se busca por nombre de entidad y luego por el paquete más específico.
+     */
+    private String findUnit(Class<?> domainClass) {
+        Map<String, BuhoProperties.DataSourceRoute> datasources = buhoProperties.getDatasources();
+        String packageMatch = DEFAULT_UNIT;
+        int packageLength = -1;
+        for (Map.Entry<String, BuhoProperties.DataSourceRoute> e : datasources.entrySet()) {
+            if (!entityManagers.containsKey(e.getKey())) {
+                continue;
+            }
+            BuhoProperties.DataSourceRoute route = e.getValue();
+            if (route.getEntities() != null && (route.getEntities().contains(domainClass.getSimpleName()) || route.getEntities().contains(domainClass.getName()))) {
+                return e.getKey();
+            }
+            if (route.getPackages() != null) {
+                for (String pkg : route.getPackages()) {
+                    if (pkg == null || pkg.isBlank()) {
+                        continue;
+                    }
+                    String p = pkg.trim();
+                    if ((domainClass.getName().startsWith(p + ".")) && p.length() > packageLength) {
+                        packageMatch = e.getKey();
+                        packageLength = p.length();
+                    }
+                }
+            }
+        }
+        return packageMatch;
+    }
+
+    /**
+     * EntityManager que corresponde a la entidad.
+     *
+     * @param domainClass   Clase de la entidad
+     * @param entityManager EntityManager principal, se usa cuando no existe una ruta para la entidad
+     * @return EntityManager de la unidad configurada o el principal
+     */
+    public EntityManager getEntityManager(Class<?> domainClass, EntityManager entityManager) {
+        return resolveUnit(domainClass).map(entityManagers::get).orElse(entityManager);
+    }
+
+    /**
+     * Ejecuta el trabajo en una transacción de la unidad que atiende a la entidad; si ya hay una abierta
+     * en esa unidad se une a ella. Las entidades del EntityManager principal se ejecutan directamente, con
+     * la transacción del llamador ({@code @Transactional}).
+     *
+     * @param domainClass Clase de la entidad
+     * @param readOnly    Transacción de solo lectura
+     * @param work        Trabajo sobre el EntityManager de la entidad
+     * @return Resultado del trabajo
+     */
+    public <R> R inTransaction(Class<?> domainClass, boolean readOnly, Supplier<R> work) {
+        Optional<String> unit = resolveUnit(domainClass);
+        TransactionTemplate template = unit.map(readOnly ? readOnlyTransactions::get : transactions::get).orElse(null);
+        if (template == null) {
+            return work.get();
+        }
+        return template.execute(status -> work.get());
+    }
+
+    /**
+     * EntityManagerFactory de una unidad configurada.
+     *
+     * @param unit Nombre de la unidad
+     * @return EntityManagerFactory o null si no existe
+     */
+    public EntityManagerFactory getEntityManagerFactory(String unit) {
+        init();
+        return factories.get(unit);
+    }
+
+    /**
+     * EntityManager de las unidades adicionales, sin incluir el principal.
+     *
+     * @return EntityManager compartidos por nombre de unidad
+     */
+    public Map<String, EntityManager> getEntityManagers() {
+        init();
+        return Collections.unmodifiableMap(entityManagers);
+    }
+
+    /**
+     * @return Nombres de las unidades resueltas.
+     */
+    public Collection<String> getUnits() {
+        init();
+        return Collections.unmodifiableSet(entityManagers.keySet());
+    }
+}
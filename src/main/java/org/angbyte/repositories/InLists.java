@@ -0,0 +1,272 @@
+package org.angbyte.repositories;
+
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Predicate;
+import org.angbyte.config.BuhoProperties;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.OracleDialect;
+import org.hibernate.dialect.SQLServerDialect;
+import org.hibernate.query.sqm.NodeBuilder;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Arma los predicados IN de los filtros según {@code buho.in-list}:
+ * <ul>
+ *     <li>Listas grandes en PostgreSQL, CockroachDB o H2: {@code campo = ANY(?)} con un solo parámetro arreglo
+ *     ({@link BuhoFunctionContributor#IN_ARRAY}).</li>
+ *     <li>Resto: {@code campo IN (?, ?, ...)} rellenando la lista hasta la siguiente potencia de dos (se repite
+ *     el último valor), así hay pocos SQL distintos en el cache de sentencias de Hibernate y del driver.</li>
+ *     <li>Más valores que el máximo por IN: varios IN unidos con OR.</li>
+ *     <li>Las listas de una sentencia comparten el máximo de parámetros ({@link Budget}). La lista que ya no
+ *     entra se escribe con literales en el SQL ({@code IN (1, 2, ...)}, {@code IN ('a', 'b', ...)}), sin
+ *     parámetros; solo números y textos, que Hibernate escapa. Con otros tipos
+ *     {@link UnsupportedOperationException}, la base rechazaría la sentencia (o se quitaría el filtro).</li>
+ * </ul>
+ */
+class InLists {
+
+    /**
+     * SQL Server acepta 2100 parámetros por sentencia, Hibernate no lo informa; se deja margen para el resto.
+     */
+    private static final int SQL_SERVER_PARAMETER_LIMIT = 2000;
+    /**
+     * Oracle acepta 65535 parámetros por sentencia, Hibernate informa el límite de valores por IN (1000).
+     */
+    private static final int ORACLE_PARAMETER_LIMIT = 65_000;
+
+    /**
+     * Tipos que se pueden enviar como arreglo sin depender de cómo se guardan (enum, fechas legacy, etc).
+     */
+    private static final Set<Class<?>> ARRAY_TYPES = Set.of(String.class, Long.class, Integer.class, Short.class,
+            BigDecimal.class, BigInteger.class, Double.class, Float.class, UUID.class, LocalDate.class, LocalDateTime.class);
+
+    private final BuhoProperties.InList config;
+
+    InLists(BuhoProperties properties) {
+        this.config = properties == null || properties.getInList() == null ? new BuhoProperties.InList() : properties.getInList();
+    }
+
+    /**
+     * Parámetros disponibles para las listas IN de una sentencia (incluidos sus subqueries).
+     */
+    Budget budget(CriteriaBuilder builder) {
+        return new Budget(maxParameters(dialect(builder)));
+    }
+
+    /**
+     * @param path   Campo (o expresión upper/trim del campo)
+     * @param values Valores ya convertidos al tipo del campo
+     * @param type   Tipo del campo
+     * @param budget Parámetros que quedan en la sentencia, null si la lista es la única
+     * @return Predicado IN, para NOTIN se niega el resultado
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Predicate in(CriteriaBuilder builder, Expression path, List<Object> values, Class<?> type, Budget budget) {
+        if (values == null || values.size() <= 1) {
+            return path.in(values);
+        }
+        if (budget == null) {
+            budget = budget(builder);
+        }
+        if (config.isArrayBinding() && values.size() >= config.getArrayMinSize() && supportsArray(builder) && budget.take(1)) {
+            Object array = toArray(values, type);
+            if (array != null) {
+                // value(): se envía como parámetro, literal() escribiría el arreglo en el SQL
+                return builder.isTrue(builder.function(BuhoFunctionContributor.IN_ARRAY, Boolean.class, path, ((NodeBuilder) builder).value(array)));
+            }
+            budget.release(1);
+        }
+        int max = maxSize(dialect(builder));
+        List<Predicate> chunks = new ArrayList<>(values.size() / max + 1);
+        if (budget.take(paddedSize(values.size(), max))) {
+            for (int i = 0; i < values.size(); i += max) {
+                chunks.add(path.in(pad(values.subList(i, Math.min(values.size(), i + max)), max)));
+            }
+        } else if (budget.take(values.size())) {
+            // Sin relleno sí entra
+            for (int i = 0; i < values.size(); i += max) {
+                chunks.add(path.in(values.subList(i, Math.min(values.size(), i + max))));
+            }
+        } else if (isLiteralType(type)) {
+            for (int i = 0; i < values.size(); i += max) {
+                chunks.add(path.in(literals(builder, values.subList(i, Math.min(values.size(), i + max)))));
+            }
+        } else {
+            throw new UnsupportedOperationException("Lista IN con " + values.size() + " valores de tipo " + type.getSimpleName()
+                                                    + ", quedan " + budget.remaining + " parámetros en la sentencia (buho.in-list.max-parameters)");
+        }
+        return chunks.size() == 1 ? chunks.get(0) : builder.or(chunks.toArray(new Predicate[0]));
+    }
+
+    /**
+     * Valores como literales del SQL, no ocupan parámetros.
+     */
+    private static Expression<?>[] literals(CriteriaBuilder builder, List<Object> values) {
+        Expression<?>[] literals = new Expression<?>[values.size()];
+        for (int i = 0; i < values.size(); i++) {
+            literals[i] = builder.literal(values.get(i));
+        }
+        return literals;
+    }
+
+    /**
+     * Tipos que Hibernate escribe como literal sin depender de la base (números y textos escapados).
+     */
+    private static boolean isLiteralType(Class<?> type) {
+        Class<?> boxed = boxed(type);
+        return boxed == String.class || boxed == Character.class || Number.class.isAssignableFrom(boxed);
+    }
+
+    /**
+     * Parámetros que quedan después de rellenar: los bloques completos más el último rellenado.
+     */
+    private int paddedSize(int size, int max) {
+        int last = size % max;
+        if (!config.isPadding() || last <= 1) {
+            return size;
+        }
+        return size - last + Math.max(last, Math.min(Integer.highestOneBit(last - 1) << 1, max));
+    }
+
+    /**
+     * Rellena la lista hasta la siguiente potencia de dos (sin pasar de {@code max}) repitiendo el último valor.
+     */
+    List<Object> pad(List<Object> values, int max) {
+        int size = values.size();
+        if (!config.isPadding() || size <= 1) {
+            return values;
+        }
+        int target = Math.min(Integer.highestOneBit(size - 1) << 1, max);
+        if (target <= size) {
+            return values;
+        }
+        List<Object> padded = new ArrayList<>(target);
+        padded.addAll(values);
+        Object last = values.get(size - 1);
+        while (padded.size() < target) {
+            padded.add(last);
+        }
+        return padded;
+    }
+
+    private int maxSize(Dialect dialect) {
+        int limit = dialect == null ? 0 : dialect.getInExpressionCountLimit();
+        int max = config.getMaxSize();
+        if (max <= 0 || (limit > 0 && limit < max)) {
+            max = limit;
+        }
+        return max <= 0 ? Integer.MAX_VALUE : max;
+    }
+
+    private int maxParameters(Dialect dialect) {
+        int max = config.getMaxParameters();
+        if (max <= 0 && dialect != null) {
+            max = dialect instanceof SQLServerDialect ? SQL_SERVER_PARAMETER_LIMIT
+                    : dialect instanceof OracleDialect ? ORACLE_PARAMETER_LIMIT : dialect.getParameterCountLimit();
+        }
+        return max <= 0 ? Integer.MAX_VALUE : max;
+    }
+
+    private static Dialect dialect(CriteriaBuilder builder) {
+        if (builder instanceof NodeBuilder) {
+            try {
+                return ((NodeBuilder) builder).getSessionFactory().getJdbcServices().getDialect();
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * La función solo se registra en los dialectos que soportan {@code = any(?)}.
+     */
+    private static boolean supportsArray(CriteriaBuilder builder) {
+        return builder instanceof NodeBuilder
+               && ((NodeBuilder) builder).getQueryEngine().getSqmFunctionRegistry().findFunctionDescriptor(BuhoFunctionContributor.IN_ARRAY) != null;
+    }
+
+    /**
+     * @return Arreglo tipado con los valores, null si el tipo no se envía como arreglo o algún valor no es del
+     * tipo (no se pudo convertir) o es null
+     */
+    private static Object toArray(List<Object> values, Class<?> type) {
+        Class<?> boxed = boxed(type);
+        if (!ARRAY_TYPES.contains(boxed)) {
+            return null;
+        }
+        Object array = Array.newInstance(boxed, values.size());
+        for (int i = 0; i < values.size(); i++) {
+            Object v = values.get(i);
+            if (!boxed.isInstance(v)) {
+                return null;
+            }
+            Array.set(array, i, v);
+        }
+        return array;
+    }
+
+    private static Class<?> boxed(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        }
+        if (type == long.class) {
+            return Long.class;
+        }
+        if (type == int.class) {
+            return Integer.class;
+        }
+        if (type == short.class) {
+            return Short.class;
+        }
+        if (type == double.class) {
+            return Double.class;
+        }
+        if (type == float.class) {
+            return Float.class;
+        }
+        if (type == byte.class) {
+            return Byte.class;
+        }
+        if (type == char.class) {
+            return Character.class;
+        }
+        return type;
+    }
+
+    /**
+     * Parámetros que quedan en una sentencia para las listas IN.
+     */
+    static final class Budget {
+        private int remaining;
+
+        private Budget(int remaining) {
+            this.remaining = remaining;
+        }
+
+        /**
+         * @return false (sin descontar) si no quedan {@code count} parámetros
+         */
+        private boolean take(int count) {
+            if (count > remaining) {
+                return false;
+            }
+            remaining -= count;
+            return true;
+        }
+
+        private void release(int count) {
+            remaining += count;
+        }
+    }
+}
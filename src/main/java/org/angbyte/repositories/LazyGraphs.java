@@ -0,0 +1,103 @@
+package org.angbyte.repositories;
+
+import jakarta.persistence.Entity;
+import org.angbyte.model.BusquedaModel;
+import org.angbyte.utils.HibernateProxyTypeAdapter;
+import org.hibernate.Hibernate;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Carga, con el EntityManager todavía abierto, los proxies y colecciones LAZY que el serializador va a
+ * recorrer: las entidades hasta {@code depth} y los proxies del nivel siguiente, que se escriben solo con el
+ * id. Con {@code proxyMode=ID} los que no están cargados se dejan así. Se usa cuando el EntityManager se cierra
+ * antes de serializar (shards y unidades de {@code buho.datasources}, que no tienen open-in-view).
+ */
+final class LazyGraphs {
+
+    /**
+     * Campos de instancia (propios y heredados) que puede leer el serializador, por clase.
+     */
+    private static final Map<Class<?>, List<Field>> FIELDS = new ConcurrentHashMap<>();
+
+    private LazyGraphs() {
+    }
+
+    static void initialize(List<?> rows, BusquedaModel busq) {
+        if (rows == null || rows.isEmpty()) {
+            return;
+        }
+        Integer depth = busq.getDepth() == null || busq.getDepth() < 1 ? null : busq.getDepth();
+        boolean load = busq.getProxyMode() != HibernateProxyTypeAdapter.ProxyMode.ID;
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Object row : rows) {
+            if (!(row instanceof Map)) {
+                initialize(row, 0, depth, load, seen);
+            }
+        }
+    }
+
+    private static void initialize(Object value, int level, Integer depth, boolean load, Set<Object> seen) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof HibernateProxy || value instanceof PersistentCollection) {
+            if (!Hibernate.isInitialized(value)) {
+                if (!load) {
+                    return;
+                }
+                Hibernate.initialize(value);
+            }
+            value = Hibernate.unproxy(value);
+        }
+        if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) {
+                initialize(item, level, depth, load, seen);
+            }
+            return;
+        }
+        if (value instanceof Map) {
+            for (Object item : ((Map<?, ?>) value).values()) {
+                initialize(item, level, depth, load, seen);
+            }
+            return;
+        }
+        // Las entidades desde depth se escriben solo con el id, sus campos no se leen
+        if (!value.getClass().isAnnotationPresent(Entity.class) || (depth != null && level >= depth) || !seen.add(value)) {
+            return;
+        }
+        for (Field field : FIELDS.computeIfAbsent(value.getClass(), LazyGraphs::fields)) {
+            try {
+                initialize(field.get(value), level + 1, depth, load, seen);
+            } catch (IllegalAccessException e) {
+                // Campo que el serializador tampoco puede leer
+            }
+        }
+    }
+
+    private static List<Field> fields(Class<?> clazz) {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers()) || Modifier.isTransient(f.getModifiers()) || f.getType().isPrimitive()) {
+                    continue;
+                }
+                if (f.trySetAccessible()) {
+                    fields.add(f);
+                }
+            }
+        }
+        return fields;
+    }
+}
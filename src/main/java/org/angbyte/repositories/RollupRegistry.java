@@ -0,0 +1,487 @@
+package org.angbyte.repositories;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EntityType;
+import jakarta.persistence.metamodel.SingularAttribute;
+import org.angbyte.config.BuhoProperties;
+import org.angbyte.model.BusquedaModel;
+import org.angbyte.query.FilterNode;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Conteos por grupo en memoria ({@code buho.rollups}) para responder los conteos y facetas más consultados
+ * sin ir a la base.
+ * <p>
+ * Cada rollup se carga con un {@code SELECT campos, COUNT(*) ... GROUP BY campos} en segundo plano al iniciar y
+ * luego se actualiza con los insert/update/delete confirmados (listeners post-commit de Hibernate). Lo que no
+ * pasa por la sesión (SQL directo, updates masivos, StatelessSession) se corrige con la reconciliación
+ * periódica, que vuelve a ejecutar el GROUP BY; un update sin estado anterior adelanta la reconciliación.
+ * <p>
+ * Solo responde búsquedas cuyos filtros son EQ / IN sobre los campos del rollup (unidos con AND); el resto va
+ * a la base. Los conteos son eventualmente consistentes: un cambio confirmado mientras se recalcula puede
+ * perderse hasta la siguiente reconciliación.
+ */
+public class RollupRegistry {
+
+    private static final Logger LOGGER = Logger.getLogger(RollupRegistry.class.getName());
+
+    private final BuhoProperties buhoProperties;
+    private final List<Rollup> rollups = new CopyOnWriteArrayList<>();
+    private final Set<SessionFactoryImplementor> listening = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile ScheduledExecutorService scheduler;
+
+    public RollupRegistry(BuhoProperties buhoProperties) {
+        this.buhoProperties = buhoProperties;
+    }
+
+    /**
+     * Resuelve las entidades de los rollups configurados, registra los listeners y programa la carga.
+     *
+     * @param entities  Entidad por nombre (null si no existe)
+     * @param factories EntityManagerFactory que atiende a la entidad
+     */
+    public synchronized void start(Function<String, EntityType<?>> entities, Function<Class<?>, EntityManagerFactory> factories) {
+        Map<String, BuhoProperties.Rollup> config = buhoProperties.getRollups();
+        if (config == null || config.isEmpty() || scheduler != null) {
+            return;
+        }
+        config.forEach((name, rollup) -> {
+            try {
+                Rollup r = create(name, rollup, entities);
+                if (r == null) {
+                    return;
+                }
+                r.emf = factories.apply(r.entity);
+                listen(r.emf);
+                rollups.add(r);
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "No se pudo iniciar el rollup " + name, e);
+            }
+        });
+        if (rollups.isEmpty()) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "buho-rollup");
+            t.setDaemon(true);
+            return t;
+        });
+        for (Rollup r : rollups) {
+            long period = Math.max(1, r.config.getReconcileSeconds());
+            scheduler.scheduleWithFixedDelay(() -> reload(r), 0, period, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Detiene la reconciliación programada.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private Rollup create(String name, BuhoProperties.Rollup config, Function<String, EntityType<?>> entities) {
+        EntityType<?> entityType = config.getEntity() == null ? null : entities.apply(config.getEntity());
+        if (entityType == null || config.getGroupBy() == null || config.getGroupBy().isEmpty()) {
+            LOGGER.log(Level.WARNING, "Rollup {0} sin entidad o campos válidos, se ignora", name);
+            return null;
+        }
+        Class<?>[] types = new Class<?>[config.getGroupBy().size()];
+        for (int i = 0; i < types.length; i++) {
+            String field = config.getGroupBy().get(i);
+            Attribute<?, ?> attribute = findAttribute(entityType, field);
+            if (!(attribute instanceof SingularAttribute) || ((SingularAttribute<?, ?>) attribute).isId()
+                || attribute.getPersistentAttributeType() != Attribute.PersistentAttributeType.BASIC) {
+                LOGGER.log(Level.WARNING, "Rollup {0}: {1} no es un atributo básico de {2}, se ignora", new Object[]{name, field, entityType.getName()});
+                return null;
+            }
+            types[i] = attribute.getJavaType();
+        }
+        return new Rollup(name, config, entityType.getJavaType(), types);
+    }
+
+    private static Attribute<?, ?> findAttribute(EntityType<?> entityType, String name) {
+        for (Attribute<?, ?> attribute : entityType.getAttributes()) {
+            if (attribute.getName().equals(name)) {
+                return attribute;
+            }
+        }
+        return null;
+    }
+
+    private void listen(EntityManagerFactory emf) {
+        SessionFactoryImplementor sf = emf.unwrap(SessionFactoryImplementor.class);
+        if (!listening.add(sf)) {
+            return;
+        }
+        EventListenerRegistry registry = sf.getServiceRegistry().getService(EventListenerRegistry.class);
+        Listener listener = new Listener();
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+    }
+
+    /**
+     * Recalcula el rollup con un GROUP BY y reemplaza los conteos.
+     */
+    private void reload(Rollup r) {
+        r.reloadPending.set(false);
+        EntityManager em = r.emf.createEntityManager();
+        try {
+            CriteriaBuilder builder = em.getCriteriaBuilder();
+            CriteriaQuery<Tuple> query = builder.createTupleQuery();
+            Root<?> root = query.from(r.entity);
+            List<Expression<?>> groups = new ArrayList<>(r.fields.size());
+            for (String field : r.fields) {
+                groups.add(root.get(field));
+            }
+            List<Selection<?>> selections = new ArrayList<>(groups);
+            selections.add(builder.count(root));
+            query.multiselect(selections).groupBy(groups);
+            ConcurrentHashMap<List<Object>, LongAdder> counts = new ConcurrentHashMap<>();
+            for (Tuple t : em.createQuery(query).setHint("org.hibernate.readOnly", Boolean.TRUE).getResultList()) {
+                Object[] key = new Object[r.fields.size()];
+                for (int i = 0; i < key.length; i++) {
+                    key[i] = t.get(i);
+                }
+                LongAdder adder = new LongAdder();
+                adder.add(((Number) t.get(key.length)).longValue());
+                counts.put(Arrays.asList(key), adder);
+            }
+            r.counts = counts;
+            r.ready = true;
+            if (buhoProperties.isDebug()) LOGGER.log(Level.INFO, "Rollup {0} recalculado: {1} grupos", new Object[]{r.name, counts.size()});
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "No se pudo recalcular el rollup " + r.name, e);
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Conteo de la entidad con los filtros, null si ningún rollup cargado puede responderlo.
+     */
+    public Long count(Class<?> entity, FilterNode filters) {
+        for (Rollup r : rollups) {
+            Map<Integer, Allowed> allowed = r.match(entity, filters);
+            if (allowed == null) {
+                continue;
+            }
+            long total = 0;
+            for (Map.Entry<List<Object>, LongAdder> e : r.counts.entrySet()) {
+                if (r.accepts(e.getKey(), allowed)) {
+                    total += e.getValue().sum();
+                }
+            }
+            return total;
+        }
+        return null;
+    }
+
+    /**
+     * Faceta ({@code value}, {@code count}) de un campo del rollup, null si ningún rollup puede responderla.
+     *
+     * @param limit Cantidad de valores, 0 o menos devuelve todos
+     */
+    public List<Map<String, Object>> facet(Class<?> entity, FilterNode filters, String path, int limit) {
+        for (Rollup r : rollups) {
+            int index = r.fields.indexOf(path);
+            Map<Integer, Allowed> allowed = index < 0 ? null : r.match(entity, filters);
+            if (allowed == null) {
+                continue;
+            }
+            Map<Object, Long> byValue = new HashMap<>();
+            for (Map.Entry<List<Object>, LongAdder> e : r.counts.entrySet()) {
+                if (r.accepts(e.getKey(), allowed)) {
+                    byValue.merge(e.getKey().get(index), e.getValue().sum(), Long::sum);
+                }
+            }
+            List<Map.Entry<Object, Long>> entries = new ArrayList<>(byValue.entrySet());
+            entries.removeIf(e -> e.getValue() <= 0);
+            // Igual que la consulta: mayor conteo primero y luego por valor
+            entries.sort((a, b) -> {
+                int c = Long.compare(b.getValue(), a.getValue());
+                return c != 0 ? c : compareValues(a.getKey(), b.getKey());
+            });
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (Map.Entry<Object, Long> e : entries) {
+                if (limit > 0 && rows.size() >= limit) {
+                    break;
+                }
+                Map<String, Object> row = new LinkedHashMap<>(4);
+                row.put("value", e.getKey());
+                row.put("count", e.getValue());
+                rows.add(row);
+            }
+            return rows;
+        }
+        return null;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareValues(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : 1) : -1;
+        }
+        if (a instanceof Comparable && a.getClass() == b.getClass()) {
+            return ((Comparable) a).compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    private void apply(EntityPersister persister, Object[] state, long delta) {
+        if (state == null) {
+            return;
+        }
+        for (Rollup r : rollups) {
+            if (r.ready && r.entity.isAssignableFrom(persister.getMappedClass())) {
+                r.add(r.key(persister, state), delta);
+            }
+        }
+    }
+
+    private void update(EntityPersister persister, Object[] oldState, Object[] state) {
+        for (Rollup r : rollups) {
+            if (!r.ready || !r.entity.isAssignableFrom(persister.getMappedClass())) {
+                continue;
+            }
+            if (oldState == null) {
+                // Update de una entidad desconectada: no se sabe el grupo anterior
+                if (r.reloadPending.compareAndSet(false, true) && scheduler != null) {
+                    scheduler.execute(() -> reload(r));
+                }
+                continue;
+            }
+            List<Object> before = r.key(persister, oldState);
+            List<Object> after = r.key(persister, state);
+            if (!before.equals(after)) {
+                r.add(before, -1);
+                r.add(after, 1);
+            }
+        }
+    }
+
+    private boolean handles(EntityPersister persister) {
+        for (Rollup r : rollups) {
+            if (r.entity.isAssignableFrom(persister.getMappedClass())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Rollup {
+        private final String name;
+        private final BuhoProperties.Rollup config;
+        private final Class<?> entity;
+        private final List<String> fields;
+        private final Class<?>[] types;
+        private final AtomicBoolean reloadPending = new AtomicBoolean();
+        private final Map<EntityPersister, int[]> indexes = new ConcurrentHashMap<>();
+        private EntityManagerFactory emf;
+        private volatile ConcurrentHashMap<List<Object>, LongAdder> counts = new ConcurrentHashMap<>();
+        private volatile boolean ready;
+
+        private Rollup(String name, BuhoProperties.Rollup config, Class<?> entity, Class<?>[] types) {
+            this.name = name;
+            this.config = config;
+            this.entity = entity;
+            this.fields = List.copyOf(config.getGroupBy());
+            this.types = types;
+        }
+
+        private List<Object> key(EntityPersister persister, Object[] state) {
+            int[] index = indexes.computeIfAbsent(persister, p -> {
+                List<String> names = Arrays.asList(p.getPropertyNames());
+                return fields.stream().mapToInt(names::indexOf).toArray();
+            });
+            Object[] key = new Object[index.length];
+            for (int i = 0; i < index.length; i++) {
+                key[i] = index[i] < 0 ? null : state[index[i]];
+            }
+            return Arrays.asList(key);
+        }
+
+        private void add(List<Object> key, long delta) {
+            counts.computeIfAbsent(key, k -> new LongAdder()).add(delta);
+        }
+
+        /**
+         * Valores permitidos por posición del campo, null si los filtros no se pueden responder con el rollup.
+         */
+        private Map<Integer, Allowed> match(Class<?> type, FilterNode filters) {
+            if (!ready || type != entity) {
+                return null;
+            }
+            List<FilterNode> nodes;
+            if (filters == null || filters instanceof FilterNode.Constant) {
+                if (filters == FilterNode.FALSE) {
+                    return null;
+                }
+                nodes = List.of();
+            } else if (filters instanceof FilterNode.Condition) {
+                nodes = List.of(filters);
+            } else if (!((FilterNode.Group) filters).isOr()) {
+                nodes = ((FilterNode.Group) filters).getChildren();
+            } else {
+                return null;
+            }
+            Map<Integer, Allowed> allowed = new HashMap<>();
+            for (FilterNode node : nodes) {
+                if (!(node instanceof FilterNode.Condition)) {
+                    return null;
+                }
+                FilterNode.Condition c = (FilterNode.Condition) node;
+                int index = fields.indexOf(c.getPath());
+                String op = c.getComparador();
+                List<Object> values = c.getCondition().getValues();
+                if (index < 0 || allowed.containsKey(index) || !("EQ".equals(op) || "IN".equals(op)) || values == null || values.isEmpty()) {
+                    return null;
+                }
+                Set<Object> set = values(c.getCondition(), "EQ".equals(op) ? values.subList(0, 1) : values, types[index]);
+                if (set == null) {
+                    return null;
+                }
+                allowed.put(index, new Allowed(set, c.getCondition()));
+            }
+            return allowed;
+        }
+
+        /**
+         * Valores del filtro como se comparan con los del rollup: los textos con el trim/upper de la condición,
+         * el resto convertidos al tipo del campo. Las fechas (EQ es el día completo) no se responden.
+         */
+        private static Set<Object> values(BusquedaModel.WhereCondition condition, List<Object> values, Class<?> type) {
+            if (Date.class.isAssignableFrom(type) || Calendar.class.isAssignableFrom(type)) {
+                return null;
+            }
+            Set<Object> set = new HashSet<>();
+            if (type == String.class) {
+                for (Object v : values) {
+                    set.add(v == null ? null : normalize(condition, v.toString()));
+                }
+                return set;
+            }
+            BusquedaModel.WhereCondition copy = new BusquedaModel.WhereCondition(condition.getComparador(), values);
+            try {
+                for (Object v : copy.getValuesCast(type)) {
+                    if (v != null && !type.isPrimitive() && !type.isInstance(v)) {
+                        return null;
+                    }
+                    set.add(v);
+                }
+            } catch (RuntimeException e) {
+                return null;
+            }
+            return set;
+        }
+
+        private boolean accepts(List<Object> key, Map<Integer, Allowed> allowed) {
+            for (Map.Entry<Integer, Allowed> e : allowed.entrySet()) {
+                Object value = key.get(e.getKey());
+                if (value == null) {
+                    return false;
+                }
+                Allowed a = e.getValue();
+                // Los textos con el mismo trim/upper que se aplicó a los valores del filtro
+                if (!a.values.contains(value instanceof String ? normalize(a.condition, (String) value) : value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String normalize(BusquedaModel.WhereCondition condition, String value) {
+            String v = condition.getTrim() ? value.trim() : value;
+            return condition.getUpper() ? v.toUpperCase(Locale.ROOT) : v;
+        }
+    }
+
+    private static final class Allowed {
+        private final Set<Object> values;
+        private final BusquedaModel.WhereCondition condition;
+
+        private Allowed(Set<Object> values, BusquedaModel.WhereCondition condition) {
+            this.values = values;
+            this.condition = condition;
+        }
+    }
+
+    private final class Listener implements PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            apply(event.getPersister(), event.getState(), 1);
+        }
+
+        @Override
+        public void onPostInsertCommitFailed(PostInsertEvent event) {
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            update(event.getPersister(), event.getOldState(), event.getState());
+        }
+
+        @Override
+        public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            apply(event.getPersister(), event.getDeletedState(), -1);
+        }
+
+        @Override
+        public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return handles(persister);
+        }
+    }
+}
@@ -0,0 +1,557 @@
+package org.angbyte.repositories;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnitUtil;
+import jakarta.persistence.metamodel.Metamodel;
+import org.angbyte.config.BuhoProperties;
+import org.angbyte.model.BusquedaModel;
+import org.hibernate.Hibernate;
+import org.hibernate.dialect.NullOrdering;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.ListableBeanFactory;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Ejecuta una búsqueda sobre todos los shards de un grupo ({@code buho.shards}) y combina los
+ * resultados como si se tratara de una sola base.
+ * <p>
+ * Cada shard devuelve como máximo {@code first + pageSize} registros ordenados, luego se hace un
+ * merge por los ordenamientos de la búsqueda y se aplica la paginación global. Los conteos se suman.
+ * Los shards cuyo rango ({@code desde}/{@code hasta}) no cumple los filtros sobre el shard-key no se
+ * consultan.
+ * <p>
+ * Cada shard usa su propio EntityManager, que se cierra al terminar, por lo que las entidades
+ * devueltas quedan desconectadas (detached). Antes de cerrarlo se cargan las relaciones LAZY que se van
+ * a serializar (hasta {@code depth}, sin cargar los proxies en {@code proxyMode=ID}).
+ * <p>
+ * Las funciones, {@code groupsBy} y las agregaciones no se soportan: cada shard devolvería su agregado
+ * parcial. Con {@code distinct} las filas repetidas entre shards (misma entidad e id, o mismos valores en
+ * una proyección) se quitan después del merge, en ese caso la página puede quedar con menos registros que
+ * {@code pageSize}. Los nulos se ordenan como lo hace la base de los shards ({@link NullOrdering} del dialecto).
+ */
+public class ShardScatterGather {
+
+    private static final Logger LOGGER = Logger.getLogger(ShardScatterGather.class.getName());
+    private static final Pattern ISO_DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}.*");
+
+    private final BuhoProperties buhoProperties;
+    private final ListableBeanFactory beanFactory;
+    private final Map<String, ShardGroupRuntime> groups = new LinkedHashMap<>();
+    private final Map<Class<?>, ShardGroupRuntime> routes = new ConcurrentHashMap<>();
+    private final Map<String, Field> fields = new ConcurrentHashMap<>();
+    private volatile boolean initialized;
+
+    public ShardScatterGather(BuhoProperties buhoProperties, ListableBeanFactory beanFactory) {
+        this.buhoProperties = buhoProperties;
+        this.beanFactory = beanFactory;
+    }
+
+    private void init() {
+        if (initialized) {
+            return;
+        }
+        synchronized (this) {
+            if (initialized) {
+                return;
+            }
+            Map<String, BuhoProperties.ShardGroup> shards = buhoProperties.getShards();
+            if (shards != null) {
+                shards.forEach((name, group) -> {
+                    if (group == null || group.getNodes() == null || group.getNodes().isEmpty()) {
+                        LOGGER.log(Level.WARNING, "Grupo de shards {0} sin nodos, se ignora", name);
+                        return;
+                    }
+                    try {
+                        ShardGroupRuntime runtime = new ShardGroupRuntime(name, group);
+                        for (BuhoProperties.Shard node : group.getNodes()) {
+                            runtime.factories.put(node, beanFactory.getBean(node.getEntityManagerFactory(), EntityManagerFactory.class));
+                        }
+                        runtime.nullOrdering = nullOrdering(runtime.factories.values().iterator().next());
+                        groups.put(name, runtime);
+                        if (buhoProperties.isDebug()) LOGGER.log(Level.INFO, "Grupo de shards {0} -> {1}", new Object[]{name, group});
+                    } catch (Exception e) {
+                        LOGGER.log(Level.SEVERE, "No se pudo resolver los EntityManagerFactory del grupo de shards " + name, e);
+                    }
+                });
+            }
+            initialized = true;
+        }
+    }
+
+    private static NullOrdering nullOrdering(EntityManagerFactory emf) {
+        try {
+            return emf.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect().getNullOrdering();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "No se pudo obtener el dialecto de los shards, nulos al final en ASC", e);
+            return NullOrdering.GREATEST;
+        }
+    }
+
+    /**
+     * Detiene los hilos de los grupos de shards.
+     */
+    @PreDestroy
+    public void shutdown() {
+        groups.values().forEach(g -> g.executor.shutdownNow());
+    }
+
+    /**
+     * @param domainClass Clase de la entidad
+     * @return true si la entidad pertenece a un grupo de shards
+     */
+    public boolean isSharded(Class<?> domainClass) {
+        return getGroup(domainClass) != null;
+    }
+
+    /**
+     * Metamodelos de los shards, para poder resolver entidades que solo existen en ellos.
+     *
+     * @return Metamodelo del primer nodo de cada grupo
+     */
+    public List<Metamodel> getMetamodels() {
+        init();
+        List<Metamodel> metamodels = new ArrayList<>();
+        groups.values().forEach(g -> metamodels.add(g.factories.values().iterator().next().getMetamodel()));
+        return metamodels;
+    }
+
+    private ShardGroupRuntime getGroup(Class<?> domainClass) {
+        if (domainClass == null) {
+            return null;
+        }
+        init();
+        if (groups.isEmpty()) {
+            return null;
+        }
+        ShardGroupRuntime group = routes.computeIfAbsent(domainClass, c -> groups.values().stream()
+                .filter(g -> g.config.getEntities() != null
+                             && (g.config.getEntities().contains(c.getSimpleName()) || g.config.getEntities().contains(c.getName())))
+                .findFirst().orElse(ShardGroupRuntime.NONE));
+        return group == ShardGroupRuntime.NONE ? null : group;
+    }
+
+    /**
+     * Ejecuta la búsqueda en los shards y devuelve la página solicitada.
+     *
+     * @param domainClass Clase de la entidad
+     * @param busq        Parametros de la búsqueda
+     * @param query       Ejecuta la búsqueda sobre el EntityManager de un shard
+     * @return Registros combinados y paginados
+     */
+    public List<Object> findAll(Class<?> domainClass, BusquedaModel busq, BiFunction<BusquedaModel, EntityManager, List<Object>> query) {
+        if (isGrouped(busq)) {
+            throw new UnsupportedOperationException("Funciones, groupsBy y agregaciones no soportadas en entidades con shards: " + busq.getEntity());
+        }
+        ShardGroupRuntime group = getGroup(domainClass);
+        int first = busq.getFirst() == null ? 0 : Math.max(0, busq.getFirst());
+        Integer pageSize = busq.getPageSize();
+        BusquedaModel parcial = busq.copy();
+        parcial.setFirst(null);
+        parcial.setPageSize(pageSize == null ? null : first + pageSize);
+
+        List<List<Object>> partials = execute(group, busq, em -> {
+            List<Object> rows = query.apply(parcial.copy(), em);
+            LazyGraphs.initialize(rows, busq);
+            return rows;
+        });
+        List<Object> merged = merge(partials, busq.getOrders(), group.nullOrdering);
+        if (!Boolean.FALSE.equals(busq.getDistinct())) {
+            merged = distinct(merged, group.factories.values().iterator().next().getPersistenceUnitUtil());
+        }
+        if (first >= merged.size()) {
+            return new ArrayList<>();
+        }
+        int to = pageSize == null ? merged.size() : (int) Math.min(merged.size(), (long) first + pageSize);
+        return new ArrayList<>(merged.subList(first, to));
+    }
+
+    /**
+     * Quita las filas repetidas entre shards, en el orden del merge. Las entidades se comparan por clase e
+     * identificador (no dependen de su {@code equals}) y las proyecciones por los valores de la fila.
+     */
+    private static List<Object> distinct(List<Object> rows, PersistenceUnitUtil units) {
+        Map<Object, Object> unique = new LinkedHashMap<>(rows.size() * 2);
+        for (Object row : rows) {
+            unique.putIfAbsent(rowKey(row, units), row);
+        }
+        return new ArrayList<>(unique.values());
+    }
+
+    private static Object rowKey(Object row, PersistenceUnitUtil units) {
+        if (row instanceof Map) {
+            return new ArrayList<>(((Map<?, ?>) row).values());
+        }
+        if (row instanceof Object[]) {
+            return Arrays.asList((Object[]) row);
+        }
+        if (row != null) {
+            Class<?> entity = Hibernate.getClass(row);
+            if (entity.isAnnotationPresent(Entity.class)) {
+                Object id = units.getIdentifier(row);
+                if (id != null) {
+                    return List.of(entity, id);
+                }
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Suma los conteos de cada shard, los shards son particiones disjuntas.
+     *
+     * @param domainClass Clase de la entidad
+     * @param busq        Parametros de la búsqueda
+     * @param count       Ejecuta el conteo sobre el EntityManager de un shard
+     * @return Total de registros
+     */
+    public Long count(Class<?> domainClass, BusquedaModel busq, BiFunction<BusquedaModel, EntityManager, Long> count) {
+        ShardGroupRuntime group = getGroup(domainClass);
+        long total = 0;
+        for (Long c : execute(group, busq, em -> count.apply(busq.copy(), em))) {
+            total += c == null ? 0 : c;
+        }
+        return total;
+    }
+
+    /**
+     * Funciones de base de datos (las que no son solo columnas), groupsBy o agregación.
+     */
+    private static boolean isGrouped(BusquedaModel busq) {
+        if (busq.getAggregation() != null || (busq.getGroupsBy() != null && !busq.getGroupsBy().isEmpty())) {
+            return true;
+        }
+        if (busq.getFunctions() != null) {
+            for (Map.Entry<String, Object> f : busq.getFunctions().entrySet()) {
+                if (f.getValue() == null || !f.getKey().equalsIgnoreCase(f.getValue().toString())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private <R> List<R> execute(ShardGroupRuntime group, BusquedaModel busq, Function<EntityManager, R> task) {
+        List<BuhoProperties.Shard> nodes = prune(group, busq.getFilters());
+        if (buhoProperties.isDebug()) LOGGER.log(Level.INFO, "Grupo {0}: consultando {1} de {2} shards", new Object[]{group.name, nodes.size(), group.factories.size()});
+        List<Future<R>> futures = new ArrayList<>(nodes.size());
+        for (BuhoProperties.Shard node : nodes) {
+            EntityManagerFactory emf = group.factories.get(node);
+            futures.add(group.executor.submit(() -> {
+                EntityManager em = emf.createEntityManager();
+                try {
+                    return task.apply(em);
+                } finally {
+                    em.close();
+                }
+            }));
+        }
+        List<R> results = new ArrayList<>(nodes.size());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(group.config.getTimeoutSeconds());
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Error en el shard " + nodes.get(i).getName(), e.getCause());
+                } catch (TimeoutException e) {
+                    throw new IllegalStateException("Tiempo de espera agotado en el shard " + nodes.get(i).getName(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Búsqueda en shards interrumpida", e);
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+        }
+        return results;
+    }
+
+    /**
+     * Descarta los shards cuyo rango no puede contener registros que cumplan el filtro del shard-key.
+     * Si no se puede interpretar el filtro se consultan todos.
+     */
+    private List<BuhoProperties.Shard> prune(ShardGroupRuntime group, Map<String, Object> filters) {
+        List<BuhoProperties.Shard> nodes = new ArrayList<>(group.factories.keySet());
+        String shardKey = group.config.getShardKey();
+        if (shardKey == null || filters == null || !filters.containsKey(shardKey)) {
+            return nodes;
+        }
+        Object value = filters.get(shardKey);
+        BusquedaModel.WhereCondition condicion = value instanceof BusquedaModel.WhereCondition
+                ? (BusquedaModel.WhereCondition) value
+                : new BusquedaModel.WhereCondition(Arrays.asList(value));
+        if (condicion.getComparador() == null || condicion.getValues() == null || condicion.getValues().isEmpty()) {
+            return nodes;
+        }
+        nodes.removeIf(node -> !mayContain(node, condicion));
+        return nodes;
+    }
+
+    private boolean mayContain(BuhoProperties.Shard node, BusquedaModel.WhereCondition condicion) {
+        List<Object> values = new ArrayList<>();
+        condicion.getValues().forEach(v -> {
+            if (v instanceof Collection) values.addAll((Collection<?>) v);
+            else values.add(v);
+        });
+        String desde = node.getDesde();
+        String hasta = node.getHasta();
+        try {
+            switch (condicion.getComparador().toUpperCase()) {
+                case "EQ":
+                case "IN":
+                    for (Object v : values) {
+                        if (v == null) return true;
+                        Integer lo = compareKey(desde, v.toString());
+                        Integer hi = compareKey(hasta, v.toString());
+                        if (lo == null || hi == null) return true;
+                        if (lo <= 0 && hi >= 0) return true;
+                    }
+                    return false;
+                case "BETWEEN": {
+                    if (values.size() < 2 || values.get(0) == null || values.get(1) == null) return true;
+                    Integer hi = compareKey(hasta, values.get(0).toString());
+                    Integer lo = compareKey(desde, values.get(1).toString());
+                    return hi == null || lo == null || (hi >= 0 && lo <= 0);
+                }
+                case "GT":
+                case ">":
+                case "GE":
+                case "GTE":
+                case ">=": {
+                    if (values.get(0) == null) return true;
+                    Integer hi = compareKey(hasta, values.get(0).toString());
+                    return hi == null || hi >= 0;
+                }
+                case "LT":
+                case "<":
+                case "LE":
+                case "LTE":
+                case "<=": {
+                    if (values.get(0) == null) return true;
+                    Integer lo = compareKey(desde, values.get(0).toString());
+                    return lo == null || lo <= 0;
+                }
+                default:
+                    return true;
+            }
+        } catch (Exception e) {
+            if (buhoProperties.isDebug()) LOGGER.log(Level.INFO, "No se pudo evaluar el rango del shard {0}: {1}", new Object[]{node.getName(), e.getMessage()});
+            return true;
+        }
+    }
+
+    /**
+     * Compara el límite de un shard con un valor del filtro. Solo se comparan números o fechas ISO,
+     * para cualquier otro formato (o sin límite) devuelve null y el shard no se descarta.
+     */
+    private Integer compareKey(String limite, String value) {
+        if (limite == null || limite.isBlank()) {
+            return null;
+        }
+        String l = limite.trim();
+        String v = value.trim();
+        try {
+            return new BigDecimal(l).compareTo(new BigDecimal(v));
+        } catch (NumberFormatException e) {
+            if (ISO_DATE.matcher(l).matches() && ISO_DATE.matcher(v).matches()) {
+                int len = Math.min(l.length(), v.length());
+                return l.substring(0, len).compareTo(v.substring(0, len));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Merge de k listas ordenadas. Sin ordenamientos se concatenan en el orden de los shards.
+     */
+    private List<Object> merge(List<List<Object>> partials, Map<String, String> orders, NullOrdering nullOrdering) {
+        int size = 0;
+        for (List<Object> p : partials) {
+            size += p == null ? 0 : p.size();
+        }
+        List<Object> merged = new ArrayList<>(size);
+        if (orders == null || orders.isEmpty()) {
+            partials.forEach(p -> {
+                if (p != null) merged.addAll(p);
+            });
+            return merged;
+        }
+        Comparator<Object> comparator = comparator(orders, nullOrdering);
+        PriorityQueue<Head> heads = new PriorityQueue<>((a, b) -> comparator.compare(a.value, b.value));
+        for (List<Object> p : partials) {
+            if (p != null && !p.isEmpty()) {
+                Iterator<Object> it = p.iterator();
+                heads.add(new Head(it.next(), it));
+            }
+        }
+        while (!heads.isEmpty()) {
+            Head h = heads.poll();
+            merged.add(h.value);
+            if (h.rest.hasNext()) {
+                heads.add(new Head(h.rest.next(), h.rest));
+            }
+        }
+        return merged;
+    }
+
+    private Comparator<Object> comparator(Map<String, String> orders, NullOrdering nullOrdering) {
+        Comparator<Object> comparator = (a, b) -> 0;
+        for (Map.Entry<String, String> order : orders.entrySet()) {
+            // Los ordenamientos con funcion (campo:length) se comparan por el valor del campo
+            String path = order.getKey().contains(":") ? order.getKey().substring(0, order.getKey().indexOf(':')) : order.getKey();
+            boolean desc = "DESC".equalsIgnoreCase(order.getValue());
+            comparator = comparator.thenComparing((a, b) -> {
+                Object va = valueOf(a, path);
+                Object vb = valueOf(b, path);
+                if (va == null || vb == null) {
+                    return va == vb ? 0 : compareNull(va == null, desc, nullOrdering);
+                }
+                int r = compareValues(va, vb);
+                return desc ? -r : r;
+            });
+        }
+        return comparator;
+    }
+
+    /**
+     * Posición del nulo como la ordena la base: mayor que cualquier valor (PostgreSQL, Oracle), menor
+     * (MySQL, SQL Server, H2) o siempre al inicio / al final.
+     *
+     * @param firstNull El nulo es el primer valor de la comparación
+     */
+    private static int compareNull(boolean firstNull, boolean desc, NullOrdering nullOrdering) {
+        int r = firstNull ? 1 : -1;
+        switch (nullOrdering) {
+            case SMALLEST:
+                return desc ? r : -r;
+            case FIRST:
+                return -r;
+            case LAST:
+                return r;
+            case GREATEST:
+            default:
+                return desc ? -r : r;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compareValues(Object a, Object b) {
+        if (a instanceof Number && b instanceof Number && !a.getClass().equals(b.getClass())) {
+            return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+        }
+        if (a instanceof Comparable && a.getClass().isInstance(b)) {
+            return ((Comparable<Object>) a).compareTo(b);
+        }
+        return a.toString().compareTo(b.toString());
+    }
+
+    /**
+     * Valor de la columna en una fila de tupla (Map) o del campo (ruta con puntos) de una entidad.
+     */
+    private Object valueOf(Object row, String path) {
+        if (row instanceof Map) {
+            return ((Map<?, ?>) row).get(path);
+        }
+        Object current = row;
+        for (String part : path.split("\\.")) {
+            if (current == null) {
+                return null;
+            }
+            Field f = findField(current.getClass(), part);
+            if (f == null) {
+                return null;
+            }
+            try {
+                current = f.get(current);
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    private Field findField(Class<?> clazz, String name) {
+        String key = clazz.getName() + "#" + name;
+        Field cached = fields.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                Field f = c.getDeclaredField(name);
+                f.setAccessible(true);
+                fields.put(key, f);
+                return f;
+            } catch (NoSuchFieldException ignored) {
+            }
+        }
+        return null;
+    }
+
+    private static class Head {
+        private final Object value;
+        private final Iterator<Object> rest;
+
+        private Head(Object value, Iterator<Object> rest) {
+            this.value = value;
+            this.rest = rest;
+        }
+    }
+
+    private static class ShardGroupRuntime {
+        private static final ShardGroupRuntime NONE = new ShardGroupRuntime();
+
+        private final String name;
+        private final BuhoProperties.ShardGroup config;
+        private final Map<BuhoProperties.Shard, EntityManagerFactory> factories = new LinkedHashMap<>();
+        private final ExecutorService executor;
+        /**
+         * Orden de los nulos en la base de los shards, se toma del dialecto del primer nodo.
+         */
+        private NullOrdering nullOrdering = NullOrdering.GREATEST;
+
+        private ShardGroupRuntime() {
+            this.name = null;
+            this.config = null;
+            this.executor = null;
+        }
+
+        private ShardGroupRuntime(String name, BuhoProperties.ShardGroup config) {
+            this.name = name;
+            this.config = config;
+            AtomicInteger seq = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(Math.max(1, config.getParallelism()), r -> {
+                Thread t = new Thread(r, "buho-shard-" + name + "-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.angbyte.repositories;
+
+import org.hibernate.dialect.CockroachDialect;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.OracleDialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.dialect.SQLServerDialect;
+
+import java.util.Locale;
+
+/**
+ * Truncado de fechas de las bases soportadas.
+ */
+enum StandardTimeBucketDialect implements TimeBucketDialect {
+
+    POSTGRESQL {
+        @Override
+        public boolean supports(Dialect dialect) {
+            return dialect instanceof PostgreSQLDialect || dialect instanceof CockroachDialect;
+        }
+
+        @Override
+        public String pattern(Unit unit) {
+            return "date_trunc('" + unit.name().toLowerCase(Locale.ROOT) + "', ?1)";
+        }
+    },
+    H2 {
+        @Override
+        public boolean supports(Dialect dialect) {
+            return dialect instanceof H2Dialect;
+        }
+
+        @Override
+        public String pattern(Unit unit) {
+            // WEEK depende del primer día de la semana del locale
+            return "date_trunc('" + (unit == Unit.WEEK ? "iso_week" : unit.name().toLowerCase(Locale.ROOT)) + "', ?1)";
+        }
+    },
+    ORACLE {
+        @Override
+        public boolean supports(Dialect dialect) {
+            return dialect instanceof OracleDialect;
+        }
+
+        @Override
+        public String pattern(Unit unit) {
+            switch (unit) {
+                case YEAR:
+                    return "trunc(?1, 'YYYY')";
+                case QUARTER:
+                    return "trunc(?1, 'Q')";
+                case MONTH:
+                    return "trunc(?1, 'MM')";
+                case WEEK:
+                    return "trunc(?1, 'IW')";
+                case DAY:
+                    return "trunc(?1, 'DD')";
+                case HOUR:
+                    return "trunc(?1, 'HH24')";
+                default:
+                    return "trunc(?1, 'MI')";
+            }
+        }
+    },
+    MYSQL {
+        @Override
+        public boolean supports(Dialect dialect) {
+            // MariaDBDialect extiende MySQLDialect
+            return dialect instanceof MySQLDialect;
+        }
+
+        @Override
+        public String pattern(Unit unit) {
+            switch (unit) {
+                case YEAR:
+                    return "makedate(year(?1), 1)";
+                case QUARTER:
+                    return "(makedate(year(?1), 1) + interval (quarter(?1) - 1) quarter)";
+                case MONTH:
+                    return "(makedate(year(?1), 1) + interval (month(?1) - 1) month)";
+                case WEEK:
+                    return "date_sub(date(?1), interval weekday(?1) day)";
+                case DAY:
+                    return "date(?1)";
+                case HOUR:
+                    return "(date(?1) + interval hour(?1) hour)";
+                default:
+                    return "(date(?1) + interval (hour(?1) * 60 + minute(?1)) minute)";
+            }
+        }
+    },
+    SQLSERVER {
+        @Override
+        public boolean supports(Dialect dialect) {
+            return dialect instanceof SQLServerDialect;
+        }
+
+        @Override
+        public String pattern(Unit unit) {
+            // Base 0 = 1900-01-01 (lunes); datediff(week) cuenta domingos, la semana se arma con días
+            if (unit == Unit.WEEK) {
+                return "dateadd(day, datediff(day, 0, ?1) / 7 * 7, 0)";
+            }
+            String part = unit.name().toLowerCase(Locale.ROOT);
+            return "dateadd(" + part + ", datediff(" + part + ", 0, ?1), 0)";
+        }
+    }
+}
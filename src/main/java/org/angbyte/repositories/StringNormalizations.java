@@ -0,0 +1,69 @@
+package org.angbyte.repositories;
+
+import org.angbyte.config.BuhoProperties;
+import org.angbyte.model.StringNormalization;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resuelve el {@link StringNormalization.Mode} de cada campo de texto, una sola vez por entidad y campo.
+ * <p>
+ * Orden: {@code buho.string-normalization} del campo ({@code Entidad.campo}), anotación del campo,
+ * propiedad de la entidad ({@code Entidad}), anotación de la entidad, propiedad {@code *} y por último
+ * {@link StringNormalization.Mode#FUNCTION}. La entidad puede indicarse con el nombre simple o completo.
+ */
+class StringNormalizations {
+
+    private static final String ALL = "*";
+
+    private final Map<String, StringNormalization.Mode> config;
+    private final Map<Class<?>, Map<String, StringNormalization.Mode>> resolved = new ConcurrentHashMap<>();
+
+    StringNormalizations(BuhoProperties properties) {
+        this.config = properties == null ? Map.of() : properties.getStringNormalization();
+    }
+
+    StringNormalization.Mode mode(Class<?> entity, String field) {
+        return resolved.computeIfAbsent(entity, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(field, f -> resolve(entity, f));
+    }
+
+    private StringNormalization.Mode resolve(Class<?> entity, String field) {
+        StringNormalization.Mode mode = configured(entity, "." + field);
+        if (mode != null) {
+            return mode;
+        }
+        Field f = findField(entity, field);
+        if (f != null && f.isAnnotationPresent(StringNormalization.class)) {
+            return f.getAnnotation(StringNormalization.class).value();
+        }
+        mode = configured(entity, "");
+        if (mode != null) {
+            return mode;
+        }
+        for (Class<?> c = entity; c != null && c != Object.class; c = c.getSuperclass()) {
+            if (c.isAnnotationPresent(StringNormalization.class)) {
+                return c.getAnnotation(StringNormalization.class).value();
+            }
+        }
+        return config.getOrDefault(ALL, StringNormalization.Mode.FUNCTION);
+    }
+
+    private StringNormalization.Mode configured(Class<?> entity, String suffix) {
+        StringNormalization.Mode mode = config.get(entity.getSimpleName() + suffix);
+        return mode != null ? mode : config.get(entity.getName() + suffix);
+    }
+
+    private static Field findField(Class<?> entity, String name) {
+        for (Class<?> c = entity; c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredField(name);
+            } catch (NoSuchFieldException ignore) {
+                // Se busca en la superclase
+            }
+        }
+        return null;
+    }
+}
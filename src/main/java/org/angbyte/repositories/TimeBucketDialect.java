@@ -0,0 +1,59 @@
+package org.angbyte.repositories;
+
+import org.hibernate.dialect.Dialect;
+
+import java.util.Locale;
+
+/**
+ * Traduce la agrupación por periodos ({@code fechaCreacion:month}) a la función de truncado de fechas de la
+ * base. Cada unidad se registra en Hibernate como {@code buho_bucket_<unidad>(campo)}
+ * ({@link BuhoFunctionContributor}).
+ * <p>
+ * Para otras bases se agrega una implementación en
+ * {@code META-INF/services/org.angbyte.repositories.TimeBucketDialect}; se prueban antes que las incluidas
+ * (PostgreSQL, CockroachDB, H2, Oracle, MySQL/MariaDB y SQL Server).
+ */
+public interface TimeBucketDialect {
+
+    /**
+     * @param dialect Dialecto de Hibernate de la unidad de persistencia
+     * @return true si esta implementación genera el SQL para la base
+     */
+    boolean supports(Dialect dialect);
+
+    /**
+     * @param unit Periodo
+     * @return Patrón SQL con {@code ?1} como el campo, ej. {@code date_trunc('month', ?1)}; null si la base no
+     * lo soporta
+     */
+    String pattern(Unit unit);
+
+    /**
+     * Periodos de agrupación. La semana empieza el lunes (ISO).
+     */
+    enum Unit {
+        YEAR, QUARTER, MONTH, WEEK, DAY, HOUR, MINUTE;
+
+        /**
+         * Nombre de la función registrada en Hibernate.
+         */
+        public String functionName() {
+            return BuhoFunctionContributor.TIME_BUCKET_PREFIX + name().toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * @param value Unidad en texto ({@code month}, {@code MONTH})
+         * @return La unidad, null si no es un periodo
+         */
+        public static Unit parse(String value) {
+            if (value == null) {
+                return null;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -2,11 +2,16 @@ package org.angbyte.resources;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.angbyte.config.BuhoCompressionFilter;
 import org.angbyte.model.BusquedaModel;
 import org.angbyte.model.GuardarModel;
+import org.angbyte.model.RespuestaColumnar;
 import org.angbyte.service.BuhoService;
+import org.angbyte.utils.BuhoMediaTypes;
 import org.angbyte.utils.Utilities;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
@@ -38,40 +43,110 @@ public class BuhoApi {
      * @param data the data
      * @return the response entity
      */
-    @PostMapping(value = "/findBy", produces = "application/json")
+    @PostMapping(value = "/findBy", produces = {BuhoMediaTypes.JSON, BuhoMediaTypes.CBOR, BuhoMediaTypes.SMILE, RespuestaColumnar.MEDIA_TYPE})
     public ResponseEntity<?> findBy(@RequestBody BusquedaModel data, HttpServletRequest request, HttpServletResponse response) {
         MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
         Object result = null;
         try {
             System.out.println("Ejecutando solictud de '/findBy' " + request.getRemoteHost());
+            checkColumnar(data, request);
+            checkCache(data, request);
+            if (isStream(data, request)) {
+                this.service.stream(data, response, false);
+                return null;
+            }
             result = this.service.findAllDinamic(data);
             LOG.log(Level.INFO, "/busquedas/findBy: " + data + " result = {0}", (result == null) ? "null" : "Con datos");
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "/busquedas/findBy: " + data, e);
+            // Una respuesta que falló a medias no se guarda en el cache
+            request.removeAttribute(BuhoCompressionFilter.CACHE_SECONDS_ATTRIBUTE);
+            if (response.isCommitted()) {
+                return null;
+            }
             headers.add("error", e.getMessage());
             return new ResponseEntity<>(headers, HttpStatus.CONFLICT);
         }
-        return new ResponseEntity<>(result, headers, HttpStatus.OK);
+        return ok(result, headers, request);
     }
 
-    @PostMapping(value = "/findBy/page", produces = "application/json")
+    @PostMapping(value = "/findBy/page", produces = {BuhoMediaTypes.JSON, BuhoMediaTypes.CBOR, BuhoMediaTypes.SMILE, RespuestaColumnar.MEDIA_TYPE})
     public ResponseEntity<?> findByPage(@RequestBody BusquedaModel data, HttpServletRequest request, HttpServletResponse response) {
         MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
         Object result = null;
         try {
             System.out.println("Ejecutando solictud de '/findBy/page' " + request.getRemoteHost());
+            checkColumnar(data, request);
+            checkCache(data, request);
+            if (isStream(data, request)) {
+                this.service.stream(data, response, true);
+                return null;
+            }
             result = this.service.findAllDinamic(data, headers);
             LOG.log(Level.INFO, "/busquedas/findBy: " + data + " result = " + ((result == null) ? "null" : "Con datos"));
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "/busquedas/findBy/page" + data, e);
+            // Una respuesta que falló a medias no se guarda en el cache
+            request.removeAttribute(BuhoCompressionFilter.CACHE_SECONDS_ATTRIBUTE);
+            if (response.isCommitted()) {
+                return null;
+            }
             headers.add("error", e.getMessage());
             return new ResponseEntity<>(headers, HttpStatus.CONFLICT);
         }
-        return new ResponseEntity<>(result, headers, HttpStatus.OK);
+        return ok(result, headers, request);
     }
 
 
-    @PostMapping(value = "/findBy/count", produces = "application/json")
+    /**
+     * Con stream el resultado se escribe directamente en la respuesta como json. No aplica para unicoResultado,
+     * para el formato columnar, que necesita todas las filas, ni cuando se pide un formato binario.
+     */
+    private boolean isStream(BusquedaModel data, HttpServletRequest request) {
+        return Boolean.TRUE.equals(data.getStream()) && !Boolean.TRUE.equals(data.getUnicoResultado())
+               && !Boolean.TRUE.equals(data.getColumnar()) && !BuhoMediaTypes.isBinary(request.getHeader(HttpHeaders.ACCEPT));
+    }
+
+    /**
+     * Marca el request para que {@link BuhoCompressionFilter} guarde la respuesta en el cache de resultados.
+     */
+    private void checkCache(BusquedaModel data, HttpServletRequest request) {
+        if (data.getCacheSegundos() != null && data.getCacheSegundos() > 0) {
+            request.setAttribute(BuhoCompressionFilter.CACHE_SECONDS_ATTRIBUTE, data.getCacheSegundos());
+        }
+    }
+
+    /**
+     * El formato columnar también se puede pedir con el header Accept.
+     */
+    private void checkColumnar(BusquedaModel data, HttpServletRequest request) {
+        if (isColumnarAccept(request)) {
+            data.setColumnar(true);
+        }
+    }
+
+    private static boolean isColumnarAccept(HttpServletRequest request) {
+        MediaType preferred = BuhoMediaTypes.preferred(request.getHeader(HttpHeaders.ACCEPT),
+                BuhoMediaTypes.JSON, BuhoMediaTypes.CBOR, BuhoMediaTypes.SMILE, RespuestaColumnar.MEDIA_TYPE);
+        return preferred != null && preferred.isCompatibleWith(MediaType.parseMediaType(RespuestaColumnar.MEDIA_TYPE));
+    }
+
+    /**
+     * El formato columnar solo se arma con filas Map ({@code columns} o funciones). Si se pidió con el Accept y el
+     * resultado son entidades se responde json cuando el Accept lo admite, caso contrario 406.
+     */
+    private ResponseEntity<?> ok(Object result, MultiValueMap<String, String> headers, HttpServletRequest request) {
+        if (result != null && !(result instanceof RespuestaColumnar) && isColumnarAccept(request)) {
+            if (BuhoMediaTypes.preferred(request.getHeader(HttpHeaders.ACCEPT), BuhoMediaTypes.JSON) == null) {
+                request.removeAttribute(BuhoCompressionFilter.CACHE_SECONDS_ATTRIBUTE);
+                return new ResponseEntity<>(headers, HttpStatus.NOT_ACCEPTABLE);
+            }
+            headers.set(HttpHeaders.CONTENT_TYPE, BuhoMediaTypes.JSON);
+        }
+        return new ResponseEntity<>(result, headers, HttpStatus.OK);
+    }
+
+    @PostMapping(value = "/findBy/count", produces = {BuhoMediaTypes.JSON, BuhoMediaTypes.CBOR, BuhoMediaTypes.SMILE})
     public ResponseEntity<?> findByCount(@RequestBody BusquedaModel data) {
         MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
         Object result = null;
@@ -85,7 +160,26 @@ public class BuhoApi {
         return new ResponseEntity<>(result, headers, HttpStatus.OK);
     }
 
-    @PostMapping(value = "/findBy/max", produces = "application/json")
+    /**
+     * Conteos por valor de las rutas de {@code facets} con los filtros de la búsqueda, para los filtros
+     * laterales de las pantallas de búsqueda.
+     */
+    @PostMapping(value = "/findBy/facets", produces = {BuhoMediaTypes.JSON, BuhoMediaTypes.CBOR, BuhoMediaTypes.SMILE})
+    public ResponseEntity<?> findByFacets(@RequestBody BusquedaModel data, HttpServletRequest request) {
+        MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
+        Object result = null;
+        try {
+            checkCache(data, request);
+            result = this.service.facets(data);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "/busquedas/findBy/facets: " + data, e);
+            headers.add("error", e.getMessage());
+            return new ResponseEntity<>(headers, HttpStatus.CONFLICT);
+        }
+        return new ResponseEntity<>(result, headers, HttpStatus.OK);
+    }
+
+    @PostMapping(value = "/findBy/max", produces = {BuhoMediaTypes.JSON, BuhoMediaTypes.CBOR, BuhoMediaTypes.SMILE})
     public ResponseEntity<?> findByMax(@RequestBody BusquedaModel data) {
         MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
         Long result = null;
@@ -99,7 +193,7 @@ public class BuhoApi {
         return new ResponseEntity<>(result, headers, HttpStatus.OK);
     }
 
-    @PostMapping(value = "/findBy/exists", produces = "application/json")
+    @PostMapping(value = "/findBy/exists", produces = {BuhoMediaTypes.JSON, BuhoMediaTypes.CBOR, BuhoMediaTypes.SMILE})
     public ResponseEntity<?> findByExiste(@RequestBody BusquedaModel data) {
         Boolean result = false;
         try {
@@ -111,7 +205,7 @@ public class BuhoApi {
         return new ResponseEntity<>(result, HttpStatus.OK);
     }
 
-    @PostMapping(value = "/save/entiti", produces = "application/json")
+    @PostMapping(value = "/save/entiti", produces = {BuhoMediaTypes.JSON, BuhoMediaTypes.CBOR, BuhoMediaTypes.SMILE})
     public ResponseEntity<?> saveEntiti(@RequestBody GuardarModel data) {
         Object result = null;
         try {
@@ -124,7 +218,7 @@ public class BuhoApi {
         return new ResponseEntity<>(result, HttpStatus.OK);
     }
 
-    @PostMapping(value = "/save/entiti/map", produces = "application/json")
+    @PostMapping(value = "/save/entiti/map", produces = {BuhoMediaTypes.JSON, BuhoMediaTypes.CBOR, BuhoMediaTypes.SMILE})
     public ResponseEntity<?> saveEntitiMap(@RequestBody GuardarModel data) {
         Object result = null;
         try {
@@ -140,7 +234,7 @@ public class BuhoApi {
         return new ResponseEntity<>(result, HttpStatus.OK);
     }
 
-    @PostMapping(value = "/eliminar/entiti", produces = "application/json")
+    @PostMapping(value = "/eliminar/entiti", produces = {BuhoMediaTypes.JSON, BuhoMediaTypes.CBOR, BuhoMediaTypes.SMILE})
     public ResponseEntity<?> eliminar(@RequestBody GuardarModel data) {
         Object result = null;
         try {
@@ -5,14 +5,23 @@ import org.angbyte.config.BuhoProperties;
 import org.angbyte.model.BusquedaModel;
 import org.angbyte.model.GuardarModel;
 import org.angbyte.model.Respuesta;
+import org.angbyte.model.RespuestaColumnar;
+import jakarta.persistence.NonUniqueResultException;
+import jakarta.servlet.http.HttpServletResponse;
 import org.angbyte.repositories.BuhoPersistable;
+import org.angbyte.utils.BuhoJsonStreamWriter;
 import org.angbyte.utils.Utilities;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.util.MultiValueMap;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,55 +39,113 @@ public class BuhoService {
     }
 
     public Object findAllDinamic(BusquedaModel data) {
+        if (Boolean.TRUE.equals(data.getUnicoResultado())) {
+            return findUnique(data);
+        }
         try {
             List<Object> rs = repository.findAllDinamic(data);
             if (Utilities.isNotEmpty(rs)) {
                 if (buhoProperties.isDebug()) {
                     LOG.log(Level.INFO, "Resultados de la busqueda: " + rs.size() + " unico resultado: " + data.getUnicoResultado() + " gson: " + data.getGson());
                 }
-                if (data.getUnicoResultado()) {
-                    if (data.getGson()) {
-                        return Utilities.toObjecttoHashMap(rs.get(0));
-                    } else {
-                        return rs.get(0);
-                    }
-                } else {
-                    return getResultGson(data, rs);
-                }
+                return getResultGson(data, rs);
             } else {
                 if (buhoProperties.isDebug()) {
                     LOG.log(Level.INFO, "Resultados de la busqueda: " + rs.size() + " unico resultado: " + data.getUnicoResultado() + " gson: " + data.getGson());
                 }
             }
+        } catch (UnsupportedOperationException e) {
+            throw e;
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "", e);
         }
         return null;
     }
 
+    /**
+     * Un solo registro sin cargar la lista. El error de {@code validarUnico} o de una búsqueda no soportada
+     * se propaga para responder CONFLICT.
+     */
+    private Object findUnique(BusquedaModel data) {
+        Object rs;
+        try {
+            rs = repository.findUnique(data);
+        } catch (NonUniqueResultException | UnsupportedOperationException e) {
+            throw e;
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "", e);
+            return null;
+        }
+        if (buhoProperties.isDebug()) {
+            LOG.log(Level.INFO, "Resultado unico de la busqueda: " + (rs != null) + " gson: " + data.getGson());
+        }
+        if (rs != null && data.getGson()) {
+            return Utilities.toObjecttoHashMap(rs, data.getProxyMode());
+        }
+        return rs;
+    }
+
     private Object getResultGson(BusquedaModel data, List rs) {
+        if (Boolean.TRUE.equals(data.getColumnar()) && Utilities.isNotEmpty(rs) && rs.get(0) instanceof Map) {
+            return RespuestaColumnar.from(rs, !Boolean.FALSE.equals(data.getDiccionario()));
+        }
         if (data.getGson()) {
-            if (Utilities.isNotEmpty(data.getIgnoreClassGsonw())) {
-                if (Utilities.isEmpty(data.getIgnoreClassGson())) {
-                    data.setIgnoreClassGson(new ArrayList<>());
-                }
-                for (String nameCl : data.getIgnoreClassGsonw()) {
-                    Class clazz = repository.getEntityClass(nameCl);
-                    if (clazz != null) {
-                        data.getIgnoreClassGson().add(clazz);
-                    }
-                }
-            }
-            return Utilities.toObjecttoHashMap(rs, data.getIgnoreFieldsGson(), data.getIgnoreClassGson());
+            resolveIgnoreClass(data);
+            return Utilities.toObjecttoHashMap(rs, data.getIgnoreFieldsGson(), data.getIgnoreClassGson(), data.getProxyMode(), data.getDepth());
         } else {
             return rs;
         }
     }
 
+    private void resolveIgnoreClass(BusquedaModel data) {
+        if (Utilities.isNotEmpty(data.getIgnoreClassGsonw())) {
+            if (Utilities.isEmpty(data.getIgnoreClassGson())) {
+                data.setIgnoreClassGson(new ArrayList<>());
+            }
+            for (String nameCl : data.getIgnoreClassGsonw()) {
+                Class clazz = repository.getEntityClass(nameCl);
+                if (clazz != null) {
+                    data.getIgnoreClassGson().add(clazz);
+                }
+            }
+        }
+    }
+
+    /**
+     * Escribe el resultado de la busqueda directamente en la respuesta, registro por registro.
+     *
+     * @param data     Modelo con los datos para la busqueda
+     * @param response Respuesta donde se escribe el arreglo json
+     * @param page     Agrega el header rootSize con el conteo, se calcula antes de escribir el cuerpo
+     * @throws IOException Si falla la escritura en la respuesta
+     */
+    public void stream(BusquedaModel data, HttpServletResponse response, boolean page) throws IOException {
+        resolveIgnoreClass(data);
+        if (page) {
+            Long count = repository.count(data);
+            response.setHeader("rootSize", count == null ? "0" : count.toString());
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        try (BuhoJsonStreamWriter writer = new BuhoJsonStreamWriter(response.getOutputStream(), data.getIgnoreFieldsGson(),
+                data.getIgnoreClassGson(), data.getProxyMode(), data.getDepth())) {
+            writer.beginArray();
+            repository.forEachDinamic(data, writer::write);
+            writer.endArray();
+            if (buhoProperties.isDebug()) {
+                LOG.log(Level.INFO, "Registros enviados por stream: " + writer.getRows());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
     public Object findAllDinamic(BusquedaModel data, MultiValueMap<String, String> headers) {
         try {
             List<Object> allDinamic = repository.findAllDinamic(data, headers);
             return getResultGson(data, allDinamic);
+        } catch (UnsupportedOperationException e) {
+            throw e;
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -95,6 +162,13 @@ public class BuhoService {
     }
 
 
+    /**
+     * Conteos por valor de las facetas de la búsqueda. Los errores se propagan para responder CONFLICT.
+     */
+    public Map<String, List<Map<String, Object>>> facets(BusquedaModel data) {
+        return repository.facets(data);
+    }
+
     public Boolean existe(BusquedaModel data) {
         try {
             boolean exists = repository.exists(data);
@@ -0,0 +1,84 @@
+package org.angbyte.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Escribe un arreglo json registro por registro sobre el OutputStream de la respuesta. Usa la misma
+ * configuración de Gson que {@link Utilities#toObjecttoHashMap(Object, List, List, HibernateProxyTypeAdapter.ProxyMode)}
+ * (exclusiones, referencias circulares y proxies), la instancia se resuelve con la clase del primer registro.
+ */
+public class BuhoJsonStreamWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final JsonWriter writer;
+    private final List<String> ignoreFields;
+    private final List<Class> ignoreClass;
+    private final HibernateProxyTypeAdapter.ProxyMode proxyMode;
+    private final Integer depth;
+    private Gson gson;
+    private long rows;
+
+    public BuhoJsonStreamWriter(OutputStream out, List<String> ignoreFields, List<Class> ignoreClass, HibernateProxyTypeAdapter.ProxyMode proxyMode,
+                                Integer depth) {
+        this.writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE));
+        this.ignoreFields = ignoreFields;
+        this.ignoreClass = ignoreClass;
+        this.proxyMode = proxyMode;
+        this.depth = depth;
+    }
+
+    public void beginArray() throws IOException {
+        writer.beginArray();
+    }
+
+    public void endArray() throws IOException {
+        writer.endArray();
+    }
+
+    /**
+     * Escribe un registro. Lanza {@link UncheckedIOException} para poder usarse como Consumer.
+     *
+     * @param row Entidad o Map de una tupla
+     */
+    public void write(Object row) {
+        try {
+            if (row == null) {
+                writer.nullValue();
+            } else {
+                if (gson == null) {
+                    gson = Utilities.gson(row.getClass(), ignoreFields, ignoreClass, proxyMode, depth);
+                }
+                gson.toJson(row, row.getClass(), writer);
+            }
+            // El primer registro se envía de inmediato, el resto cuando se llena el buffer
+            if (rows++ == 0) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return Registros escritos
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,72 @@
+package org.angbyte.utils;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Formatos de respuesta que aceptan los endpoints de {@link org.angbyte.resources.BuhoApi}. Los binarios
+ * (CBOR y Smile) se habilitan cuando la librería de Jackson correspondiente está en el classpath.
+ */
+public final class BuhoMediaTypes {
+
+    public static final String JSON = MediaType.APPLICATION_JSON_VALUE;
+    public static final String CBOR = MediaType.APPLICATION_CBOR_VALUE;
+    public static final String SMILE = "application/x-jackson-smile";
+
+    /**
+     * Mayor calidad primero; con la misma calidad el tipo más específico ({@code *}/{@code *} al final).
+     */
+    private static final Comparator<MediaType> PREFERENCE = Comparator.comparingDouble(MediaType::getQualityValue).reversed()
+            .thenComparing(MediaType::isWildcardType)
+            .thenComparing(MediaType::isWildcardSubtype);
+
+    private BuhoMediaTypes() {
+    }
+
+    /**
+     * @param accept Valor del header Accept
+     * @return true si el formato preferido por el cliente es binario
+     */
+    public static boolean isBinary(String accept) {
+        MediaType preferred = preferred(accept, JSON, CBOR, SMILE);
+        return preferred != null && (preferred.isCompatibleWith(MediaType.APPLICATION_CBOR)
+                                     || preferred.isCompatibleWith(MediaType.parseMediaType(SMILE)));
+    }
+
+    /**
+     * Formato que se responde según el header Accept: los tipos del header se recorren por calidad ({@code q})
+     * y se devuelve el primero de {@code produced} que acepta el de mayor calidad.
+     *
+     * @param accept   Valor del header Accept
+     * @param produced Formatos que responde el endpoint, en orden de preferencia del servidor
+     * @return Formato elegido, null si no hay header, no es válido o no acepta ninguno
+     */
+    public static MediaType preferred(String accept, String... produced) {
+        if (accept == null || accept.isBlank()) {
+            return null;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = new ArrayList<>(MediaType.parseMediaTypes(accept));
+        } catch (InvalidMediaTypeException e) {
+            return null;
+        }
+        accepted.sort(PREFERENCE);
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() <= 0) {
+                continue;
+            }
+            for (String candidate : produced) {
+                MediaType mediaType = MediaType.parseMediaType(candidate);
+                if (type.includes(mediaType)) {
+                    return mediaType;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,341 @@
+package org.angbyte.utils;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serializadores generados por entidad. Los campos de cada {@code @Entity} se leen con MethodHandles
+ * creados una sola vez (los primitivos sin boxing) en lugar de la reflexión de Gson. Se respetan las
+ * mismas reglas de Gson: orden de campos, exclusiones ({@code @JsonIgnore}, campos/clases ignorados,
+ * referencias a la clase raíz), {@code @SerializedName} y el adapter del tipo real de cada valor
+ * (proxies de Hibernate incluidos).
+ * <p>
+ * Con {@code depth} las entidades más profundas se escriben solo con su id, igual que los proxies en
+ * {@link HibernateProxyTypeAdapter.ProxyMode#ID}. Si la clase no se puede generar (campos duplicados,
+ * {@code @JsonAdapter}) se usa el adapter reflexivo de Gson.
+ */
+public class EntityTypeAdapterFactory implements TypeAdapterFactory {
+
+    private static final Logger LOG = Logger.getLogger(EntityTypeAdapterFactory.class.getName());
+    /**
+     * Nivel de entidad que se está escribiendo en el hilo actual.
+     */
+    private static final ThreadLocal<int[]> DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+    /**
+     * Accesos a los campos por clase, no dependen de la configuración de Gson.
+     */
+    private static final Map<Class<?>, EntityAccessors> ACCESSORS = new ConcurrentHashMap<>();
+
+    private final Integer maxDepth;
+    private final ExclusionStrategy exclusions;
+
+    /**
+     * @param maxDepth   Niveles de entidad que se escriben completos, null sin límite
+     * @param exclusions Mismas exclusiones registradas en el GsonBuilder (campos/clases ignorados), null sin exclusiones
+     */
+    public EntityTypeAdapterFactory(Integer maxDepth, ExclusionStrategy exclusions) {
+        this.maxDepth = maxDepth == null || maxDepth < 1 ? null : maxDepth;
+        this.exclusions = exclusions;
+    }
+
+    /**
+     * Genera por adelantado los accesos de las entidades, para no hacerlo en la primera petición.
+     *
+     * @param entities Clases de las entidades del metamodelo
+     */
+    public static void prepare(Collection<Class<?>> entities) {
+        int count = 0;
+        for (Class<?> entity : entities) {
+            if (entity != null && entity.isAnnotationPresent(Entity.class) && accessors(entity) != null) {
+                count++;
+            }
+        }
+        LOG.log(Level.INFO, "Serializadores generados para {0} entidades", count);
+    }
+
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        Class<? super T> raw = type.getRawType();
+        if (!raw.isAnnotationPresent(Entity.class)) {
+            return null;
+        }
+        EntityAccessors accessors = accessors(raw);
+        if (accessors == null) {
+            return null;
+        }
+        List<BoundField> fields = new ArrayList<>(accessors.fields.size());
+        Set<String> names = new HashSet<>();
+        for (FieldAccessor accessor : accessors.fields) {
+            Field f = accessor.field;
+            if (exclusions != null && (exclusions.shouldSkipClass(f.getType()) || exclusions.shouldSkipField(new FieldAttributes(f)))) {
+                continue;
+            }
+            SerializedName serializedName = f.getAnnotation(SerializedName.class);
+            String name = serializedName != null ? serializedName.value() : gson.fieldNamingStrategy().translateName(f);
+            if (!names.add(name)) {
+                // Gson rechaza estas clases, que lo reporte el adapter reflexivo
+                return null;
+            }
+            fields.add(new BoundField(name, accessor, gson));
+        }
+        return new EntityAdapter<>(gson, this, type, fields, accessors, maxDepth);
+    }
+
+    private static EntityAccessors accessors(Class<?> entity) {
+        EntityAccessors cached = ACCESSORS.get(entity);
+        if (cached != null) {
+            return cached == EntityAccessors.UNSUPPORTED ? null : cached;
+        }
+        EntityAccessors created;
+        try {
+            created = EntityAccessors.create(entity);
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "No se pudo generar el serializador de " + entity.getName() + ", se usa reflexión", e);
+            created = EntityAccessors.UNSUPPORTED;
+        }
+        ACCESSORS.put(entity, created);
+        return created == EntityAccessors.UNSUPPORTED ? null : created;
+    }
+
+    private static class EntityAdapter<T> extends TypeAdapter<T> {
+
+        private final Gson gson;
+        private final TypeAdapterFactory skipPast;
+        private final TypeToken<T> type;
+        private final List<BoundField> fields;
+        private final EntityAccessors accessors;
+        private final Integer maxDepth;
+        private TypeAdapter<T> reflective;
+
+        private EntityAdapter(Gson gson, TypeAdapterFactory skipPast, TypeToken<T> type, List<BoundField> fields,
+                              EntityAccessors accessors, Integer maxDepth) {
+            this.gson = gson;
+            this.skipPast = skipPast;
+            this.type = type;
+            this.fields = fields;
+            this.accessors = accessors;
+            this.maxDepth = maxDepth;
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            int[] depth = DEPTH.get();
+            if (maxDepth != null && depth[0] >= maxDepth) {
+                writeStub(out, value);
+                return;
+            }
+            depth[0]++;
+            try {
+                out.beginObject();
+                for (BoundField field : fields) {
+                    field.write(out, value);
+                }
+                out.endObject();
+            } finally {
+                depth[0]--;
+            }
+        }
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        private void writeStub(JsonWriter out, T value) throws IOException {
+            out.beginObject();
+            if (accessors.id != null) {
+                Object id = accessors.id.get(value);
+                out.name(accessors.id.field.getName());
+                if (id == null) {
+                    out.nullValue();
+                } else {
+                    TypeAdapter idAdapter = gson.getAdapter(id.getClass());
+                    idAdapter.write(out, id);
+                }
+            }
+            out.name(HibernateProxyTypeAdapter.ENTITY_NAME_FIELD).value(value.getClass().getName());
+            out.endObject();
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            if (reflective == null) {
+                reflective = gson.getDelegateAdapter(skipPast, type);
+            }
+            return reflective.read(in);
+        }
+    }
+
+    private static class BoundField {
+        private final String name;
+        private final FieldAccessor accessor;
+        private final Gson gson;
+        private final Class<?> declared;
+        private final Type declaredType;
+        private TypeAdapter<Object> declaredAdapter;
+
+        private BoundField(String name, FieldAccessor accessor, Gson gson) {
+            this.name = name;
+            this.accessor = accessor;
+            this.gson = gson;
+            this.declared = accessor.field.getType();
+            this.declaredType = accessor.field.getGenericType();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void write(JsonWriter out, Object owner) throws IOException {
+            try {
+                switch (accessor.kind) {
+                    case INT:
+                        out.name(name).value((long) (int) accessor.getter.invokeExact(owner));
+                        return;
+                    case LONG:
+                        out.name(name).value((long) accessor.getter.invokeExact(owner));
+                        return;
+                    case DOUBLE:
+                        out.name(name).value((double) accessor.getter.invokeExact(owner));
+                        return;
+                    case FLOAT:
+                        out.name(name).value((float) accessor.getter.invokeExact(owner));
+                        return;
+                    case BOOLEAN:
+                        out.name(name).value((boolean) accessor.getter.invokeExact(owner));
+                        return;
+                    case SHORT:
+                        out.name(name).value((long) (short) accessor.getter.invokeExact(owner));
+                        return;
+                    case BYTE:
+                        out.name(name).value((long) (byte) accessor.getter.invokeExact(owner));
+                        return;
+                    case CHAR:
+                        out.name(name).value(String.valueOf((char) accessor.getter.invokeExact(owner)));
+                        return;
+                    default:
+                        Object value = (Object) accessor.getter.invokeExact(owner);
+                        // Igual que Gson: evita la recursión sobre sí mismo
+                        if (value == owner) {
+                            return;
+                        }
+                        out.name(name);
+                        if (value == null) {
+                            out.nullValue();
+                            return;
+                        }
+                        TypeAdapter<Object> adapter;
+                        if (value.getClass() == declared) {
+                            if (declaredAdapter == null) {
+                                declaredAdapter = (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(declaredType));
+                            }
+                            adapter = declaredAdapter;
+                        } else {
+                            // Tipo real del valor (subclases, proxies, colecciones de Hibernate)
+                            adapter = (TypeAdapter<Object>) gson.getAdapter(value.getClass());
+                        }
+                        adapter.write(out, value);
+                }
+            } catch (IOException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Error al leer el campo " + accessor.field, e);
+            }
+        }
+    }
+
+    private enum Kind {
+        INT, LONG, DOUBLE, FLOAT, BOOLEAN, SHORT, BYTE, CHAR, OBJECT
+    }
+
+    private static class FieldAccessor {
+        private final Field field;
+        private final Kind kind;
+        /**
+         * Tipo (Object)primitivo o (Object)Object para poder usar invokeExact.
+         */
+        private final MethodHandle getter;
+
+        private FieldAccessor(Field field, MethodHandles.Lookup lookup) throws IllegalAccessException {
+            this.field = field;
+            Class<?> t = field.getType();
+            this.kind = t == int.class ? Kind.INT : t == long.class ? Kind.LONG : t == double.class ? Kind.DOUBLE
+                    : t == float.class ? Kind.FLOAT : t == boolean.class ? Kind.BOOLEAN : t == short.class ? Kind.SHORT
+                    : t == byte.class ? Kind.BYTE : t == char.class ? Kind.CHAR : Kind.OBJECT;
+            MethodHandle mh = lookup.unreflectGetter(field);
+            this.getter = mh.asType(MethodType.methodType(t.isPrimitive() ? t : Object.class, Object.class));
+        }
+
+        private Object get(Object owner) {
+            try {
+                return getter.invoke(owner);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Error al leer el campo " + field, e);
+            }
+        }
+    }
+
+    private static class EntityAccessors {
+        private static final EntityAccessors UNSUPPORTED = new EntityAccessors(List.of(), null);
+
+        private final List<FieldAccessor> fields;
+        private final FieldAccessor id;
+
+        private EntityAccessors(List<FieldAccessor> fields, FieldAccessor id) {
+            this.fields = fields;
+            this.id = id;
+        }
+
+        /**
+         * Mismo orden que el adapter reflexivo de Gson: primero los campos de la clase y luego los de
+         * sus superclases.
+         */
+        private static EntityAccessors create(Class<?> entity) throws IllegalAccessException {
+            List<FieldAccessor> fields = new ArrayList<>();
+            FieldAccessor id = null;
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            for (Class<?> c = entity; c != null && c != Object.class; c = c.getSuperclass()) {
+                MethodHandles.Lookup classLookup = MethodHandles.privateLookupIn(c, lookup);
+                for (Field f : c.getDeclaredFields()) {
+                    if (f.isAnnotationPresent(JsonAdapter.class)) {
+                        return UNSUPPORTED;
+                    }
+                    if (Modifier.isStatic(f.getModifiers()) || f.isSynthetic()) {
+                        continue;
+                    }
+                    FieldAccessor accessor = new FieldAccessor(f, classLookup);
+                    fields.add(accessor);
+                    if (id == null && (f.isAnnotationPresent(Id.class) || f.isAnnotationPresent(EmbeddedId.class))) {
+                        id = accessor;
+                    }
+                }
+            }
+            return new EntityAccessors(fields, id);
+        }
+    }
+}
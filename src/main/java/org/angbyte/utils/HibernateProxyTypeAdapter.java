@@ -6,24 +6,67 @@ import com.google.gson.TypeAdapterFactory;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonWriter;
+import jakarta.persistence.EmbeddedId;
+import jakarta.persistence.Id;
 import org.hibernate.Hibernate;
+import org.hibernate.collection.spi.PersistentCollection;
 import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.proxy.LazyInitializer;
 
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class HibernateProxyTypeAdapter extends TypeAdapter<HibernateProxy> {
 
-    public static final TypeAdapterFactory FACTORY = new TypeAdapterFactory() {
-        @Override
-        @SuppressWarnings("unchecked")
-        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
-            return (HibernateProxy.class.isAssignableFrom(type.getRawType()) ? (TypeAdapter<T>) new HibernateProxyTypeAdapter(gson) : null);
-        }
-    };
+    /**
+     * Como se escriben los proxies que todavía no se cargaron.
+     */
+    public enum ProxyMode {
+        /**
+         * Se inicializa el proxy y se escribe la entidad completa (una consulta por proxy).
+         */
+        INITIALIZE,
+        /**
+         * Se escribe solo el id y el nombre de la entidad, sin ir a la base. Las colecciones no
+         * inicializadas se omiten.
+         */
+        ID
+    }
+
+    public static final String ENTITY_NAME_FIELD = "_entity";
+    public static final TypeAdapterFactory FACTORY = factory(ProxyMode.INITIALIZE);
+
+    private static final Map<Class<?>, String> ID_FIELDS = new ConcurrentHashMap<>();
+
     private final Gson context;
+    private final ProxyMode mode;
 
-    private HibernateProxyTypeAdapter(Gson context) {
+    private HibernateProxyTypeAdapter(Gson context, ProxyMode mode) {
         this.context = context;
+        this.mode = mode;
+    }
+
+    /**
+     * @param mode Modo de escritura de los proxies, null equivale a {@link ProxyMode#INITIALIZE}
+     * @return Factory para registrar en el GsonBuilder
+     */
+    public static TypeAdapterFactory factory(ProxyMode mode) {
+        ProxyMode m = mode == null ? ProxyMode.INITIALIZE : mode;
+        return new TypeAdapterFactory() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+                if (HibernateProxy.class.isAssignableFrom(type.getRawType())) {
+                    return (TypeAdapter<T>) new HibernateProxyTypeAdapter(gson, m);
+                }
+                if (m == ProxyMode.ID && PersistentCollection.class.isAssignableFrom(type.getRawType())) {
+                    return new LazyCollectionTypeAdapter<>(gson.getDelegateAdapter(this, type));
+                }
+                return null;
+            }
+        };
     }
 
     @Override
@@ -38,14 +81,76 @@ public class HibernateProxyTypeAdapter extends TypeAdapter<HibernateProxy> {
             out.nullValue();
             return;
         }
+        LazyInitializer initializer = value.getHibernateLazyInitializer();
+        if (mode == ProxyMode.ID && initializer.isUninitialized()) {
+            writeStub(out, initializer);
+            return;
+        }
         try {
             Class<?> baseType = Hibernate.getClass(value);
             TypeAdapter delegate = context.getAdapter(TypeToken.get(baseType));
 
-            Object unproxiedValue = value.getHibernateLazyInitializer().getImplementation();
+            Object unproxiedValue = initializer.getImplementation();
             delegate.write(out, unproxiedValue);
         } catch (Exception e) {
             System.out.println("Error el inicializar proxy " + e);
         }
     }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private void writeStub(JsonWriter out, LazyInitializer initializer) throws IOException {
+        Object id = initializer.getInternalIdentifier();
+        out.beginObject();
+        out.name(idField(initializer.getPersistentClass()));
+        if (id == null) {
+            out.nullValue();
+        } else {
+            TypeAdapter idAdapter = context.getAdapter(id.getClass());
+            idAdapter.write(out, id);
+        }
+        out.name(ENTITY_NAME_FIELD).value(initializer.getEntityName());
+        out.endObject();
+    }
+
+    /**
+     * Nombre del campo anotado con {@link Id} o {@link EmbeddedId}, "id" si no se encuentra.
+     */
+    private static String idField(Class<?> entityClass) {
+        return ID_FIELDS.computeIfAbsent(entityClass, c -> {
+            for (Class<?> k = c; k != null && k != Object.class; k = k.getSuperclass()) {
+                for (Field f : k.getDeclaredFields()) {
+                    if (f.isAnnotationPresent(Id.class) || f.isAnnotationPresent(EmbeddedId.class)) {
+                        return f.getName();
+                    }
+                }
+            }
+            return "id";
+        });
+    }
+
+    /**
+     * Omite las colecciones LAZY no inicializadas, las inicializadas se escriben con el adapter normal.
+     */
+    private static class LazyCollectionTypeAdapter<T> extends TypeAdapter<T> {
+
+        private final TypeAdapter<T> delegate;
+
+        private LazyCollectionTypeAdapter(TypeAdapter<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(JsonWriter out, T value) throws IOException {
+            if (value == null || !Hibernate.isInitialized(value)) {
+                out.nullValue();
+                return;
+            }
+            delegate.write(out, value);
+        }
+
+        @Override
+        public T read(JsonReader in) throws IOException {
+            return delegate.read(in);
+        }
+    }
 }
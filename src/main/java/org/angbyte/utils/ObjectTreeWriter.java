@@ -0,0 +1,213 @@
+package org.angbyte.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.ToNumberPolicy;
+import com.google.gson.internal.LazilyParsedNumber;
+import com.google.gson.internal.LinkedTreeMap;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * JsonWriter que en lugar de generar texto arma directamente el árbol de Map/List. Reemplaza el
+ * {@code toJson} + {@code fromJson} de {@link Utilities#toObjecttoHashMap(Object)}: las entidades se
+ * recorren una sola vez y no se genera el String intermedio.
+ * <p>
+ * El resultado tiene la misma forma que el {@code fromJson} con {@link ToNumberPolicy#LAZILY_PARSED_NUMBER}:
+ * objetos como {@link LinkedTreeMap}, arreglos como {@link ArrayList} y números como
+ * {@link LazilyParsedNumber}. Los campos null se omiten salvo que Gson tenga serializeNulls.
+ */
+public class ObjectTreeWriter extends JsonWriter {
+
+    private static final Writer UNWRITABLE_WRITER = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int counter) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+    private static final Gson JSON_VALUE_PARSER = new GsonBuilder().setObjectToNumberStrategy(ToNumberPolicy.LAZILY_PARSED_NUMBER).create();
+
+    private final Deque<Object> stack = new ArrayDeque<>();
+    private String pendingName;
+    private Object root;
+
+    public ObjectTreeWriter() {
+        super(UNWRITABLE_WRITER);
+    }
+
+    /**
+     * @return Árbol generado
+     */
+    public Object get() {
+        if (!stack.isEmpty() || pendingName != null) {
+            throw new IllegalStateException("Documento incompleto");
+        }
+        return root;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void put(Object value) {
+        if (pendingName != null) {
+            if (value != null || getSerializeNulls()) {
+                ((Map<String, Object>) stack.peek()).put(pendingName, value);
+            }
+            pendingName = null;
+        } else if (stack.isEmpty()) {
+            root = value;
+        } else if (stack.peek() instanceof List) {
+            ((List<Object>) stack.peek()).add(value);
+        } else {
+            throw new IllegalStateException("Valor sin nombre dentro de un objeto");
+        }
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        List<Object> list = new ArrayList<>();
+        put(list);
+        stack.push(list);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        if (stack.isEmpty() || pendingName != null || !(stack.peek() instanceof List)) {
+            throw new IllegalStateException();
+        }
+        stack.pop();
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        Map<String, Object> map = new LinkedTreeMap<>();
+        put(map);
+        stack.push(map);
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        if (stack.isEmpty() || pendingName != null || !(stack.peek() instanceof Map)) {
+            throw new IllegalStateException();
+        }
+        stack.pop();
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) throws IOException {
+        Objects.requireNonNull(name, "name == null");
+        if (stack.isEmpty() || pendingName != null || !(stack.peek() instanceof Map)) {
+            throw new IllegalStateException();
+        }
+        pendingName = name;
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        put(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        put(JSON_VALUE_PARSER.fromJson(value, Object.class));
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        put(null);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        put(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        put(value);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(float value) throws IOException {
+        checkFinite(value);
+        put(new LazilyParsedNumber(Float.toString(value)));
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        checkFinite(value);
+        put(new LazilyParsedNumber(Double.toString(value)));
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        put(new LazilyParsedNumber(Long.toString(value)));
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        if (value instanceof Double || value instanceof Float) {
+            checkFinite(value.doubleValue());
+        }
+        put(value instanceof LazilyParsedNumber ? value : new LazilyParsedNumber(value.toString()));
+        return this;
+    }
+
+    private void checkFinite(double value) {
+        if (!isLenient() && (Double.isNaN(value) || Double.isInfinite(value))) {
+            throw new IllegalArgumentException("JSON forbids NaN and infinities: " + value);
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!stack.isEmpty()) {
+            throw new IOException("Documento incompleto");
+        }
+    }
+}
@@ -1,45 +1,35 @@
 package org.angbyte.utils;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
+import org.angbyte.model.CompactRow;
 
 import java.lang.reflect.Modifier;
-import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 
 public class Utilities {
     private static final java.util.logging.Logger LOG = java.util.logging.Logger.getLogger(Utilities.class.getName());
+    /**
+     * Máximo de configuraciones de Gson en cache (clase raíz + campos/clases ignorados + modo de proxies).
+     */
+    private static final int GSON_CACHE_SIZE = 256;
+    private static final Cache<GsonKey, Gson> GSON_CACHE = CacheBuilder.newBuilder().maximumSize(GSON_CACHE_SIZE).build();
+    /**
+     * Usar los serializadores generados por entidad ({@link EntityTypeAdapterFactory}) en lugar de la
+     * reflexión de Gson.
+     */
+    private static volatile boolean generatedSerializers;
 
     public static Object toObjectFromJson(Object json, Class clazz) {
         if (json == null) {
             return null;
         }
         try {
-            GsonBuilder builder = new GsonBuilder();
-            Class finalParentClazz = clazz;
-            builder.enableComplexMapKeySerialization().setDateFormat("yyyy-MM-dd HH:mm:ss")
-                    .excludeFieldsWithModifiers(Modifier.STATIC)
-                    .setObjectToNumberStrategy(ToNumberPolicy.LAZILY_PARSED_NUMBER)
-                    .setExclusionStrategies(new ExclusionStrategy() {
-                        private Class clazz;
-
-                        @Override
-                        public boolean shouldSkipField(FieldAttributes field) {
-                            if (field.getAnnotation(JsonIgnore.class) != null) {
-                                return true;
-                            }
-                            return field.getDeclaredType().equals(finalParentClazz);
-                        }
-
-                        @Override
-                        public boolean shouldSkipClass(Class<?> clazz) {
-                            this.clazz = clazz;
-                            return false;
-                        }
-                    }).setPrettyPrinting();
-            Gson gson2 = builder.create();
+            Gson gson2 = gson(GsonKind.FROM_JSON, clazz, null, null, null, null);
             return gson2.fromJson(json.toString(), clazz);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Transformar json a objeto.", e);
@@ -48,44 +38,26 @@ public class Utilities {
     }
 
     public static Object toObjecttoHashMap(Object json) {
+        return toObjecttoHashMap(json, (HibernateProxyTypeAdapter.ProxyMode) null);
+    }
+
+    /**
+     * @param json      Objeto a convertir
+     * @param proxyMode Como escribir los proxies no inicializados, null para inicializarlos
+     */
+    public static Object toObjecttoHashMap(Object json, HibernateProxyTypeAdapter.ProxyMode proxyMode) {
         if (json == null) {
             return null;
         }
         try {
-            GsonBuilder builder = new GsonBuilder();
             Class finalParentClazz = null;
-            Type typeOfHashMap = null;
             if (json instanceof Collection || json instanceof List || json instanceof ArrayList) {
                 finalParentClazz = ((List) json).get(0).getClass();
-                typeOfHashMap = new com.google.common.reflect.TypeToken<List<Map<String, Object>>>() {
-                }.getType();
             } else {
-                typeOfHashMap = new com.google.common.reflect.TypeToken<Map<String, Object>>() {
-                }.getType();
                 finalParentClazz = json.getClass();
             }
-            System.out.println("-> " + finalParentClazz);
-            Class finalParentClazz1 = finalParentClazz;
-            builder.enableComplexMapKeySerialization().setDateFormat("yyyy-MM-dd HH:mm:ss")
-                    .excludeFieldsWithModifiers(Modifier.STATIC)
-                    .setObjectToNumberStrategy(ToNumberPolicy.LAZILY_PARSED_NUMBER)
-                    .registerTypeAdapterFactory(HibernateProxyTypeAdapter.FACTORY).setExclusionStrategies(new ExclusionStrategy() {
-                        private Class clazz;
-
-                        @Override
-                        public boolean shouldSkipField(FieldAttributes field) {
-                            return field.getDeclaredClass().equals(finalParentClazz1);
-                        }
-
-                        @Override
-                        public boolean shouldSkipClass(Class<?> clazz) {
-                            this.clazz = clazz;
-                            return false;
-                        }
-                    });
-            Gson gson2 = builder.create();
-            String js = gson2.toJson(json);
-            return gson2.fromJson(js, typeOfHashMap);
+            Gson gson2 = gson(GsonKind.TO_MAP, finalParentClazz, null, null, proxyMode, null);
+            return toTree(gson2, json);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Transformar json a objeto.", e);
             return null;
@@ -93,19 +65,33 @@ public class Utilities {
     }
 
     public static Object toObjecttoHashMap(Object json, List<String> ignoreFields, List<Class> ignoreClass) {
+        return toObjecttoHashMap(json, ignoreFields, ignoreClass, null);
+    }
+
+    /**
+     * @param json         Objeto a convertir
+     * @param ignoreFields Campos a omitir
+     * @param ignoreClass  Clases a omitir
+     * @param proxyMode    Como escribir los proxies no inicializados, null para inicializarlos
+     */
+    public static Object toObjecttoHashMap(Object json, List<String> ignoreFields, List<Class> ignoreClass, HibernateProxyTypeAdapter.ProxyMode proxyMode) {
+        return toObjecttoHashMap(json, ignoreFields, ignoreClass, proxyMode, null);
+    }
+
+    /**
+     * @param json         Objeto a convertir
+     * @param ignoreFields Campos a omitir
+     * @param ignoreClass  Clases a omitir
+     * @param proxyMode    Como escribir los proxies no inicializados, null para inicializarlos
+     * @param depth        Niveles de entidad que se escriben completos, los siguientes solo con el id. null sin límite
+     */
+    public static Object toObjecttoHashMap(Object json, List<String> ignoreFields, List<Class> ignoreClass, HibernateProxyTypeAdapter.ProxyMode proxyMode,
+                                           Integer depth) {
         if (json == null) {
             return null;
         }
         try {
-            if (ignoreFields == null) {
-                ignoreFields = new ArrayList<>();
-            }
-            if (ignoreClass == null) {
-                ignoreClass = new ArrayList<>();
-            }
-            GsonBuilder builder = new GsonBuilder();
             Class finalParentClazz = null;
-            Type typeOfHashMap = null;
             if (json instanceof Collection || json instanceof List || json instanceof ArrayList) {
                 List l = (List) json;
                 if (isNotEmpty(l)) {
@@ -113,40 +99,11 @@ public class Utilities {
                 } else {
                     finalParentClazz = Object.class;
                 }
-                typeOfHashMap = new TypeToken<List<Map<String, Object>>>() {
-                }.getType();
             } else {
-                typeOfHashMap = new TypeToken<Map<String, Object>>() {
-                }.getType();
                 finalParentClazz = json.getClass();
             }
-            Class finalParentClazz1 = finalParentClazz;
-            List<String> finalIgnoreFields = ignoreFields;
-            List<Class> finalIgnoreClass = ignoreClass;
-            builder.enableComplexMapKeySerialization().setDateFormat("yyyy-MM-dd HH:mm:ss").excludeFieldsWithModifiers(Modifier.STATIC).setObjectToNumberStrategy(ToNumberPolicy.LAZILY_PARSED_NUMBER).setExclusionStrategies(new ExclusionStrategy() {
-                private Class clazz;
-
-                @Override
-                public boolean shouldSkipField(FieldAttributes field) {
-                    if (field.getAnnotation(JsonIgnore.class) != null) {
-                        return true;
-                    }
-                    if (finalIgnoreFields.contains(field.getName())) {
-                        return true;
-                    }
-                    return field.getDeclaredClass().equals(finalParentClazz1);
-                }
-
-                @Override
-                public boolean shouldSkipClass(Class<?> clazz) {
-                    this.clazz = clazz;
-                    return finalIgnoreClass.contains(clazz);
-                }
-            }).registerTypeAdapterFactory(HibernateProxyTypeAdapter.FACTORY);
-            Gson gson2 = builder.create();
-            String js = gson2.toJson(json);
-            Object fromJson = gson2.fromJson(js, typeOfHashMap);
-            return fromJson;
+            Gson gson2 = gson(GsonKind.TO_MAP_IGNORE, finalParentClazz, ignoreFields, ignoreClass, proxyMode, depth);
+            return toTree(gson2, json);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Transformar json a objeto. Data: " + json, e);
             return null;
@@ -154,7 +111,6 @@ public class Utilities {
     }
 
     public static String toJson(Object obj) {
-        Map<String, Class> m = new HashMap<>();
         try {
             if (obj == null) {
                 return null;
@@ -167,27 +123,7 @@ public class Utilities {
                 }
                 parentClazz = c.get(0).getClass();
             }
-            GsonBuilder builder = new GsonBuilder();
-            Class finalParentClazz = parentClazz;
-            builder.enableComplexMapKeySerialization().setDateFormat("yyyy-MM-dd HH:mm:ss").excludeFieldsWithModifiers(Modifier.STATIC).setExclusionStrategies(new ExclusionStrategy() {
-                private Class clazz;
-
-                @Override
-                public boolean shouldSkipField(FieldAttributes field) {
-                    if (field.getAnnotation(JsonIgnore.class) != null) {
-                        return true;
-                    }
-                    return field.getDeclaredType().equals(finalParentClazz);
-                }
-
-                @Override
-                public boolean shouldSkipClass(Class<?> clazz) {
-                    this.clazz = clazz;
-                    return false;
-                }
-            })/*.setPrettyPrinting()*/;
-            builder.registerTypeAdapterFactory(HibernateProxyTypeAdapter.FACTORY);
-            Gson gson2 = builder.create();
+            Gson gson2 = gson(GsonKind.TO_JSON, parentClazz, null, null, null, null);
             return gson2.toJson(obj);
         } catch (Exception e) {
             LOG.log(Level.SEVERE, "Generar Json.", e);
@@ -195,6 +131,98 @@ public class Utilities {
         return null;
     }
 
+    /**
+     * Gson con la misma configuración de {@link #toObjecttoHashMap(Object, List, List, HibernateProxyTypeAdapter.ProxyMode)},
+     * para escribir los registros directamente sobre un JsonWriter.
+     *
+     * @param rootClass    Clase de los registros, sus referencias circulares se omiten
+     * @param ignoreFields Campos a omitir
+     * @param ignoreClass  Clases a omitir
+     * @param proxyMode    Como escribir los proxies no inicializados, null para inicializarlos
+     * @param depth        Niveles de entidad que se escriben completos, null sin límite
+     * @return Instancia compartida, no modificar
+     */
+    public static Gson gson(Class rootClass, List<String> ignoreFields, List<Class> ignoreClass, HibernateProxyTypeAdapter.ProxyMode proxyMode,
+                            Integer depth) {
+        return gson(GsonKind.TO_MAP_IGNORE, rootClass, ignoreFields, ignoreClass, proxyMode, depth);
+    }
+
+    public static boolean isGeneratedSerializers() {
+        return generatedSerializers;
+    }
+
+    /**
+     * Activa los serializadores generados por entidad, las instancias de Gson existentes se descartan.
+     *
+     * @param enabled true para usar {@link EntityTypeAdapterFactory}
+     */
+    public static void setGeneratedSerializers(boolean enabled) {
+        generatedSerializers = enabled;
+        GSON_CACHE.invalidateAll();
+    }
+
+    /**
+     * Convierte el objeto en el árbol de Map/List en una sola pasada, sin generar el json intermedio.
+     */
+    private static Object toTree(Gson gson, Object json) {
+        ObjectTreeWriter writer = new ObjectTreeWriter();
+        gson.toJson(json, json.getClass(), writer);
+        return writer.get();
+    }
+
+    /**
+     * Instancia de Gson para la configuración indicada. Las instancias se reutilizan para no perder el
+     * cache de TypeAdapters de Gson (la reflexión sobre las entidades se hace una sola vez).
+     */
+    private static Gson gson(GsonKind kind, Class rootClass, Collection<String> ignoreFields, Collection<Class> ignoreClass,
+                             HibernateProxyTypeAdapter.ProxyMode proxyMode, Integer depth) {
+        GsonKey key = new GsonKey(kind, rootClass, ignoreFields, ignoreClass, proxyMode, depth, generatedSerializers);
+        try {
+            return GSON_CACHE.get(key, () -> createGson(key));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("No se pudo crear la instancia de Gson " + key, e.getCause());
+        }
+    }
+
+    private static Gson createGson(GsonKey key) {
+        GsonBuilder builder = new GsonBuilder();
+        builder.enableComplexMapKeySerialization().setDateFormat("yyyy-MM-dd HH:mm:ss")
+                .excludeFieldsWithModifiers(Modifier.STATIC);
+        if (key.kind != GsonKind.TO_JSON) {
+            builder.setObjectToNumberStrategy(ToNumberPolicy.LAZILY_PARSED_NUMBER);
+        }
+        ExclusionStrategy exclusions = new ExclusionStrategy() {
+            @Override
+            public boolean shouldSkipField(FieldAttributes field) {
+                if (key.kind != GsonKind.TO_MAP && field.getAnnotation(JsonIgnore.class) != null) {
+                    return true;
+                }
+                if (key.ignoreFields.contains(field.getName())) {
+                    return true;
+                }
+                if (key.kind == GsonKind.FROM_JSON || key.kind == GsonKind.TO_JSON) {
+                    return field.getDeclaredType().equals(key.rootClass);
+                }
+                return field.getDeclaredClass().equals(key.rootClass);
+            }
+
+            @Override
+            public boolean shouldSkipClass(Class<?> clazz) {
+                return key.ignoreClass.contains(clazz);
+            }
+        };
+        if (key.kind != GsonKind.FROM_JSON) {
+            builder.registerTypeAdapterFactory(CompactRow.GSON_FACTORY);
+            builder.registerTypeAdapterFactory(HibernateProxyTypeAdapter.factory(key.proxyMode));
+            if (key.generated || key.depth != null) {
+                builder.registerTypeAdapterFactory(new EntityTypeAdapterFactory(key.depth, exclusions));
+            }
+        }
+        builder.setExclusionStrategies(exclusions);
+        if (LOG.isLoggable(Level.FINE)) LOG.log(Level.FINE, "Nueva instancia de Gson {0}", key);
+        return builder.create();
+    }
+
     public static String getUltimaPosicion(String key, String s) {
         try {
             String[] sp = key.split(s);
@@ -215,4 +243,54 @@ public class Utilities {
     public static boolean isNotEmpty(Collection l) {
         return !isEmpty(l);
     }
-}
\ No newline at end of file
+
+    /**
+     * Configuraciones de Gson usadas por los métodos de conversión.
+     */
+    private enum GsonKind {
+        FROM_JSON, TO_MAP, TO_MAP_IGNORE, TO_JSON
+    }
+
+    private static final class GsonKey {
+        private final GsonKind kind;
+        private final Class rootClass;
+        private final Set<String> ignoreFields;
+        private final Set<Class> ignoreClass;
+        private final HibernateProxyTypeAdapter.ProxyMode proxyMode;
+        private final Integer depth;
+        private final boolean generated;
+        private final int hash;
+
+        private GsonKey(GsonKind kind, Class rootClass, Collection<String> ignoreFields, Collection<Class> ignoreClass,
+                        HibernateProxyTypeAdapter.ProxyMode proxyMode, Integer depth, boolean generated) {
+            this.kind = kind;
+            this.rootClass = rootClass;
+            // Copias: las listas del request se pueden modificar luego
+            this.ignoreFields = ignoreFields == null ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(ignoreFields));
+            this.ignoreClass = ignoreClass == null ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(ignoreClass));
+            this.proxyMode = proxyMode == null ? HibernateProxyTypeAdapter.ProxyMode.INITIALIZE : proxyMode;
+            this.depth = depth == null || depth < 1 ? null : depth;
+            this.generated = generated;
+            this.hash = Objects.hash(kind, rootClass, this.ignoreFields, this.ignoreClass, this.proxyMode, this.depth, generated);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof GsonKey)) return false;
+            GsonKey k = (GsonKey) o;
+            return kind == k.kind && Objects.equals(rootClass, k.rootClass) && ignoreFields.equals(k.ignoreFields)
+                   && ignoreClass.equals(k.ignoreClass) && proxyMode == k.proxyMode && Objects.equals(depth, k.depth) && generated == k.generated;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return "GsonKey{" + "kind=" + kind + ", rootClass=" + rootClass + ", ignoreFields=" + ignoreFields + ", ignoreClass=" + ignoreClass + ", proxyMode=" + proxyMode + ", depth=" + depth + ", generated=" + generated + '}';
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.angbyte.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.OneToMany;
+import org.angbyte.utils.HibernateProxyTypeAdapter;
+import org.angbyte.utils.Utilities;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.ClassUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compara el tamaño de la respuesta y el tiempo de codificación de json, CBOR y Smile con el mismo proceso
+ * que {@code /findBy}: entidades con relaciones pasadas por {@link Utilities#toObjecttoHashMap} (campos
+ * ignorados, proxies, {@code depth}) y luego escritas con los mappers de {@link BuhoBinaryFormatsConfiguration}.
+ * No es un test, se ejecuta a mano con el classpath de test:
+ * <pre>
+ * mvn -q test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.angbyte.config.BuhoFormatsBenchmark -Dexec.args="10000 20"
+ * </pre>
+ */
+public final class BuhoFormatsBenchmark {
+
+    private static final int WARMUP = 5;
+    private static final List<String> IGNORE_FIELDS = List.of("persona");
+
+    private BuhoFormatsBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        List<Persona> entities = entities(size);
+
+        Map<String, ObjectMapper> mappers = new LinkedHashMap<>();
+        mappers.put("json", Jackson2ObjectMapperBuilder.json().modules(BuhoBinaryFormatsConfiguration.numbersModule()).build());
+        // Igual que en la configuración, los binarios solo si la librería está en el classpath
+        if (ClassUtils.isPresent("com.fasterxml.jackson.dataformat.cbor.CBORFactory", null)) {
+            mappers.put("cbor", Jackson2ObjectMapperBuilder.cbor().modules(BuhoBinaryFormatsConfiguration.numbersModule()).build());
+        }
+        if (ClassUtils.isPresent("com.fasterxml.jackson.dataformat.smile.SmileFactory", null)) {
+            mappers.put("smile", Jackson2ObjectMapperBuilder.smile().modules(BuhoBinaryFormatsConfiguration.numbersModule()).build());
+        }
+
+        System.out.printf(Locale.ROOT, "%d entidades, %d iteraciones%n", size, iterations);
+        System.out.printf(Locale.ROOT, "%-6s %12s %12s %12s %12s%n", "format", "bytes", "gzip bytes", "gson ms", "encode ms");
+        for (Map.Entry<String, ObjectMapper> entry : mappers.entrySet()) {
+            ObjectMapper mapper = entry.getValue();
+            for (int i = 0; i < WARMUP; i++) {
+                mapper.writeValueAsBytes(toMaps(entities));
+            }
+            long gson = 0;
+            long encode = 0;
+            byte[] payload = null;
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                Object maps = toMaps(entities);
+                long converted = System.nanoTime();
+                payload = mapper.writeValueAsBytes(maps);
+                encode += System.nanoTime() - converted;
+                gson += converted - start;
+            }
+            System.out.printf(Locale.ROOT, "%-6s %12d %12d %12.2f %12.2f%n", entry.getKey(), payload.length, gzipSize(payload),
+                    gson / 1_000_000d / iterations, encode / 1_000_000d / iterations);
+        }
+    }
+
+    /**
+     * Igual que {@code BuhoService.getResultGson} con {@code gson: true}.
+     */
+    private static Object toMaps(List<Persona> entities) {
+        return Utilities.toObjecttoHashMap(entities, IGNORE_FIELDS, new ArrayList<>(), HibernateProxyTypeAdapter.ProxyMode.ID, 2);
+    }
+
+    private static List<Persona> entities(int size) {
+        Random random = new Random(42);
+        List<Ciudad> ciudades = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            ciudades.add(new Ciudad((long) i + 1, "Ciudad " + i));
+        }
+        long base = 1_704_067_200_000L;
+        List<Persona> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Persona p = new Persona();
+            p.id = 1_000_000L + i;
+            p.nombre = "Persona " + i;
+            p.identificacion = String.format(Locale.ROOT, "09%08d", random.nextInt(100_000_000));
+            p.fechaCreacion = new Date(base + random.nextInt(500_000) * 60_000L);
+            p.saldo = BigDecimal.valueOf(random.nextInt(10_000_000), 2);
+            p.estado = random.nextBoolean() ? "A" : "I";
+            p.activo = random.nextBoolean();
+            p.ciudad = ciudades.get(random.nextInt(ciudades.size()));
+            p.telefonos = new ArrayList<>();
+            for (int t = random.nextInt(3); t > 0; t--) {
+                p.telefonos.add(new Telefono(p.id * 10 + t, "09" + random.nextInt(100_000_000), p));
+            }
+            rows.add(p);
+        }
+        return rows;
+    }
+
+    private static int gzipSize(byte[] payload) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(payload);
+        }
+        return out.size();
+    }
+
+    @Entity
+    static class Persona {
+        @Id
+        Long id;
+        String nombre;
+        String identificacion;
+        Date fechaCreacion;
+        BigDecimal saldo;
+        String estado;
+        Boolean activo;
+        @ManyToOne
+        Ciudad ciudad;
+        @OneToMany(mappedBy = "persona")
+        List<Telefono> telefonos;
+    }
+
+    @Entity
+    static class Ciudad {
+        @Id
+        Long id;
+        String nombre;
+
+        Ciudad(Long id, String nombre) {
+            this.id = id;
+            this.nombre = nombre;
+        }
+    }
+
+    @Entity
+    static class Telefono {
+        @Id
+        Long id;
+        String numero;
+        @ManyToOne
+        Persona persona;
+
+        Telefono(Long id, String numero, Persona persona) {
+            this.id = id;
+            this.numero = numero;
+            this.persona = persona;
+        }
+    }
+}